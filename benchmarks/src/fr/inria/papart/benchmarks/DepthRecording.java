@@ -0,0 +1,208 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2016-2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.benchmarks;
+
+import fr.inria.papart.calibration.files.PlaneCalibration;
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_16U;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import toxi.geom.Plane;
+
+/**
+ * Depth frames replayed by the benchmarks. A frame is a 16 bits image of
+ * depth in millimeters, 0 when there is no depth (OpenNI format).
+ *
+ * Recordings are folders of depth-XXXX.raw files: width * height unsigned
+ * shorts, little endian. Use save() to record frames from a sketch.
+ *
+ * @author Jeremy Laviole
+ */
+public class DepthRecording {
+
+    public static final String FRAME_PREFIX = "depth-";
+    public static final String FRAME_SUFFIX = ".raw";
+
+    private final ArrayList<IplImage> frames = new ArrayList<>();
+    private final int width, height;
+    private int current = 0;
+
+    private DepthRecording(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the next frame, loops at the end of the recording.
+     */
+    public IplImage next() {
+        IplImage frame = frames.get(current);
+        current = (current + 1) % frames.size();
+        return frame;
+    }
+
+    public void rewind() {
+        current = 0;
+    }
+
+    private void addFrame(short[] depth) {
+        IplImage frame = IplImage.create(width, height, IPL_DEPTH_16U, 1);
+        frame.getShortBuffer().put(depth);
+        frames.add(frame);
+    }
+
+    /**
+     * Load all the frames of a recording folder, in name order.
+     *
+     * @param folder
+     * @param width
+     * @param height
+     * @return
+     * @throws IOException
+     */
+    public static DepthRecording load(File folder, int width, int height) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            throw new FileNotFoundException("No recording in: " + folder);
+        }
+        Arrays.sort(files);
+
+        DepthRecording recording = new DepthRecording(width, height);
+        short[] depth = new short[width * height];
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(FRAME_PREFIX) || !name.endsWith(FRAME_SUFFIX)) {
+                continue;
+            }
+            byte[] data = Files.readAllBytes(file.toPath());
+            if (data.length != depth.length * 2) {
+                throw new IOException("Invalid frame size: " + file + ", " + data.length + " bytes.");
+            }
+            ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(depth);
+            recording.addFrame(depth);
+        }
+        if (recording.size() == 0) {
+            throw new FileNotFoundException("No recording in: " + folder);
+        }
+        return recording;
+    }
+
+    /**
+     * Save a 16 bits depth image (OpenNI format) in a recording folder.
+     *
+     * @param depthImage
+     * @param folder
+     * @param frameNumber
+     * @throws IOException
+     */
+    public static void save(IplImage depthImage, File folder, int frameNumber) throws IOException {
+        short[] depth = new short[depthImage.width() * depthImage.height()];
+        depthImage.getShortBuffer().get(depth);
+
+        ByteBuffer data = ByteBuffer.allocate(depth.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(depth);
+
+        File file = new File(folder, String.format("%s%04d%s", FRAME_PREFIX, frameNumber, FRAME_SUFFIX));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data.array());
+        }
+    }
+
+    /**
+     * Generated recording: the table under the calibrated plane, and an arm
+     * whose finger touches the table and moves from left to right. The
+     * same seed gives the same frames.
+     *
+     * @param calib depth camera calibration.
+     * @param planeCalib table plane.
+     * @param nbFrames
+     * @param seed
+     * @return
+     */
+    public static DepthRecording synthetic(ProjectiveDeviceP calib, PlaneCalibration planeCalib,
+            int nbFrames, long seed) {
+        int width = calib.getWidth();
+        int height = calib.getHeight();
+        DepthRecording recording = new DepthRecording(width, height);
+        Random random = new Random(seed);
+
+        Plane plane = planeCalib.getPlane();
+        float planeDist = plane.normal.dot(plane);
+
+        // Heights over the plane, in mm.
+        float tableHeight = -8f;
+        float fingerHeight = planeCalib.getHeight() / 3f;
+        float armHeight = 60f;
+        int fingerSize = 10;
+        int armSize = 25;
+
+        short[] depth = new short[width * height];
+        for (int frame = 0; frame < nbFrames; frame++) {
+            int fingerX = (int) (width * (0.25f + 0.4f * frame / nbFrames));
+            int fingerY = height / 2;
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    float h = tableHeight;
+                    if (Math.abs(y - fingerY) < armSize && x > fingerX) {
+                        h = armHeight;
+                    }
+                    if (Math.abs(y - fingerY) < fingerSize / 2 && x > fingerX - fingerSize && x <= fingerX) {
+                        h = fingerHeight;
+                    }
+
+                    // Intersection of the pixel ray with the plane at h.
+                    float rayX = (x - calib.getCx()) / calib.getFx();
+                    float rayY = (y - calib.getCy()) / calib.getFy();
+                    float dot = plane.normal.x * rayX + plane.normal.y * rayY + plane.normal.z;
+                    float z = dot > 0 ? (planeDist - h) / dot : 0;
+
+                    z += (float) random.nextGaussian();
+                    if (random.nextInt(50) == 0) {
+                        z = 0;
+                    }
+                    depth[y * width + x] = (short) Math.max(0, Math.round(z));
+                }
+            }
+            recording.addFrame(depth);
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2016-2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.benchmarks;
+
+import fr.inria.papart.calibration.files.PlanarTouchCalibration;
+import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
+import fr.inria.papart.depthcam.DepthData;
+import fr.inria.papart.depthcam.ProjectedDepthData;
+import fr.inria.papart.depthcam.analysis.Compute2D;
+import fr.inria.papart.depthcam.analysis.DepthAnalysisImpl;
+import fr.inria.papart.depthcam.devices.OpenNIDepth;
+import fr.inria.papart.multitouch.detection.ArmDetection;
+import fr.inria.papart.multitouch.detection.Simple2D;
+import fr.inria.papart.multitouch.tracking.TouchPointTracker;
+import fr.inria.papart.multitouch.tracking.TrackedDepthPoint;
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import processing.core.PApplet;
+
+/**
+ * Depth to touch pipeline, stage by stage, on replayed depth frames. The
+ * same calibration files are used for every run (see the data folder), no
+ * camera and no OpenGL context are needed.
+ *
+ * Results are in ns per frame. Run with the gc profiler to get the
+ * allocation rate (gc.alloc.rate.norm is in bytes per frame):
+ *
+ * java -jar target/benchmarks.jar DepthTouchPipeline -prof gc
+ *
+ * Replay a recording (see DepthRecording) instead of the generated frames:
+ *
+ * java -jar target/benchmarks.jar DepthTouchPipeline -p recording=/path/to/folder
+ *
+ * @author Jeremy Laviole
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class DepthTouchPipelineBenchmark {
+
+    /**
+     * Depth analysis and touch detections, as set by DepthTouchInput.
+     */
+    @State(Scope.Thread)
+    public static class Pipeline {
+
+        /**
+         * Folder of depth-XXXX.raw frames, empty for generated frames.
+         */
+        @Param({""})
+        public String recording;
+
+        /**
+         * Folder of the calibration files.
+         */
+        @Param({"data"})
+        public String calibrationFolder;
+
+        /**
+         * Precision of the depth, same as DepthTouchInput.
+         */
+        @Param({"3"})
+        public int depthPrecision;
+
+        DepthAnalysisImpl depthAnalysis;
+        DepthRecording frames;
+        PlaneAndProjectionCalibration planeAndProjCalibration;
+        Simple2D simpleDetection;
+        ArmDetection armDetection;
+        Compute2D compute2D;
+        int touchPrecision;
+
+        @Setup(Level.Trial)
+        public void setupPipeline() throws Exception {
+            PApplet applet = new PApplet();
+            File folder = new File(calibrationFolder).getAbsoluteFile();
+
+            ProjectiveDeviceP calibDepth = ProjectiveDeviceP.loadCameraDevice(applet,
+                    new File(folder, "depthCamera.xml").getPath());
+
+            planeAndProjCalibration = new PlaneAndProjectionCalibration();
+            planeAndProjCalibration.loadFrom(applet, new File(folder, "PlaneProjectionCalibration.xml").getPath());
+
+            PlanarTouchCalibration touchCalibration = new PlanarTouchCalibration();
+            touchCalibration.loadFrom(applet, new File(folder, "Touch2DCalibration.xml").getPath());
+            PlanarTouchCalibration touchCalibration3D = new PlanarTouchCalibration();
+            touchCalibration3D.loadFrom(applet, new File(folder, "Touch3DCalibration.xml").getPath());
+            touchPrecision = touchCalibration.getPrecision();
+
+            depthAnalysis = new DepthAnalysisImpl(applet, calibDepth, new OpenNIDepth());
+            simpleDetection = new Simple2D(depthAnalysis, touchCalibration);
+            armDetection = new ArmDetection(depthAnalysis, touchCalibration3D);
+            compute2D = new Compute2D(depthAnalysis);
+
+            if (recording.isEmpty()) {
+                frames = DepthRecording.synthetic(calibDepth,
+                        planeAndProjCalibration.getPlaneCalibration(), 30, 42);
+            } else {
+                frames = DepthRecording.load(new File(recording),
+                        calibDepth.getWidth(), calibDepth.getHeight());
+            }
+        }
+
+        void nextDepthFrame() {
+            depthAnalysis.computeDepthAndNormals(frames.next(), null, depthPrecision);
+        }
+    }
+
+    /**
+     * Pipeline with the depth of the next frame computed.
+     */
+    @State(Scope.Thread)
+    public static class DepthReady extends Pipeline {
+
+        @Setup(Level.Invocation)
+        public void computeDepth() {
+            nextDepthFrame();
+        }
+    }
+
+    /**
+     * Pipeline with the touch points of the next frame found, before
+     * tracking.
+     */
+    @State(Scope.Thread)
+    public static class TouchReady extends Pipeline {
+
+        ArrayList<TrackedDepthPoint> trackedPoints = new ArrayList<>();
+        ArrayList<TrackedDepthPoint> newPoints;
+        int imageTime;
+
+        @Setup(Level.Invocation)
+        public void findTouchPoints() {
+            nextDepthFrame();
+            // Selection of the Simple2D points, its own tracking is not used.
+            simpleDetection.findTouch(planeAndProjCalibration);
+            ProjectedDepthData depthData = depthAnalysis.getDepthData();
+            newPoints = simpleDetection.compute(depthData);
+            imageTime = depthData.timeStamp;
+        }
+    }
+
+    @Benchmark
+    public ProjectedDepthData computeDepthAndNormals(Pipeline pipeline) {
+        pipeline.nextDepthFrame();
+        return pipeline.depthAnalysis.getDepthData();
+    }
+
+    @Benchmark
+    public DepthData.DepthSelection find2DTouch(DepthReady pipeline) {
+        pipeline.compute2D.find2DTouch(pipeline.planeAndProjCalibration, pipeline.touchPrecision);
+        return pipeline.compute2D.getSelection();
+    }
+
+    @Benchmark
+    public ArrayList<TrackedDepthPoint> simple2DFindTouch(DepthReady pipeline) {
+        pipeline.simpleDetection.findTouch(pipeline.planeAndProjCalibration);
+        return pipeline.simpleDetection.getTouchPoints();
+    }
+
+    @Benchmark
+    public ArrayList<TrackedDepthPoint> armFindTouch(DepthReady pipeline) {
+        pipeline.armDetection.findTouch(pipeline.planeAndProjCalibration);
+        return pipeline.armDetection.getTouchPoints();
+    }
+
+    @Benchmark
+    public ArrayList<TrackedDepthPoint> trackPoints(TouchReady pipeline) {
+        TouchPointTracker.trackPoints(pipeline.trackedPoints, pipeline.newPoints, pipeline.imageTime);
+        return pipeline.trackedPoints;
+    }
+
+    /**
+     * Same steps as DepthTouchInput.update().
+     *
+     * @param pipeline
+     * @return
+     */
+    @Benchmark
+    public ArrayList<TrackedDepthPoint> fullFrame(Pipeline pipeline) {
+        pipeline.nextDepthFrame();
+        pipeline.simpleDetection.findTouch(pipeline.planeAndProjCalibration);
+        pipeline.armDetection.findTouch(pipeline.planeAndProjCalibration);
+        return pipeline.simpleDetection.getTouchPoints();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2016-2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.benchmarks;
+
+import fr.inria.papart.depthcam.PixelOffset;
+import fr.inria.papart.depthcam.PointArray;
+import fr.inria.papart.depthcam.analysis.DepthAnalysis;
+import fr.inria.papart.depthcam.analysis.DepthAnalysisImpl;
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import java.util.concurrent.TimeUnit;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import processing.core.PApplet;
+import toxi.geom.Vec3D;
+
+/**
+ * Depth back-projection of a frame: the PixelList iterator against the
+ * primitive loops of DepthAnalysisImpl.
+ *
+ * java -jar target/benchmarks.jar PixelIteration -prof gc
+ *
+ * @author Jeremy Laviole
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PixelIterationBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int precision;
+
+    private DepthAnalysisImpl analysis;
+    private SyntheticDepth depth;
+    private SumPixel sumPixel;
+    private SumPoint sumPoint;
+
+    @Setup
+    public void setup() {
+        // Kinect 360 depth camera.
+        int width = 640;
+        int height = 480;
+        ProjectiveDeviceP calib = ProjectiveDeviceP.createSimpleDevice(
+                580f, 580f, 320f, 240f, width, height);
+        depth = new SyntheticDepth(width, height);
+        analysis = new DepthAnalysisImpl(new PApplet(), calib, depth);
+        sumPixel = new SumPixel(analysis.getDepthPoints());
+        sumPoint = new SumPoint();
+    }
+
+    /**
+     * Iterator version, as computeDepthAndDo was implemented before the
+     * primitive loops.
+     *
+     * @return
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public float iterator() {
+        DepthAnalysisImpl.PixelList pixels = analysis.new PixelList(precision);
+        ProjectiveDeviceP calib = analysis.getDepthProjectiveDevice();
+        PointArray points = analysis.getDepthPoints();
+        Vec3D p = new Vec3D();
+        sumPoint.sum = 0;
+
+        for (PixelOffset px : pixels) {
+            float d = depth.findDepth(px.offset);
+            if (d != DepthAnalysisImpl.INVALID_DEPTH) {
+                calib.pixelToWorld(px.x, px.y, d, p);
+                points.set(px.offset, p);
+                sumPoint.execute(p, px);
+            }
+        }
+        return sumPoint.sum;
+    }
+
+    /**
+     * Primitive loops, DepthPointManiplation through the adapter.
+     *
+     * @return
+     */
+    @Benchmark
+    public float pointAdapter() {
+        sumPoint.sum = 0;
+        analysis.computeDepthAndDo(precision, sumPoint);
+        return sumPoint.sum;
+    }
+
+    /**
+     * Primitive loops, DepthPixelManiplation.
+     *
+     * @return
+     */
+    @Benchmark
+    public float primitive() {
+        sumPixel.sum = 0;
+        analysis.computeDepthAndDo(precision, sumPixel);
+        return sumPixel.sum;
+    }
+
+    static class SumPixel implements DepthAnalysis.DepthPixelManiplation {
+
+        private final PointArray points;
+        float sum;
+
+        SumPixel(PointArray points) {
+            this.points = points;
+        }
+
+        @Override
+        public void execute(int offset, int x, int y) {
+            sum += points.z[offset];
+        }
+    }
+
+    static class SumPoint implements DepthAnalysis.DepthPointManiplation {
+
+        float sum;
+
+        @Override
+        public void execute(Vec3D p, PixelOffset px) {
+            sum += p.z;
+        }
+    }
+
+    /**
+     * Tilted plane, one pixel out of 16 has no depth.
+     */
+    static class SyntheticDepth implements DepthAnalysis.DepthComputation {
+
+        private final float[] depth;
+
+        SyntheticDepth(int width, int height) {
+            depth = new float[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int offset = y * width + x;
+                    depth[offset] = (offset % 16 == 0)
+                            ? DepthAnalysisImpl.INVALID_DEPTH
+                            : 800f + y * 0.5f;
+                }
+            }
+        }
+
+        @Override
+        public void updateDepth(IplImage depthImg) {
+        }
+
+        @Override
+        public float findDepth(int offset) {
+            return depth[offset];
+        }
+    }
+}
@@ -27,9 +27,8 @@ import fr.inria.papart.calibration.files.PlaneCalibration;
 import static fr.inria.papart.depthcam.analysis.DepthAnalysis.INVALID_COLOR;
 import static fr.inria.papart.depthcam.analysis.DepthAnalysis.INVALID_POINT;
 import fr.inria.papart.procam.ProjectiveDeviceP;
-import java.util.ArrayList;
+import fr.inria.papart.utils.IntArrayList;
 import java.util.Arrays;
-import toxi.geom.Vec3D;
 
 /**
  * DepthData: 3D point, normal, color, connexity map and origin device.
@@ -40,8 +39,11 @@ public class DepthData {
     /**
      * 3D points viewed by the depth camera.
      */
-    public Vec3D[] depthPoints;
-    public Vec3D[] normals;
+    public PointArray depthPoints;
+    /**
+     * Normals of the 3D points, a zero normal means no normal.
+     */
+    public PointArray normals;
     public int[] pointColors;
 
     public Connexity connexity;
@@ -64,8 +66,26 @@ public class DepthData {
         /**
          * List of valid points
          */
-        public ArrayList<Integer> validPointsList;
+        public IntArrayList validPointsList;
 
+        /**
+         * Empty the selection, to reuse it for another frame.
+         */
+        public void clear() {
+            Arrays.fill(validPointsMask, false);
+            validPointsList.clear();
+        }
+
+        /**
+         * @return a copy, not modified by the next frames.
+         */
+        public DepthSelection copy() {
+            DepthSelection copy = new DepthSelection();
+            copy.validPointsMask = Arrays.copyOf(validPointsMask, validPointsMask.length);
+            copy.validPointsList = new IntArrayList(validPointsList.size());
+            copy.validPointsList.addAll(validPointsList);
+            return copy;
+        }
     }
 
     public DepthData(DepthAnalysis source) {
@@ -73,12 +93,8 @@ public class DepthData {
         int height = source.getHeight();
         this.source = source;
         int size = width * height;
-        depthPoints = new Vec3D[size];
-        normals = new Vec3D[size];
-        for (int i = 0; i < size; i++) {
-            depthPoints[i] = new Vec3D();
-            normals[i] = new Vec3D();
-        }
+        depthPoints = new PointArray(size);
+        normals = new PointArray(size);
 
         createSelection();
         pointColors = new int[size];
@@ -88,8 +104,8 @@ public class DepthData {
 
     public DepthSelection createSelection() {
         DepthSelection selection = new DepthSelection();
-        selection.validPointsMask = new boolean[depthPoints.length];
-        selection.validPointsList = new ArrayList();
+        selection.validPointsMask = new boolean[depthPoints.size()];
+        selection.validPointsList = new IntArrayList();
 //        validPointsMask = new boolean[depthPoints.length];
 //        validPointsList = new ArrayList();
 //        selection.validPointsMask = validPointsMask;
@@ -105,9 +121,9 @@ public class DepthData {
 
     protected void fillDepthDataElement(DepthDataElement dde, int i) {
         dde.pointColor = pointColors[i];
-        dde.depthPoint = depthPoints[i].copy();
-        if (normals[i] != null) {
-            dde.normal = normals[i].copy();
+        dde.depthPoint = depthPoints.get(i);
+        if (hasNormal(i)) {
+            dde.normal = normals.get(i);
         }
         // Is the selection relevant afterwards ?
 //        dde.validPoint = validPointsMask[i];
@@ -116,6 +132,10 @@ public class DepthData {
         dde.offset = i;
     }
 
+    public boolean hasNormal(int offset) {
+        return !normals.isZero(offset);
+    }
+
     public void clear() {
         clearDepth();
 //        clearValidPoints();
@@ -128,10 +148,8 @@ public class DepthData {
     }
 
     public void clearDepth() {
-        for (Vec3D pt : depthPoints) {
-            pt.clear();
-        }
-//        Arrays.fill(this.depthPoints, INVALID_POINT);
+        depthPoints.clear();
+        normals.clear();
     }
 
 //    public void clearValidPoints() {
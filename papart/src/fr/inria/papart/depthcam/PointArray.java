@@ -0,0 +1,173 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2016-2017 RealityTech
+ * Copyright (C) 2014-2016 Inria
+ * Copyright (C) 2011-2013 Bordeaux University
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.depthcam;
+
+import java.util.Arrays;
+import processing.core.PVector;
+import toxi.geom.Vec3D;
+
+/**
+ * Array of 3D points stored as three primitive arrays (structure of arrays).
+ * One instance holds a whole depth frame without allocating one object per
+ * pixel. Use get(offset, out) to read a point in a reused Vec3D.
+ *
+ * @author Jeremy Laviole
+ */
+public class PointArray {
+
+    public final float[] x;
+    public final float[] y;
+    public final float[] z;
+
+    private final int size;
+
+    public PointArray(int size) {
+        this.size = size;
+        x = new float[size];
+        y = new float[size];
+        z = new float[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Set all the points to (0, 0, 0).
+     */
+    public void clear() {
+        Arrays.fill(x, 0);
+        Arrays.fill(y, 0);
+        Arrays.fill(z, 0);
+    }
+
+    public void clear(int offset) {
+        x[offset] = 0;
+        y[offset] = 0;
+        z[offset] = 0;
+    }
+
+    public void set(int offset, float px, float py, float pz) {
+        x[offset] = px;
+        y[offset] = py;
+        z[offset] = pz;
+    }
+
+    public void set(int offset, Vec3D v) {
+        x[offset] = v.x;
+        y[offset] = v.y;
+        z[offset] = v.z;
+    }
+
+    /**
+     * Get a copy of a point.
+     *
+     * @param offset
+     * @return a new Vec3D.
+     */
+    public Vec3D get(int offset) {
+        return new Vec3D(x[offset], y[offset], z[offset]);
+    }
+
+    /**
+     * Get a point without allocation.
+     *
+     * @param offset
+     * @param out filled with the point values.
+     * @return out
+     */
+    public Vec3D get(int offset, Vec3D out) {
+        out.x = x[offset];
+        out.y = y[offset];
+        out.z = z[offset];
+        return out;
+    }
+
+    public PVector getPVector(int offset) {
+        return new PVector(x[offset], y[offset], z[offset]);
+    }
+
+    /**
+     * Same test as DepthAnalysis.isValidPoint.
+     *
+     * @param offset
+     * @return true if no coordinate is 0.
+     */
+    public boolean isValid(int offset) {
+        return x[offset] != 0 && y[offset] != 0 && z[offset] != 0;
+    }
+
+    /**
+     * @param offset
+     * @return true if the point is (0, 0, 0).
+     */
+    public boolean isZero(int offset) {
+        return x[offset] == 0 && y[offset] == 0 && z[offset] == 0;
+    }
+
+    public float distanceToSquared(int offset, int other) {
+        float dx = x[offset] - x[other];
+        float dy = y[offset] - y[other];
+        float dz = z[offset] - z[other];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public float distanceTo(int offset, int other) {
+        return (float) Math.sqrt(distanceToSquared(offset, other));
+    }
+
+    public float distanceToSquared(int offset, Vec3D v) {
+        float dx = x[offset] - v.x;
+        float dy = y[offset] - v.y;
+        float dz = z[offset] - v.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public float distanceTo(int offset, Vec3D v) {
+        return (float) Math.sqrt(distanceToSquared(offset, v));
+    }
+
+    /**
+     * Distance to the origin, same as distanceTo(INVALID_POINT).
+     *
+     * @param offset
+     * @return
+     */
+    public float magnitude(int offset) {
+        return (float) Math.sqrt(x[offset] * x[offset]
+                + y[offset] * y[offset]
+                + z[offset] * z[offset]);
+    }
+
+    /**
+     * Create a Vec3D array, for compatibility with the object API. Allocates
+     * a Vec3D per point.
+     *
+     * @return a copy of all the points.
+     */
+    public Vec3D[] toVec3DArray() {
+        Vec3D[] out = new Vec3D[size];
+        for (int i = 0; i < size; i++) {
+            out[i] = get(i);
+        }
+        return out;
+    }
+}
@@ -28,7 +28,6 @@ import fr.inria.papart.depthcam.DepthData;
 import fr.inria.papart.depthcam.DepthDataElementProjected;
 import fr.inria.papart.depthcam.TouchAttributes;
 import java.util.Arrays;
-import toxi.geom.Vec3D;
 
 /**
  * DepthData with additional information such as plane calibration and its results.
@@ -39,7 +38,7 @@ public class ProjectedDepthData extends DepthData {
     /**
      * Normalized version of the 3D points
      */
-    public Vec3D[] projectedPoints;
+    public PointArray projectedPoints;
 
     /**
      * EXPERIMENTAL: Attributes of the 3D points
@@ -58,11 +57,8 @@ public class ProjectedDepthData extends DepthData {
         super(source);
 
         int size = source.getSize();
-        projectedPoints = new Vec3D[size];
-        for (int i = 0; i < size; i++) {
-            projectedPoints[i] = new Vec3D();
-        }
-        
+        projectedPoints = new PointArray(size);
+
         touchAttributes = new TouchAttributes[size];
         connexity = new Connexity(depthPoints, source.getWidth(), source.getHeight());
 //        connexity = new Connexity(projectedPoints, width, height);
@@ -81,7 +77,7 @@ public class ProjectedDepthData extends DepthData {
 
     protected void fillDepthDataElement(DepthDataElementProjected ddek, int i) {
         super.fillDepthDataElement(ddek, i);
-        ddek.projectedPoint = projectedPoints[i].copy();
+        ddek.projectedPoint = projectedPoints.get(i);
         ddek.touchAttribute = touchAttributes[i];
     }
 
@@ -96,11 +92,7 @@ public class ProjectedDepthData extends DepthData {
     @Override
     public void clearDepth() {
         super.clearDepth();
-
-        for (Vec3D pt : projectedPoints) {
-            pt.clear();
-        }
-//        Arrays.fill(this.projectedPoints, INVALID_POINT);
+        projectedPoints.clear();
     }
 
 }
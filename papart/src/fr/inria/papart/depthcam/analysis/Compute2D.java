@@ -11,6 +11,7 @@ import fr.inria.papart.depthcam.DepthData.DepthSelection;
 import fr.inria.papart.depthcam.PixelOffset;
 import static fr.inria.papart.depthcam.analysis.DepthAnalysis.isInside;
 import fr.inria.papart.depthcam.ProjectedDepthData;
+import fr.inria.papart.utils.IntArrayList;
 import processing.core.PVector;
 import toxi.geom.Vec3D;
 
@@ -35,9 +36,15 @@ public class Compute2D extends DepthRecognition {
      * @param skip2D precision
      */
     public void find2DTouch(PlaneAndProjectionCalibration calib, int skip2D) {
+        updateDepthData();
         // TODO: ensure that this has been computed.
 //         depthData.clearValidPoints();
-        selection = depthData.createSelection();
+        // The selection is reused from one frame to the next.
+        if (selection == null) {
+            selection = depthData.createSelection();
+        } else {
+            selection.clear();
+        }
         depthData.planeAndProjectionCalibration = calib;
         depthAnalysis.doForEachPoint(skip2D, new Select2DPlaneProjection());
 
@@ -50,23 +57,29 @@ public class Compute2D extends DepthRecognition {
         @Override
         public void execute(Vec3D p, PixelOffset px) {
 //            depthData.connexity.compute(px.x, px.y);
-            if (depthData.normals[px.offset] != null) {
-                depthData.normals[px.offset].sub(depthData.planeAndProjectionCalibration.getPlane().normal);
+            if (depthData.hasNormal(px.offset)) {
+                Vec3D planeNormal = depthData.planeAndProjectionCalibration.getPlane().normal;
+                depthData.normals.x[px.offset] -= planeNormal.x;
+                depthData.normals.y[px.offset] -= planeNormal.y;
+                depthData.normals.z[px.offset] -= planeNormal.z;
             }
         }
     }
 
     class Select2DPointPlaneProjection implements DepthAnalysis.DepthPointManiplation {
 
+        private final Vec3D projected = new Vec3D();
+
         @Override
         public void execute(Vec3D p, PixelOffset px) {
             if (depthData.planeAndProjectionCalibration.hasGoodOrientationAndDistance(p)) {
 
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
-                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+                depthData.planeAndProjectionCalibration.project(p, projected);
+                depthData.projectedPoints.set(px.offset, projected);
 
-                if (isInside(depthData.projectedPoints[px.offset], 0.f, 1.f, 0.0f)) {
+                if (isInside(projected, 0.f, 1.f, 0.0f)) {
                     selection.validPointsMask[px.offset] = true;
                     selection.validPointsList.add(px.offset);
                 }
@@ -74,43 +87,75 @@ public class Compute2D extends DepthRecognition {
         }
     }
 
-    class Select2DPlaneProjection implements DepthAnalysis.DepthPointManiplation {
+    /**
+     * Project the points and select the ones close to the plane. Each worker
+     * fills its own list of valid points, merged in row order.
+     */
+    class Select2DPlaneProjection implements DepthAnalysis.ParallelDepthPixelManiplation {
+
+        private final Vec3D p = new Vec3D();
+        private final Vec3D projected = new Vec3D();
+        private final IntArrayList validPoints;
+
+        public Select2DPlaneProjection() {
+            this(selection.validPointsList);
+        }
+
+        private Select2DPlaneProjection(IntArrayList validPoints) {
+            this.validPoints = validPoints;
+        }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
-            depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+        public void execute(int offset, int x, int y) {
+            depthData.depthPoints.get(offset, p);
+            depthData.planeAndProjectionCalibration.project(p, projected);
+            depthData.projectedPoints.set(offset, projected);
 
             if (depthData.planeAndProjectionCalibration.hasGoodOrientationAndDistance(p)
-                    && depthData.projectedPoints[px.offset].x() != 0
-                    && depthData.projectedPoints[px.offset].y() != 0
-                    && depthData.projectedPoints[px.offset].z() != 0) {
+                    && projected.x != 0
+                    && projected.y != 0
+                    && projected.z != 0) {
 
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
 //                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
 //                if (isInside(depthData.projectedPoints[px.offset], 0.f, 1.f, 0.0f)) {
-                selection.validPointsMask[px.offset] = true;
-                selection.validPointsList.add(px.offset);
+                selection.validPointsMask[offset] = true;
+                validPoints.add(offset);
 //                }
             }
 
         }
+
+        @Override
+        public DepthAnalysis.ParallelDepthPixelManiplation createWorker() {
+            return new Select2DPlaneProjection(new IntArrayList());
+        }
+
+        @Override
+        public void merge(DepthAnalysis.ParallelDepthPixelManiplation worker) {
+            validPoints.addAll(((Select2DPlaneProjection) worker).validPoints);
+        }
     }
 
     class Select2DPointPlaneProjectionNormal implements DepthAnalysis.DepthPointManiplation {
 
+        private final Vec3D projected = new Vec3D();
+        private final Vec3D normal = new Vec3D();
+
         @Override
         public void execute(Vec3D p, PixelOffset px) {
             if (depthData.planeAndProjectionCalibration.hasGoodOrientationAndDistance(p)) {
 
 //                System.out.println("Distance " + (depthData.planeAndProjectionCalibration.getPlane().normal).distanceTo(depthData.normals[px.offset]));
-                float normalDistance = (depthData.planeAndProjectionCalibration.getPlane().normal).distanceTo(depthData.normals[px.offset]);
+                float normalDistance = (depthData.planeAndProjectionCalibration.getPlane().normal).distanceTo(depthData.normals.get(px.offset, normal));
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
-                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+                depthData.planeAndProjectionCalibration.project(p, projected);
+                depthData.projectedPoints.set(px.offset, projected);
 
                 // TODO: tweak the 0.3f
-                if (isInside(depthData.projectedPoints[px.offset], 0.f, 1.f, 0.0f)
+                if (isInside(projected, 0.f, 1.f, 0.0f)
                         && normalDistance > 0.3f) {
                     selection.validPointsMask[px.offset] = true;
                     selection.validPointsList.add(px.offset);
@@ -121,6 +166,8 @@ public class Compute2D extends DepthRecognition {
 
     class Select2DPointPlaneProjectionSR300Error implements DepthAnalysis.DepthPointManiplation {
 
+        private final Vec3D projected = new Vec3D();
+
         @Override
         public void execute(Vec3D p, PixelOffset px) {
             float error = Math.abs(p.x / 50f) + p.z / 400f;
@@ -128,9 +175,10 @@ public class Compute2D extends DepthRecognition {
             if (depthData.planeAndProjectionCalibration.hasGoodOrientationAndDistance(p, error)) {
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
-                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+                depthData.planeAndProjectionCalibration.project(p, projected);
+                depthData.projectedPoints.set(px.offset, projected);
 
-                if (isInside(depthData.projectedPoints[px.offset], 0.f, 1.f, 0.0f)) {
+                if (isInside(projected, 0.f, 1.f, 0.0f)) {
                     selection.validPointsMask[px.offset] = true;
                     selection.validPointsList.add(px.offset);
                 }
@@ -178,6 +226,12 @@ public class Compute2D extends DepthRecognition {
         }
     }
 
+    /**
+     * Selection of the last frame. It is cleared and filled again by the
+     * next frame, use DepthSelection.copy() to keep it.
+     *
+     * @return the current selection.
+     */
     public DepthData.DepthSelection getSelection() {
         return selection;
     }
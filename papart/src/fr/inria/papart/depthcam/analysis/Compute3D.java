@@ -10,6 +10,7 @@ import fr.inria.papart.depthcam.DepthData.DepthSelection;
 import fr.inria.papart.depthcam.PixelOffset;
 import static fr.inria.papart.depthcam.analysis.DepthAnalysis.isInside;
 import fr.inria.papart.depthcam.ProjectedDepthData;
+import fr.inria.papart.utils.IntArrayList;
 import toxi.geom.Vec3D;
 
 /**
@@ -38,9 +39,15 @@ public class Compute3D extends DepthRecognition {
      * @param skip3D precision
      */
     public void find3DTouch(PlaneAndProjectionCalibration calib, int skip3D) {
+        updateDepthData();
         // TODO: ensure that this has been computed.
 //        depthData.clearValidPoints();
-        selection = depthData.createSelection();
+        // The selection is reused from one frame to the next.
+        if (selection == null) {
+            selection = depthData.createSelection();
+        } else {
+            selection.clear();
+        }
         depthData.planeAndProjectionCalibration = calib;
         depthAnalysis.doForEachPoint(skip3D, new Select3DPlaneProjection());
 //        doForEachPoint(skip3D, new Select3DPointPlaneProjection()); 
@@ -48,15 +55,18 @@ public class Compute3D extends DepthRecognition {
 
     class Select3DPointPlaneProjection implements DepthAnalysis.DepthPointManiplation {
 
+        private final Vec3D projected = new Vec3D();
+
         @Override
         public void execute(Vec3D p, PixelOffset px) {
             if (depthData.planeAndProjectionCalibration.hasGoodOrientation(p)) {
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
 
-                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+                depthData.planeAndProjectionCalibration.project(p, projected);
+                depthData.projectedPoints.set(px.offset, projected);
 
-                if (isInside(depthData.projectedPoints[px.offset], 0.f, 1.f, 0.1f)) {
+                if (isInside(projected, 0.f, 1.f, 0.1f)) {
                     selection.validPointsMask[px.offset] = true;
                     selection.validPointsList.add(px.offset);
                 }
@@ -64,23 +74,57 @@ public class Compute3D extends DepthRecognition {
         }
     }
 
-    class Select3DPlaneProjection implements DepthAnalysis.DepthPointManiplation {
+    /**
+     * Select the points over the plane. Each worker fills its own list of
+     * valid points, merged in row order.
+     */
+    class Select3DPlaneProjection implements DepthAnalysis.ParallelDepthPixelManiplation {
+
+        private final Vec3D p = new Vec3D();
+        private final Vec3D projected = new Vec3D();
+        private final IntArrayList validPoints;
+
+        public Select3DPlaneProjection() {
+            this(selection.validPointsList);
+        }
+
+        private Select3DPlaneProjection(IntArrayList validPoints) {
+            this.validPoints = validPoints;
+        }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
+        public void execute(int offset, int x, int y) {
+            depthData.depthPoints.get(offset, p);
             if (depthData.planeAndProjectionCalibration.hasGoodOrientation(p)) {
 //                Vec3D projected = depthData.planeAndProjectionCalibration.project(p);
 //                depthData.projectedPoints[px.offset] = projected;
 
-                depthData.planeAndProjectionCalibration.project(p, depthData.projectedPoints[px.offset]);
+                depthData.planeAndProjectionCalibration.project(p, projected);
+                depthData.projectedPoints.set(offset, projected);
 
-                selection.validPointsMask[px.offset] = true;
-                selection.validPointsList.add(px.offset);
+                selection.validPointsMask[offset] = true;
+                validPoints.add(offset);
             }
         }
+
+        @Override
+        public DepthAnalysis.ParallelDepthPixelManiplation createWorker() {
+            return new Select3DPlaneProjection(new IntArrayList());
+        }
+
+        @Override
+        public void merge(DepthAnalysis.ParallelDepthPixelManiplation worker) {
+            validPoints.addAll(((Select3DPlaneProjection) worker).validPoints);
+        }
     }
     
     
+    /**
+     * Selection of the last frame. It is cleared and filled again by the
+     * next frame, use DepthSelection.copy() to keep it.
+     *
+     * @return the current selection.
+     */
     public DepthSelection getSelection() {
         return selection;
     }
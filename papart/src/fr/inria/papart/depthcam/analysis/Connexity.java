@@ -19,7 +19,7 @@
  */
 package fr.inria.papart.depthcam.analysis;
 
-import fr.inria.papart.depthcam.analysis.DepthAnalysis;
+import fr.inria.papart.depthcam.PointArray;
 import java.util.Arrays;
 import toxi.geom.Vec3D;
 
@@ -52,10 +52,10 @@ public class Connexity {
     public static final float DEFAULT_CONNEXITY_DIST = 10;
     public byte[] connexity;
     public byte[] connexitySum;
-    private Vec3D[] points;
+    private PointArray points;
     private int precision = 1;
 
-    public Connexity(Vec3D[] points, int w, int h) {
+    public Connexity(PointArray points, int w, int h) {
         this.width = w;
         this.height = h;
         this.points = points;
@@ -63,7 +63,7 @@ public class Connexity {
         connexitySum = new byte[w * h];
     }
 
-    public void setPoints(Vec3D[] points) {
+    public void setPoints(PointArray points) {
         this.points = points;
     }
 
@@ -81,7 +81,40 @@ public class Connexity {
     }
 
     /**
-     * Get a list of neighbours from a given point.
+     * Get the offsets of the neighbours of a given point, without allocation.
+     * Missing neighbours are set to -1.
+     * @param x
+     * @param y
+     * @param output array of 8 offsets, indexed like the connexity map.
+     * @return the number of neighbours.
+     */
+    public int getNeighbourOffsets(int x, int y, int[] output) {
+        int offset = y * width + x;
+        Arrays.fill(output, -1);
+        int nbNeighbours = connexitySum[offset];
+        if (nbNeighbours == 0) {
+            return 0;
+        }
+
+        byte c = connexity[offset];
+        byte connNo = 0;
+        for (int y1 = y - precision; y1 <= y + precision; y1 = y1 + precision) {
+            for (int x1 = x - precision; x1 <= x + precision; x1 = x1 + precision) {
+                if (x1 == x && y1 == y) {
+                    continue;
+                }
+                if ((c & (1 << connNo)) > 0) {
+                    output[connNo] = y1 * width + x1;
+                }
+                connNo++;
+            }
+        }
+        return nbNeighbours;
+    }
+
+    /**
+     * Get a list of neighbours from a given point. Allocates a copy of each
+     * neighbour, see getNeighbourOffsets for the allocation free version.
      * @param x
      * @param y
      * @return 
@@ -112,7 +145,7 @@ public class Connexity {
 
                 if (valid) {
                     int neighbourOffset = y1 * width + x1;
-                    output[connNo] = points[neighbourOffset];
+                    output[connNo] = points.get(neighbourOffset);
 
                 }
                 connNo++;
@@ -187,13 +220,7 @@ public class Connexity {
         // Todo: Unroll these for loops for optimisation...
         int currentOffset = y * width + x;
 
-        if (points[currentOffset] == null){
-            // We do not care about validity for Normal computing ?!
-//                ||  !DepthAnalysis.isValidPoint(points[currentOffset])) {
-            connexity[currentOffset] = 0;
-            connexitySum[currentOffset] = 0;
-            return;
-        }
+        float connexityDistSq = connexityDist * connexityDist;
 
         byte sum = 0;
         byte type = 0;
@@ -217,9 +244,7 @@ public class Connexity {
 //                if (kinectPoints[currentOffset].distanceTo(kinectPoints[offset]) < connexityDist) {
 //                    type = type | (1 << connNo);
 //                }
-                if (points[offset] != null
-                        && points[offset] != DepthAnalysis.INVALID_POINT
-                        && points[currentOffset].distanceTo(points[offset]) < connexityDist) {
+                if (points.distanceToSquared(currentOffset, offset) < connexityDistSq) {
                     type = (byte) (type | 1 << connNo);
                     sum++;
                 }
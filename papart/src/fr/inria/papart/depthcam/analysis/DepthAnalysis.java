@@ -21,6 +21,7 @@ package fr.inria.papart.depthcam.analysis;
 
 import fr.inria.papart.depthcam.ProjectedDepthData;
 import fr.inria.papart.depthcam.PixelOffset;
+import fr.inria.papart.depthcam.PointArray;
 import fr.inria.papart.utils.WithSize;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import processing.core.PApplet;
@@ -83,6 +84,33 @@ public abstract class DepthAnalysis implements WithSize {
         public void updateDepth(IplImage depthImg);
 
         public float findDepth(int offset);
+
+        /**
+         * Decode the depth of the pixels in [begin, end[ in one pass.
+         *
+         * @param begin first offset.
+         * @param end last offset, excluded.
+         * @param depth output, at the same offsets.
+         */
+        public default void findDepth(int begin, int end, float[] depth) {
+            findDepth(begin, end, 1, depth);
+        }
+
+        /**
+         * Decode the depth of one pixel every step pixels in [begin, end[.
+         * Implementations should override it to read their raw buffer
+         * directly.
+         *
+         * @param begin first offset.
+         * @param end last offset, excluded.
+         * @param step distance between two decoded pixels.
+         * @param depth output, at the same offsets.
+         */
+        public default void findDepth(int begin, int end, int step, float[] depth) {
+            for (int offset = begin; offset < end; offset += step) {
+                depth[offset] = findDepth(offset);
+            }
+        }
     }
 
     public interface InvalidPointManiplation {
@@ -98,23 +126,99 @@ public abstract class DepthAnalysis implements WithSize {
         public void execute(Vec3D p, PixelOffset px);
     }
 
-    class ComputeNormal implements DepthPointManiplation {
+    /**
+     * Run a method on a pixel, without allocation. The 3D point is read in
+     * the depth data at the given offset.
+     */
+    public interface DepthPixelManiplation {
+
+        public void execute(int offset, int x, int y);
+    }
+
+    /**
+     * DepthPixelManiplation that can run on several stripes of rows at the
+     * same time. Each stripe gets its own worker, the workers are merged back
+     * in row order.
+     */
+    public interface ParallelDepthPixelManiplation extends DepthPixelManiplation {
+
+        /**
+         * @return a manipulation safe to use in another thread.
+         */
+        public ParallelDepthPixelManiplation createWorker();
+
+        /**
+         * Gather the results of a worker, called in row order.
+         *
+         * @param worker
+         */
+        public void merge(ParallelDepthPixelManiplation worker);
+    }
+
+    /**
+     * Run a DepthPointManiplation in the pixel loops. The point is copied in
+     * a reused Vec3D, the PixelOffset comes from the static table.
+     */
+    protected class PointManiplationAdapter implements DepthPixelManiplation {
+
+        private final DepthPointManiplation manip;
+        private final Vec3D p = new Vec3D();
+
+        public PointManiplationAdapter(DepthPointManiplation manip) {
+            this.manip = manip;
+        }
+
+        @Override
+        public void execute(int offset, int x, int y) {
+            manip.execute(depthData.depthPoints.get(offset, p), PixelOffset.get(offset));
+        }
+    }
+
+    /**
+     * Compute the connexity and normal of a point. Each worker writes only
+     * at the offset of its point.
+     */
+    class ComputeNormal implements ParallelDepthPixelManiplation {
+
+        private final int[] neighbours = new int[8];
+        private final float[] normal = new float[3];
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
+        public ParallelDepthPixelManiplation createWorker() {
+            return new ComputeNormal();
+        }
 
-            depthData.connexity.compute(px.x, px.y);
-            Vec3D normal = computeNormalImpl(depthData.depthPoints[px.offset], px);
-            depthData.normals[px.offset] = normal;
+        @Override
+        public void merge(ParallelDepthPixelManiplation worker) {
+        }
+
+        @Override
+        public void execute(int offset, int x, int y) {
+
+            depthData.connexity.compute(x, y);
+            if (computeNormalImpl(offset, x, y, neighbours, normal)) {
+                depthData.normals.set(offset, normal[0], normal[1], normal[2]);
+            } else {
+                depthData.normals.clear(offset);
+            }
         }
     }
 
 
-    public class DoNothing implements DepthPointManiplation {
+    public class DoNothing implements ParallelDepthPixelManiplation {
+
+        @Override
+        public void execute(int offset, int x, int y) {
+
+        }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
+        public ParallelDepthPixelManiplation createWorker() {
+            return this;
+        }
 
+        @Override
+        public void merge(ParallelDepthPixelManiplation worker) {
         }
     }
 
@@ -127,7 +231,7 @@ public abstract class DepthAnalysis implements WithSize {
      *
      * @return the array of 3D points.
      */
-    public Vec3D[] getDepthPoints() {
+    public PointArray getDepthPoints() {
         return depthData.depthPoints;
     }
 
@@ -136,63 +240,73 @@ public abstract class DepthAnalysis implements WithSize {
     }
     
     /**
-     * Normal computing method.
-     * @param point
-     * @param px
-     * @return 
+     * Normal computing method, without allocation.
+     * @param offset
+     * @param x
+     * @param y
+     * @param neighbours temporary array of 8 offsets.
+     * @param normal output normal (x, y, z).
+     * @return false if no normal could be computed.
      */
-    protected Vec3D computeNormalImpl(Vec3D point, PixelOffset px) {
+    protected boolean computeNormalImpl(int offset, int x, int y, int[] neighbours, float[] normal) {
 
-        Vec3D[] neighbours = depthData.connexity.getNeighbourList(px.x, px.y);
-        if (depthData.connexity.connexitySum[px.offset] < 2) {
-            return null;
+        if (depthData.connexity.connexitySum[offset] < 2) {
+            return false;
         }
-
-        // TODO: no more allocations here ! 
-//        Vec3D normal = computeNormal(point, neighbours[0], neighbours[1]);
-        Vec3D normal = new Vec3D();
-        // BIG  square around the point. 
-
-        boolean large = tryComputeLarge(neighbours, normal);
+        depthData.connexity.getNeighbourOffsets(x, y, neighbours);
+        PointArray points = depthData.depthPoints;
+        normal[0] = 0;
+        normal[1] = 0;
+        normal[2] = 0;
+
+        // BIG  square around the point. 
+        boolean large = tryComputeLarge(points, neighbours, normal);
         if (!large) {
-            boolean medium = tryComputeMediumSquare(neighbours, normal);
+            boolean medium = tryComputeMediumSquare(points, neighbours, normal);
             if (!medium) {
-                boolean small = tryComputeOneTriangle(neighbours, point, normal);
+                boolean small = tryComputeOneTriangle(points, neighbours, offset, normal);
                 if (!small) {
-                    return null;
+                    return false;
                 }
             }
         }
-//        System.out.println("Normal computed.");
-//        tryComputeMediumSquare(neighbours, normal);
-        // tryComputeOneTriangle(neighbours, point, normal);
-        normal.normalize();
-        return normal;
+        float norm = (float) Math.sqrt(normal[0] * normal[0]
+                + normal[1] * normal[1]
+                + normal[2] * normal[2]);
+        if (norm > 0) {
+            normal[0] /= norm;
+            normal[1] /= norm;
+            normal[2] /= norm;
+        }
+        return true;
+    }
+
+    private static boolean has(int[] neighbours, int direction) {
+        return neighbours[direction] != -1;
     }
 
-    // Null of INVALID ?
     /**
      * Compute the normal of a point.
+     * @param points
      * @param neighbours
      * @param normal
      * @return 
      */
-    private boolean tryComputeLarge(Vec3D[] neighbours, Vec3D normal) {
-        if (neighbours[Connexity.TOPLEFT] != null
-                && neighbours[Connexity.TOPRIGHT] != null
-                && neighbours[Connexity.BOTLEFT] != null
-                && neighbours[Connexity.BOTRIGHT] != null) {
+    private boolean tryComputeLarge(PointArray points, int[] neighbours, float[] normal) {
+        if (has(neighbours, Connexity.TOPLEFT)
+                && has(neighbours, Connexity.TOPRIGHT)
+                && has(neighbours, Connexity.BOTLEFT)
+                && has(neighbours, Connexity.BOTRIGHT)) {
 
-            Vec3D n1 = computeNormal(
+            addNormal(points,
                     neighbours[Connexity.TOPLEFT],
                     neighbours[Connexity.TOPRIGHT],
-                    neighbours[Connexity.BOTLEFT]);
+                    neighbours[Connexity.BOTLEFT], normal);
 
-            Vec3D n2 = computeNormal(
+            addNormal(points,
                     neighbours[Connexity.BOTLEFT],
                     neighbours[Connexity.TOPRIGHT],
-                    neighbours[Connexity.BOTRIGHT]);
-            normal.set(n1.add(n2));
+                    neighbours[Connexity.BOTRIGHT], normal);
             return true;
         }
         return false;
@@ -200,27 +314,27 @@ public abstract class DepthAnalysis implements WithSize {
 
     /**
      * 
+     * @param points
      * @param neighbours
      * @param normal
      * @return 
      */
-    private boolean tryComputeMediumSquare(Vec3D[] neighbours, Vec3D normal) {
+    private boolean tryComputeMediumSquare(PointArray points, int[] neighbours, float[] normal) {
         // small square around the point
-        if (neighbours[Connexity.LEFT] != null
-                && neighbours[Connexity.TOP] != null
-                && neighbours[Connexity.RIGHT] != null
-                && neighbours[Connexity.BOT] != null) {
+        if (has(neighbours, Connexity.LEFT)
+                && has(neighbours, Connexity.TOP)
+                && has(neighbours, Connexity.RIGHT)
+                && has(neighbours, Connexity.BOT)) {
 
-            Vec3D n1 = computeNormal(
+            addNormal(points,
                     neighbours[Connexity.LEFT],
                     neighbours[Connexity.TOP],
-                    neighbours[Connexity.RIGHT]);
+                    neighbours[Connexity.RIGHT], normal);
 
-            Vec3D n2 = computeNormal(
+            addNormal(points,
                     neighbours[Connexity.LEFT],
                     neighbours[Connexity.RIGHT],
-                    neighbours[Connexity.BOT]);
-            normal.set(n1.add(n2));
+                    neighbours[Connexity.BOT], normal);
             return true;
         }
         return false;
@@ -228,45 +342,46 @@ public abstract class DepthAnalysis implements WithSize {
 
     /**
      * Smallest unit of normal computation.
+     * @param points
      * @param neighbours
      * @param point
      * @param normal
      * @return 
      */
-    private boolean tryComputeOneTriangle(Vec3D[] neighbours, Vec3D point, Vec3D normal) {
+    private boolean tryComputeOneTriangle(PointArray points, int[] neighbours, int point, float[] normal) {
         // One triangle only. 
         // Left. 
-        if (neighbours[Connexity.LEFT] != null) {
-            if (neighbours[Connexity.TOP] != null) {
-                normal.set(computeNormal(
+        if (has(neighbours, Connexity.LEFT)) {
+            if (has(neighbours, Connexity.TOP)) {
+                addNormal(points,
                         neighbours[Connexity.LEFT],
                         neighbours[Connexity.TOP],
-                        point));
+                        point, normal);
                 return true;
             } else {
-                if (neighbours[Connexity.BOT] != null) {
-                    normal.set(computeNormal(
+                if (has(neighbours, Connexity.BOT)) {
+                    addNormal(points,
                             neighbours[Connexity.LEFT],
                             point,
-                            neighbours[Connexity.BOT]));
+                            neighbours[Connexity.BOT], normal);
                     return true;
                 }
             }
         } else {
 
-            if (neighbours[Connexity.RIGHT] != null) {
-                if (neighbours[Connexity.TOP] != null) {
-                    normal.set(computeNormal(
+            if (has(neighbours, Connexity.RIGHT)) {
+                if (has(neighbours, Connexity.TOP)) {
+                    addNormal(points,
                             neighbours[Connexity.TOP],
                             neighbours[Connexity.RIGHT],
-                            point));
+                            point, normal);
                     return true;
                 } else {
-                    if (neighbours[Connexity.BOT] != null) {
-                        normal.set(computeNormal(
+                    if (has(neighbours, Connexity.BOT)) {
+                        addNormal(points,
                                 neighbours[Connexity.RIGHT],
                                 neighbours[Connexity.BOT],
-                                point));
+                                point, normal);
                         return true;
                     }
                 }
@@ -275,7 +390,27 @@ public abstract class DepthAnalysis implements WithSize {
         return false;
     }
 
-  
+    /**
+     * Add the normal of the triangle (a, b, c) to the output. Same as
+     * computeNormal, with offsets in the point array.
+     * @param points
+     * @param a
+     * @param b
+     * @param c
+     * @param out 
+     */
+    private static void addNormal(PointArray points, int a, int b, int c, float[] out) {
+        float ux = points.x[b] - points.x[a];
+        float uy = points.y[b] - points.y[a];
+        float uz = points.z[b] - points.z[a];
+        float vx = points.x[c] - points.x[a];
+        float vy = points.y[c] - points.y[a];
+        float vz = points.z[c] - points.z[a];
+        out[0] += uy * vz - uz * vy;
+        out[1] += uz * vx - ux * vz;
+        out[2] += ux * vy - uy * vx;
+    }
+
     /**
      * Compute the normal from 3 points. 
      *  https://www.opengl.org/wiki/Calculating_a_Surface_Normal
@@ -23,6 +23,7 @@ package fr.inria.papart.depthcam.analysis;
 import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
 import fr.inria.papart.depthcam.DepthData;
 import fr.inria.papart.depthcam.PixelOffset;
+import fr.inria.papart.depthcam.PointArray;
 import fr.inria.papart.depthcam.TouchAttributes;
 import fr.inria.papart.depthcam.devices.Kinect360;
 import fr.inria.papart.depthcam.ProjectedDepthData;
@@ -42,6 +43,7 @@ import fr.inria.papart.procam.camera.CameraRealSense;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -49,7 +51,9 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 import org.bytedeco.javacpp.opencv_core;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import processing.core.PApplet;
@@ -64,6 +68,8 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 
     // Configuration 
     private float closeThreshold = 300f, farThreshold = 12000f;
+    private boolean useNearFar = false;
+    private boolean undistortDepth = false;
     protected ProjectiveDeviceP calibDepth, calibColor;
 
     // private variables 
@@ -90,11 +96,17 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 
     @Override
     public int getWidth() {
+        if (depthCameraDevice == null) {
+            return calibDepth.getWidth();
+        }
         return getDepthCameraDevice().getDepthCamera().width();
     }
 
     @Override
     public int getHeight() {
+        if (depthCameraDevice == null) {
+            return calibDepth.getHeight();
+        }
         return getDepthCameraDevice().getDepthCamera().height();
     }
 
@@ -124,6 +136,21 @@ public class DepthAnalysisImpl extends DepthAnalysis {
         // initThreadPool();
     }
 
+    /**
+     * Depth analysis without camera device, to process recorded depth frames.
+     * There is no color image.
+     *
+     * @param parent
+     * @param calibDepth depth camera calibration.
+     * @param depthComputation decoding of the depth frames.
+     */
+    public DepthAnalysisImpl(PApplet parent, ProjectiveDeviceP calibDepth, DepthComputation depthComputation) {
+        DepthAnalysis.papplet = parent;
+        this.calibDepth = calibDepth;
+        this.depthComputationMethod = depthComputation;
+        initMemory();
+    }
+
     public void initWithCalibrations(DepthCameraDevice depthCamera) {
         depthCameraDevice = depthCamera;
         depthComputationMethod = depthCameraDevice.createDepthComputation();
@@ -141,26 +168,198 @@ public class DepthAnalysisImpl extends DepthAnalysis {
         initMemory();
     }
 
-    // Thread version... No bonus whatsoever for now.
-    private int nbThreads = 16;
+    // Parallel version, the image is split in stripes of rows.
+    private boolean useParallel = false;
+    private int nbThreads = Runtime.getRuntime().availableProcessors();
     private ExecutorService threadPool;
 
     private void initThreadPool() {
-        threadPool = Executors.newFixedThreadPool(nbThreads);
+        threadPool = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "DepthAnalysis worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Enable the parallel computation of depth, normals and selections. Each
+     * thread handles a stripe of rows.
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        if (parallel && threadPool == null) {
+            initThreadPool();
+        }
+        this.useParallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return this.useParallel;
+    }
+
+    /**
+     * Set the number of threads, to call before setParallel(true).
+     *
+     * @param nbThreads
+     */
+    public void setNbThreads(int nbThreads) {
+        if (threadPool != null) {
+            threadPool.shutdown();
+            threadPool = null;
+        }
+        this.nbThreads = nbThreads;
+        if (useParallel) {
+            initThreadPool();
+        }
+    }
+
+    public int getNbThreads() {
+        return nbThreads;
+    }
+
+    // Depth data buffers: getDepthData() is the one being computed, the
+    // last complete one is published for the other threads.
+    private int nbDepthBuffers = 3;
+    private ProjectedDepthData[] depthBuffers;
+    private final AtomicReference<ProjectedDepthData> publishedDepthData = new AtomicReference<>();
+
+    /**
+     * Set the number of depth data buffers. With 1 buffer the published data
+     * is the one being computed. With 2, the published data is overwritten
+     * from the next computation. With 3 (default), it is overwritten one
+     * frame after being replaced by a newer one. The buffers are allocated
+     * again.
+     *
+     * @param nbBuffers from 1 to 3.
+     */
+    public void setNbDepthBuffers(int nbBuffers) {
+        if (nbBuffers < 1 || nbBuffers > 3) {
+            throw new IllegalArgumentException("DepthAnalysis: the number of depth buffers must be 1, 2 or 3: " + nbBuffers);
+        }
+        this.nbDepthBuffers = nbBuffers;
+        if (depthBuffers != null && depthBuffers.length != nbBuffers) {
+            initMemory();
+        }
+    }
+
+    public int getNbDepthBuffers() {
+        return nbDepthBuffers;
+    }
+
+    /**
+     * Publish the depth data computed since the last call, it becomes
+     * the one given by getPublishedDepthData(). The next computation uses
+     * another buffer. To call from the thread that computes the depth.
+     */
+    public void publishDepthData() {
+        ProjectedDepthData done = depthData;
+        ProjectedDepthData previous = publishedDepthData.getAndSet(done);
+        for (ProjectedDepthData buffer : depthBuffers) {
+            if (buffer != done && buffer != previous) {
+                depthData = buffer;
+                return;
+            }
+        }
+        // 1 or 2 buffers.
+        for (ProjectedDepthData buffer : depthBuffers) {
+            if (buffer != done) {
+                depthData = buffer;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Last depth data published by publishDepthData(), it is not modified by
+     * the computation of the next frame. Read it once per frame: it can be
+     * overwritten once it is not the last published one.
+     *
+     * @return the depth data, null before the first publication.
+     */
+    public ProjectedDepthData getPublishedDepthData() {
+        return publishedDepthData.get();
+    }
+
+    // Region of the image to process, null for the whole image.
+    private DepthROI roi = null;
+
+    /**
+     * Limit the depth computation and the loops on the points to a region of
+     * the depth image. The depth of the pixels out of the region is invalid.
+     *
+     * @param roi region of the size of the depth image, null for the whole
+     * image.
+     */
+    public void setROI(DepthROI roi) {
+        if (roi != null && (roi.getWidth() != getWidth() || roi.getHeight() != getHeight())) {
+            throw new IllegalArgumentException("DepthAnalysis: the region size "
+                    + roi.getWidth() + "x" + roi.getHeight() + " is not the depth image size.");
+        }
+        this.roi = roi;
+        if (depth != null) {
+            Arrays.fill(depth, INVALID_DEPTH);
+        }
+    }
+
+    public DepthROI getROI() {
+        return roi;
+    }
+
+    /**
+     * First row to process, on the grid of the precision.
+     */
+    private int roiBeginY(int precision) {
+        if (roi == null) {
+            return 0;
+        }
+        return alignUp(roi.getFirstRow(), precision);
+    }
+
+    private int roiEndY() {
+        return roi == null ? calibDepth.getHeight() : roi.getLastRow();
+    }
+
+    /**
+     * First column to process in a row, on the grid of the precision.
+     */
+    private int roiBeginX(int y, int precision) {
+        if (roi == null) {
+            return 0;
+        }
+        return alignUp(roi.getRowBegin(y), precision);
+    }
+
+    private int roiEndX(int y) {
+        return roi == null ? calibDepth.getWidth() : roi.getRowEnd(y);
+    }
+
+    private static int alignUp(int value, int precision) {
+        return (value + precision - 1) / precision * precision;
     }
 
     private void initMemory() {
 //        System.out.println("Allocations: " + getColorSize() + " " + depthCameraDevice.rawDepthSize());
 
-        if (depthCameraDevice.getMainCamera().isPixelFormatGray()) {
+        if (colorCamera == null) {
+            colorRaw = new byte[0];
+        } else if (depthCameraDevice.getMainCamera().isPixelFormatGray()) {
             colorRaw = new byte[getColorSize()];
         } else {
             colorRaw = new byte[getColorSize() * 3];
         }
-        depth = new float[depthCameraDevice.getDepthCamera().width() * depthCameraDevice.getDepthCamera().height()];
+        depth = new float[getWidth() * getHeight()];
 
-        depthData = new ProjectedDepthData(this);
-        depthData.projectiveDevice = this.calibDepth;
+        depthBuffers = new ProjectedDepthData[nbDepthBuffers];
+        for (int i = 0; i < nbDepthBuffers; i++) {
+            depthBuffers[i] = new ProjectedDepthData(this);
+            depthBuffers[i].projectiveDevice = this.calibDepth;
+        }
+        depthData = depthBuffers[0];
+        publishedDepthData.set(null);
         System.out.println("ColorRaw initialized !" + colorRaw.length);
 
         PixelOffset.initStaticMode(getWidth(), getHeight());
@@ -204,8 +403,18 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 
         depthData.connexity.setPrecision(skip2D);
 
-        computeDepthAndDo(skip2D, new ComputeNormal());
+        if (useParallel) {
+            // Normals need the neighbour points: they are computed once
+            // all the stripes have their depth.
+            computeDepthAndDo(skip2D, new DoNothing());
+            doForEachValidDepth(skip2D, new ComputeNormal());
+        } else {
+            computeDepthAndDo(skip2D, new ComputeNormal());
+        }
 
+        if (this.colorCamera == null) {
+            return;
+        }
         if (this.colorCamera.getPixelFormat() == Camera.PixelFormat.GRAY) {
             doForEachPoint(skip2D, new SetImageDataGRAY());
         }
@@ -218,139 +427,350 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 //        doForEachPoint(skip2D, new ComputeNormal());
     }
 
-    public void computeDepthAndDo(int precision, DepthPointManiplation manip) {
-        PixelList pixels = new PixelList(precision);
+    /**
+     * Compute the depth points and run the manipulation on the valid ones.
+     *
+     * @param precision
+     * @param manip
+     */
+    public void computeDepthAndDo(int precision, DepthPixelManiplation manip) {
+        if (useParallel && manip instanceof ParallelDepthPixelManiplation) {
+            runByStripes(precision, (ParallelDepthPixelManiplation) manip, new ComputeDepthStripe());
+            return;
+        }
+        computeDepthRows(precision, roiBeginY(precision), roiEndY(), manip);
+    }
 
-        for (PixelOffset px : pixels) {
-            float d = getDepth(px.offset);
-            // Experimental
-            depth[px.offset] = d;
+    public void computeDepthAndDo(int precision, DepthPointManiplation manip) {
+        computeDepthAndDo(precision, new PointManiplationAdapter(manip));
+    }
 
-            if (d != INVALID_DEPTH) {
-                // Compute the depth point.
-                calibDepth.pixelToWorld(px.x, px.y, d, depthData.depthPoints[px.offset]);
-                manip.execute(depthData.depthPoints[px.offset], px);
+    protected void computeDepthAndDo(int precision, DepthPointManiplation manip, InvalidPointManiplation invalidManip) {
+        int width = calibDepth.getWidth();
+        int height = calibDepth.getHeight();
+        PointManiplationAdapter adapter = new PointManiplationAdapter(manip);
+        float[] pixelRayX = undistortDepth ? calibDepth.getPixelRayX(true) : null;
+        float[] pixelRayY = undistortDepth ? calibDepth.getPixelRayY(true) : null;
+
+        for (int y = 0; y < height; y += precision) {
+            int offset = y * width;
+            decodeDepth(offset, offset + width, precision);
+            for (int x = 0; x < width; x += precision, offset += precision) {
+                float d = depth[offset];
+                if (d != INVALID_DEPTH) {
+                    setDepthPoint(x, y, offset, d, pixelRayX, pixelRayY);
+                    adapter.execute(offset, x, y);
+                } else {
+                    invalidManip.execute(PixelOffset.get(offset));
+                }
             }
         }
     }
 
-    protected void computeDepthAndDo(int precision, DepthPointManiplation manip, InvalidPointManiplation invalidManip) {
-        PixelList pixels = new PixelList(precision);
+    /**
+     * Compute the depth points of the rows in [beginY, endY[.
+     *
+     * @param precision
+     * @param beginY first row.
+     * @param endY last row, excluded.
+     * @param manip
+     */
+    protected void computeDepthRows(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+        int width = calibDepth.getWidth();
+        // Only the pixels read below are decoded.
+        for (int y = beginY; y < endY; y += precision) {
+            decodeDepth(y * width + roiBeginX(y, precision), y * width + roiEndX(y), precision);
+        }
 
-        for (PixelOffset px : pixels) {
+        float[] pointsX = depthData.depthPoints.x;
+        float[] pointsY = depthData.depthPoints.y;
+        float[] pointsZ = depthData.depthPoints.z;
+
+        if (undistortDepth) {
+            // One ray per pixel, the distortion is in the table.
+            float[] rayX = calibDepth.getPixelRayX(true);
+            float[] rayY = calibDepth.getPixelRayY(true);
+            for (int y = beginY; y < endY; y += precision) {
+                int beginX = roiBeginX(y, precision);
+                int endX = roiEndX(y);
+                int offset = y * width + beginX;
+                for (int x = beginX; x < endX; x += precision, offset += precision) {
+                    float d = depth[offset];
+                    if (d != INVALID_DEPTH) {
+                        pointsX[offset] = rayX[offset] * d;
+                        pointsY[offset] = rayY[offset] * d;
+                        pointsZ[offset] = d;
+                        manip.execute(offset, x, y);
+                    }
+                }
+            }
+            return;
+        }
 
-            float d = getDepth(px.offset);
-            if (d != INVALID_DEPTH) {
-//                Vec3D pKinect = calibIR.pixelToWorld(px.x, px.y, d);
-//                depthData.depthPoints[px.offset] = pKinect;
-//                manip.execute(pKinect, px);
+        float[] rayX = calibDepth.getRayX();
+        float[] rayY = calibDepth.getRayY();
+        for (int y = beginY; y < endY; y += precision) {
+            int beginX = roiBeginX(y, precision);
+            int endX = roiEndX(y);
+            int offset = y * width + beginX;
+            float ry = rayY[y];
+            for (int x = beginX; x < endX; x += precision, offset += precision) {
+                float d = depth[offset];
 
-                calibDepth.pixelToWorld(px.x, px.y, d, depthData.depthPoints[px.offset]);
-                manip.execute(depthData.depthPoints[px.offset], px);
+                if (d != INVALID_DEPTH) {
+                    // Compute the depth point.
+                    pointsX[offset] = rayX[x] * d;
+                    pointsY[offset] = ry * d;
+                    pointsZ[offset] = d;
+                    manip.execute(offset, x, y);
+                }
+            }
+        }
+    }
 
-            } else {
-                invalidManip.execute(px);
+    /**
+     * Back-project one pixel, with the same rays as computeDepthRows.
+     *
+     * @param pixelRayX rays of the undistorted pixels, fetched once before
+     * the loop, null without undistortion.
+     * @param pixelRayY
+     */
+    private void setDepthPoint(int x, int y, int offset, float d,
+            float[] pixelRayX, float[] pixelRayY) {
+        if (pixelRayX != null) {
+            PointArray points = depthData.depthPoints;
+            points.x[offset] = pixelRayX[offset] * d;
+            points.y[offset] = pixelRayY[offset] * d;
+            points.z[offset] = d;
+        } else {
+            calibDepth.pixelToWorld(x, y, d, depthData.depthPoints, offset);
+        }
+    }
+
+    /**
+     * Decode the raw depth of the pixels in [begin, end[ in the depth
+     * array. The depth out of the near and far values is invalid.
+     *
+     * @param begin first offset.
+     * @param end last offset, excluded.
+     */
+    protected void decodeDepth(int begin, int end) {
+        decodeDepth(begin, end, 1);
+    }
+
+    /**
+     * Decode the raw depth of one pixel every step pixels in [begin, end[.
+     *
+     * @param begin first offset.
+     * @param end last offset, excluded.
+     * @param step distance between two decoded pixels.
+     */
+    protected void decodeDepth(int begin, int end, int step) {
+        depthComputationMethod.findDepth(begin, end, step, depth);
+        if (useNearFar) {
+            for (int offset = begin; offset < end; offset += step) {
+                if (!isGoodDepth(depth[offset])) {
+                    depth[offset] = INVALID_DEPTH;
+                }
             }
         }
     }
 
-    protected void doForEachPoint(int precision, DepthPointManiplation manip) {
+    protected void doForEachPoint(int precision, DepthPixelManiplation manip) {
         if (precision <= 0) {
             return;
         }
-        PixelList pixels = new PixelList(precision);
+        if (useParallel && manip instanceof ParallelDepthPixelManiplation) {
+            runByStripes(precision, (ParallelDepthPixelManiplation) manip, new ForEachPointStripe());
+            return;
+        }
+        forEachPointRows(precision, roiBeginY(precision), roiEndY(), manip);
+    }
 
-        for (PixelOffset px : pixels) {
-            Vec3D pKinect = depthData.depthPoints[px.offset];
-            if (pKinect != INVALID_POINT) {
-                manip.execute(pKinect, px);
-            }
+    protected void doForEachPoint(int precision, DepthPointManiplation manip) {
+        doForEachPoint(precision, new PointManiplationAdapter(manip));
+    }
 
+    protected void forEachPointRows(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+        int width = calibDepth.getWidth();
+        for (int y = beginY; y < endY; y += precision) {
+            int beginX = roiBeginX(y, precision);
+            int endX = roiEndX(y);
+            int offset = y * width + beginX;
+            for (int x = beginX; x < endX; x += precision, offset += precision) {
+                manip.execute(offset, x, y);
+            }
         }
     }
 
+    /**
+     * Compute the depth points in a square around a point.
+     *
+     * @param precision
+     * @param offset center of the square.
+     * @param dist half size of the square, in steps of precision.
+     * @param manip
+     */
+    public void computeDepthAndDoAround(int precision, int offset, int dist, DepthPixelManiplation manip) {
+        doAround(precision, offset, dist, true, manip);
+    }
+
     public void computeDepthAndDoAround(int precision, int offset, int dist, DepthPointManiplation manip) {
-        PixelListAroundPoint pixels = new PixelListAroundPoint(precision, offset, dist);
-        for (PixelOffset px : pixels) {
-            float d = getDepth(px.offset);
-            // Experimental
-            depth[px.offset] = d;
-
-            if (d != INVALID_DEPTH) {
-                // Compute the depth point.
-                calibDepth.pixelToWorld(px.x, px.y, d, depthData.depthPoints[px.offset]);
-                manip.execute(depthData.depthPoints[px.offset], px);
-            }
-        }
+        doAround(precision, offset, dist, true, new PointManiplationAdapter(manip));
     }
 
-    protected void doForEachPointAround(int precision, int offset, int dist, DepthPointManiplation manip) {
+    protected void doForEachPointAround(int precision, int offset, int dist, DepthPixelManiplation manip) {
         if (precision <= 0) {
             return;
         }
-        PixelListAroundPoint pixels = new PixelListAroundPoint(precision, offset, dist);
+        doAround(precision, offset, dist, false, manip);
+    }
 
-        for (PixelOffset px : pixels) {
-            Vec3D pKinect = depthData.depthPoints[px.offset];
-            if (pKinect != INVALID_POINT) {
-                manip.execute(pKinect, px);
+    protected void doForEachPointAround(int precision, int offset, int dist, DepthPointManiplation manip) {
+        doForEachPointAround(precision, offset, dist, new PointManiplationAdapter(manip));
+    }
+
+    /**
+     * Same pixels as the PixelListAroundPoint: the columns in [beginX,
+     * endX[ and the rows in [beginY, endY].
+     */
+    private void doAround(int precision, int pointOffset, int dist, boolean computeDepth, DepthPixelManiplation manip) {
+        int width = calibDepth.getWidth();
+        int height = calibDepth.getHeight();
+        int amount = dist * precision;
+
+        int beginX = Math.max(pointOffset % width - amount, 0);
+        int beginY = Math.max(pointOffset / width - amount, 0);
+        int endX = Math.min(pointOffset % width + amount, width - precision);
+        int endY = Math.min(pointOffset / width + amount, height - precision);
+        float[] pixelRayX = computeDepth && undistortDepth ? calibDepth.getPixelRayX(true) : null;
+        float[] pixelRayY = computeDepth && undistortDepth ? calibDepth.getPixelRayY(true) : null;
+
+        for (int y = beginY; y <= endY; y += precision) {
+            int offset = beginX + y * width;
+            for (int x = beginX; x < endX; x += precision, offset += precision) {
+                if (computeDepth) {
+                    float d = getDepth(offset);
+                    if (useNearFar && !isGoodDepth(d)) {
+                        d = INVALID_DEPTH;
+                    }
+                    // Experimental
+                    depth[offset] = d;
+                    if (d == INVALID_DEPTH) {
+                        continue;
+                    }
+                    setDepthPoint(x, y, offset, d, pixelRayX, pixelRayY);
+                }
+                manip.execute(offset, x, y);
             }
+        }
+    }
 
+    protected void doForEachValidPoint(int precision, DepthPixelManiplation manip,
+            DepthData.DepthSelection selection) {
+        if (precision <= 0) {
+            return;
+        }
+        if (useParallel && manip instanceof ParallelDepthPixelManiplation) {
+            runByStripes(precision, (ParallelDepthPixelManiplation) manip, new ForEachValidPointStripe(selection));
+            return;
         }
+        forEachValidPointRows(precision, roiBeginY(precision), roiEndY(), manip, selection);
     }
 
     protected void doForEachValidPoint(int precision, DepthPointManiplation manip,
             DepthData.DepthSelection selection) {
+        doForEachValidPoint(precision, new PointManiplationAdapter(manip), selection);
+    }
+
+    protected void forEachValidPointRows(int precision, int beginY, int endY,
+            DepthPixelManiplation manip, DepthData.DepthSelection selection) {
+        int width = calibDepth.getWidth();
+        boolean[] mask = selection.validPointsMask;
+        for (int y = beginY; y < endY; y += precision) {
+            int beginX = roiBeginX(y, precision);
+            int endX = roiEndX(y);
+            int offset = y * width + beginX;
+            for (int x = beginX; x < endX; x += precision, offset += precision) {
+                if (mask[offset]) {
+                    manip.execute(offset, x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a manipulation on the points with a valid depth in the last
+     * computeDepthAndDo call.
+     *
+     * @param precision
+     * @param manip
+     */
+    protected void doForEachValidDepth(int precision, DepthPixelManiplation manip) {
         if (precision <= 0) {
             return;
         }
+        if (useParallel && manip instanceof ParallelDepthPixelManiplation) {
+            runByStripes(precision, (ParallelDepthPixelManiplation) manip, new ForEachValidDepthStripe());
+            return;
+        }
+        forEachValidDepthRows(precision, roiBeginY(precision), roiEndY(), manip);
+    }
 
-        PixelList pixels = new PixelList(precision);
+    protected void doForEachValidDepth(int precision, DepthPointManiplation manip) {
+        doForEachValidDepth(precision, new PointManiplationAdapter(manip));
+    }
 
-        for (PixelOffset px : pixels) {
-            Vec3D pKinect = depthData.depthPoints[px.offset];
-            if (pKinect != INVALID_POINT && selection.validPointsMask[px.offset] == true) {
-                manip.execute(pKinect, px);
+    protected void forEachValidDepthRows(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+        int width = calibDepth.getWidth();
+        for (int y = beginY; y < endY; y += precision) {
+            int beginX = roiBeginX(y, precision);
+            int endX = roiEndX(y);
+            int offset = y * width + beginX;
+            for (int x = beginX; x < endX; x += precision, offset += precision) {
+                if (depth[offset] != INVALID_DEPTH) {
+                    manip.execute(offset, x, y);
+                }
             }
         }
     }
 
-    class SetImageData implements DepthPointManiplation {
+    class SetImageData implements DepthPixelManiplation {
 
         public SetImageData() {
             super();
         }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
-//            depthData.validPointsMask[px.offset] = true;
-            setPixelColor(px.offset);
+        public void execute(int offset, int x, int y) {
+//            depthData.validPointsMask[offset] = true;
+            setPixelColor(offset);
         }
     }
 
-    class SetImageDataRGB implements DepthPointManiplation {
+    class SetImageDataRGB implements DepthPixelManiplation {
 
         public SetImageDataRGB() {
             super();
         }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
-//            depthData.validPointsMask[px.offset] = true;
-            setPixelColorRGB(px.offset);
+        public void execute(int offset, int x, int y) {
+//            depthData.validPointsMask[offset] = true;
+            setPixelColorRGB(offset);
         }
     }
 
-    protected class SetImageDataGRAY implements DepthPointManiplation {
+    protected class SetImageDataGRAY implements DepthPixelManiplation {
 
         public SetImageDataGRAY() {
             super();
         }
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
-//            depthData.validPointsMask[px.offset] = true;
-            setPixelColorGRAY(px.offset);
+        public void execute(int offset, int x, int y) {
+//            depthData.validPointsMask[offset] = true;
+            setPixelColorGRAY(offset);
         }
     }
 
@@ -358,7 +778,7 @@ public class DepthAnalysisImpl extends DepthAnalysis {
     protected int setPixelColor(int offset) {
 
         // TODO: Get a cleaner way go obtain the color... 
-        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints[offset]) * 3;
+        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints.x[offset], depthData.depthPoints.y[offset], depthData.depthPoints.z[offset]) * 3;
 
         int c;
         // Do not set invalid pixels
@@ -376,7 +796,7 @@ public class DepthAnalysisImpl extends DepthAnalysis {
     protected int setPixelColorRGB(int offset) {
 
         // TODO: Get a cleaner way go obtain the color... 
-        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints[offset]) * 3;
+        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints.x[offset], depthData.depthPoints.y[offset], depthData.depthPoints.z[offset]) * 3;
 
         int c;
         // Do not set invalid pixels
@@ -393,7 +813,7 @@ public class DepthAnalysisImpl extends DepthAnalysis {
     }
 
     protected int setPixelColorGRAY(int offset) {
-        int colorOffset = depthCameraDevice.findMainImageOffset(depthData.depthPoints[offset]);
+        int colorOffset = depthCameraDevice.findMainImageOffset(depthData.depthPoints.x[offset], depthData.depthPoints.y[offset], depthData.depthPoints.z[offset]);
 
         int c;
         // Do not set invalid pixels
@@ -425,7 +845,7 @@ public class DepthAnalysisImpl extends DepthAnalysis {
         int worldToPixel = getDepthCameraDevice().getDepthCamera().getProjectiveDevice().worldToPixel(v2);
 
         // Point viewed in the depth camera point of view. 
-        PVector pointDepth = MathUtils.toPVector(depthData.depthPoints[worldToPixel]);
+        PVector pointDepth = depthData.depthPoints.getPVector(worldToPixel);
 
         return pointDepth;
         // get it back in the RGB point of view.
@@ -444,9 +864,33 @@ public class DepthAnalysisImpl extends DepthAnalysis {
         colBuff.get(colorRaw);
     }
 
+    /**
+     * Filter the depth: the values out of [near, far[ are invalid. The
+     * filter is disabled until this is called.
+     *
+     * @param near in millimeters.
+     * @param far in millimeters.
+     */
     public void setNearFarValue(float near, float far) {
         this.closeThreshold = near;
         this.farThreshold = far;
+        this.useNearFar = true;
+    }
+
+    /**
+     * Remove the lens distortion of the depth camera in the depth points.
+     * The undistorted rays are computed once per calibration, so this has
+     * no cost per frame. It has no effect when the depth calibration has no
+     * distortion coefficients.
+     *
+     * @param undistort
+     */
+    public void setUndistortDepth(boolean undistort) {
+        this.undistortDepth = undistort;
+    }
+
+    public boolean isUndistortDepth() {
+        return this.undistortDepth;
     }
 
     /**
@@ -508,7 +952,7 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 
         @Override
         public void execute(Vec3D p, PixelOffset px) {
-            depthData.depthPoints[px.offset].z = getAverageValue(p, px);
+            depthData.depthPoints.z[px.offset] = getAverageValue(p, px);
         }
     }
 
@@ -532,14 +976,14 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 //                if (px.x == px.y) {
 //                    System.out.println("coeff: " +xCoeff);
 //                }
-                depthData.depthPoints[px.offset].z = p.z * xCoeff;
+                depthData.depthPoints.z[px.offset] = p.z * xCoeff;
 
             }
         }
     }
 
     protected int getPixelColor(int offset) {
-        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints[offset]) * 3;
+        int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints.x[offset], depthData.depthPoints.y[offset], depthData.depthPoints.z[offset]) * 3;
         int c = (colorRaw[colorOffset + 2] & 0xFF) << 16
                 | (colorRaw[colorOffset + 1] & 0xFF) << 8
                 | (colorRaw[colorOffset + 0] & 0xFF);
@@ -549,7 +993,10 @@ public class DepthAnalysisImpl extends DepthAnalysis {
     /**
      * List of pixels, used to iterate in images.
      *
+     * @deprecated the loops of DepthAnalysisImpl use primitive offsets, see
+     * DepthPixelManiplation.
      */
+    @Deprecated
     public class PixelList implements Iterable<PixelOffset> {
 
         int precision = 1;
@@ -579,10 +1026,10 @@ public class DepthAnalysisImpl extends DepthAnalysis {
         public Iterator<PixelOffset> iterator() {
             Iterator<PixelOffset> it = new Iterator<PixelOffset>() {
 
+                private final int width = calibDepth.getWidth();
                 private int x = 0;
                 private int y = beginY;
-                private int offset = 0;
-                private final int width = calibDepth.getWidth();
+                private int offset = beginY * width;
 
                 @Override
                 public boolean hasNext() {
@@ -618,7 +1065,10 @@ public class DepthAnalysisImpl extends DepthAnalysis {
 
     /**
      * Pixel list that creates a square around a given pixel.
+     *
+     * @deprecated see computeDepthAndDoAround.
      */
+    @Deprecated
     public class PixelListAroundPoint implements Iterable<PixelOffset> {
 
         private final int width = calibDepth.getWidth();
@@ -693,71 +1143,112 @@ public class DepthAnalysisImpl extends DepthAnalysis {
     }
 
     /**
-     * Do the computing in a parallel manner. - Slower than sequential for now.
+     * Split the image in stripes of rows, and run the stripe on each of them
+     * in the thread pool. The workers are merged back in row order, so the
+     * results are the same as the sequential version.
      *
      * @param precision
      * @param manip
+     * @param stripe
      */
-    protected void computeDepthAndDoParallel(int precision, DepthPointManiplation manip) {
-        ArrayList<FutureTask<DepthPixelTask>> tasks = new ArrayList<>();
-        for (int i = 0; i < nbThreads; i++) {
-            DepthPixelTask depthPixelTask = new DepthPixelTask(i, nbThreads, precision, manip);
-            FutureTask<DepthPixelTask> task = new FutureTask<DepthPixelTask>(depthPixelTask);
-            threadPool.submit(task);
-            tasks.add(task);
+    protected void runByStripes(int precision, ParallelDepthPixelManiplation manip, Stripe stripe) {
+        int first = roiBeginY(precision);
+        int last = roiEndY();
+        int nbRows = (last - first + precision - 1) / precision;
+        if (nbRows <= 0) {
+            return;
+        }
+        int nbParts = Math.min(nbThreads, nbRows);
+
+        ArrayList<StripeTask> tasks = new ArrayList<>(nbParts);
+        for (int i = 0; i < nbParts; i++) {
+            int begin = first + (nbRows * i / nbParts) * precision;
+            int end = Math.min(first + (nbRows * (i + 1) / nbParts) * precision, last);
+            tasks.add(new StripeTask(stripe, precision, begin, end, manip.createWorker()));
         }
         try {
-            for (FutureTask<DepthPixelTask> task : tasks) {
-                task.get();
+            for (Future<Object> future : threadPool.invokeAll(tasks)) {
+                future.get();
             }
-        } catch (ExecutionException e) {
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Depth analysis stripe failed.", e.getCause());
+        }
+        for (StripeTask task : tasks) {
+            manip.merge(task.worker);
         }
     }
 
     /**
-     * Task that does pixel manipulation.
+     * Loop of a stripe, the same loops as the sequential versions.
      */
-    class DepthPixelTask implements Callable {
+    protected abstract class Stripe {
 
-        private int part;
-        private int nbThreads;
-        private int precision;
-        private DepthPointManiplation manip;
+        abstract void process(int precision, int beginY, int endY, DepthPixelManiplation manip);
+    }
 
-        public DepthPixelTask(int part, int nbThreads, int precision, DepthPointManiplation manip) {
-            this.part = part;
-            this.nbThreads = nbThreads;
-            this.precision = precision;
-            this.manip = manip;
+    class ComputeDepthStripe extends Stripe {
+
+        @Override
+        void process(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+            computeDepthRows(precision, beginY, endY, manip);
         }
+    }
+
+    class ForEachPointStripe extends Stripe {
 
         @Override
-        public Object call() {
+        void process(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+            forEachPointRows(precision, beginY, endY, manip);
+        }
+    }
 
-            int nbParts = nbThreads;
-            int partSize = nbParts / calibDepth.getHeight();
-            int begin = partSize * part;
+    class ForEachValidDepthStripe extends Stripe {
 
-            int end;
-            if (part == nbThreads - 1) {
-                end = calibDepth.getHeight();
-            } else {
-                end = partSize * (part + 1);
-            }
+        @Override
+        void process(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+            forEachValidDepthRows(precision, beginY, endY, manip);
+        }
+    }
 
-            PixelList pixels = new PixelList(precision, begin, end);
+    class ForEachValidPointStripe extends Stripe {
 
-            for (PixelOffset px : pixels) {
-                float d = getDepth(px.offset);
-                if (d != INVALID_DEPTH) {
-//                    Vec3D pKinect = calibIR.pixelToWorld(px.x, px.y, d);
-//                    depthData.depthPoints[px.offset] = pKinect;
+        private final DepthData.DepthSelection selection;
 
-                    calibDepth.pixelToWorld(px.x, px.y, d, depthData.depthPoints[px.offset]);
-                    manip.execute(depthData.depthPoints[px.offset], px);
-                }
-            }
+        ForEachValidPointStripe(DepthData.DepthSelection selection) {
+            this.selection = selection;
+        }
+
+        @Override
+        void process(int precision, int beginY, int endY, DepthPixelManiplation manip) {
+            forEachValidPointRows(precision, beginY, endY, manip, selection);
+        }
+    }
+
+    /**
+     * Task that runs a stripe on a part of the image.
+     */
+    class StripeTask implements Callable<Object> {
+
+        private final Stripe stripe;
+        private final int precision;
+        private final int beginY;
+        private final int endY;
+        private final ParallelDepthPixelManiplation worker;
+
+        public StripeTask(Stripe stripe, int precision, int beginY, int endY, ParallelDepthPixelManiplation worker) {
+            this.stripe = stripe;
+            this.precision = precision;
+            this.beginY = beginY;
+            this.endY = endY;
+            this.worker = worker;
+        }
+
+        @Override
+        public Object call() {
+            stripe.process(precision, beginY, endY, worker);
             return null;
         }
 
@@ -79,13 +79,15 @@ public class DepthAnalysisOpenCvView extends DepthAnalysisImpl {
         outputBuff.put(validPointsRaw);
     }
 
-    class setImageData implements DepthPointManiplation {
+    class setImageData implements DepthPixelManiplation {
 
         @Override
-        public void execute(Vec3D p, PixelOffset px) {
-//            depthData.validPointsMask[px.offset] = true;
-            int outputOffset = px.offset * 3;
-            int colorOffset = depthCameraDevice.findColorOffset(p) * 3;
+        public void execute(int offset, int x, int y) {
+//            depthData.validPointsMask[offset] = true;
+            int outputOffset = offset * 3;
+            int colorOffset = depthCameraDevice.findColorOffset(depthData.depthPoints.x[offset],
+                    depthData.depthPoints.y[offset],
+                    depthData.depthPoints.z[offset]) * 3;
             validPointsRaw[outputOffset + 2] = colorRaw[colorOffset + 2];
             validPointsRaw[outputOffset + 1] = colorRaw[colorOffset + 1];
             validPointsRaw[outputOffset + 0] = colorRaw[colorOffset + 0];
@@ -0,0 +1,261 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.depthcam.analysis;
+
+import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import java.util.Arrays;
+import processing.core.PMatrix3D;
+import toxi.geom.Plane;
+import toxi.geom.Vec3D;
+
+/**
+ * Region of the depth image to process: one span of columns per row. The
+ * region of a plane calibration contains the pixels that can see a point
+ * above the plane (up to a maximum height) projected inside the calibrated
+ * area.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class DepthROI {
+
+    // Points tested along each ray, between the plane and the maximum height.
+    private static final int RAY_SAMPLES = 8;
+
+    private final int width, height;
+    private final int[] rowBegin, rowEnd;
+    private int firstRow = 0, lastRow = 0;
+    private int nbPixels = 0;
+    private float[] signature = null;
+
+    /**
+     * Empty region.
+     *
+     * @param width
+     * @param height
+     */
+    public DepthROI(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rowBegin = new int[height];
+        this.rowEnd = new int[height];
+    }
+
+    /**
+     * Region of the points that can be selected with a plane calibration.
+     *
+     * @param calibDepth depth camera calibration.
+     * @param calib plane and projection of the touch surface.
+     * @param maxHeight maximum height of the points above the plane, in mm.
+     * @param margin margin around the calibrated area, in normalized
+     * coordinates (the area is [0, 1]).
+     * @param border pixels added around the region, for the normals and the
+     * connexity of the points on its border.
+     * @return the region.
+     */
+    public static DepthROI fromPlane(ProjectiveDeviceP calibDepth,
+            PlaneAndProjectionCalibration calib,
+            float maxHeight, float margin, int border) {
+        int w = calibDepth.getWidth();
+        int h = calibDepth.getHeight();
+        DepthROI roi = new DepthROI(w, h);
+        roi.signature = signatureOf(calib, maxHeight, margin, border);
+
+        float[] rayX = calibDepth.getRayX();
+        float[] rayY = calibDepth.getRayY();
+        Plane plane = calib.getPlane();
+        Vec3D n = plane.normal;
+        float planeDist = plane.dot(n);
+
+        int[] begin = new int[h];
+        int[] end = new int[h];
+        Vec3D p = new Vec3D();
+        Vec3D projected = new Vec3D();
+        for (int y = 0; y < h; y++) {
+            begin[y] = w;
+            end[y] = 0;
+            for (int x = 0; x < w; x++) {
+                // Ray (rayX, rayY, 1), it hits the plane at t0.
+                float rn = rayX[x] * n.x + rayY[y] * n.y + n.z;
+                if (Math.abs(rn) < 1e-6f) {
+                    continue;
+                }
+                float t0 = planeDist / rn;
+                if (t0 <= 0) {
+                    continue;
+                }
+                // The distance to the plane is |t - t0| * |rn|, on the side of
+                // the valid orientation.
+                float t1 = Math.max(t0 - maxHeight / rn, 0);
+                for (int i = 0; i < RAY_SAMPLES; i++) {
+                    float t = t0 + (t1 - t0) * i / (RAY_SAMPLES - 1);
+                    p.set(rayX[x] * t, rayY[y] * t, t);
+                    calib.project(p, projected);
+                    if (DepthAnalysis.isInside(projected, 0f, 1f, margin)) {
+                        begin[y] = Math.min(begin[y], x);
+                        end[y] = Math.max(end[y], x + 1);
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int y = 0; y < h; y++) {
+            int b = w;
+            int e = 0;
+            for (int y2 = Math.max(y - border, 0); y2 <= Math.min(y + border, h - 1); y2++) {
+                if (begin[y2] < end[y2]) {
+                    b = Math.min(b, begin[y2] - border);
+                    e = Math.max(e, end[y2] + border);
+                }
+            }
+            if (b < e) {
+                roi.setRow(y, Math.max(b, 0), Math.min(e, w));
+            }
+        }
+        return roi;
+    }
+
+    private static float[] signatureOf(PlaneAndProjectionCalibration calib,
+            float maxHeight, float margin, int border) {
+        Plane plane = calib.getPlane();
+        float[] homography = new float[16];
+        PMatrix3D mat = calib.getHomography();
+        mat.get(homography);
+        float[] s = Arrays.copyOf(homography, 16 + 10);
+        s[16] = plane.x;
+        s[17] = plane.y;
+        s[18] = plane.z;
+        s[19] = plane.normal.x;
+        s[20] = plane.normal.y;
+        s[21] = plane.normal.z;
+        s[22] = calib.getPlaneHeight();
+        s[23] = maxHeight;
+        s[24] = margin;
+        s[25] = border;
+        return s;
+    }
+
+    /**
+     * @param calib
+     * @param maxHeight
+     * @param margin
+     * @param border
+     * @return true if the region was computed with these parameters.
+     */
+    public boolean isComputedFrom(PlaneAndProjectionCalibration calib,
+            float maxHeight, float margin, int border) {
+        return signature != null
+                && Arrays.equals(signature, signatureOf(calib, maxHeight, margin, border));
+    }
+
+    /**
+     * Set the columns [begin, end[ of a row.
+     *
+     * @param y
+     * @param begin
+     * @param end
+     */
+    public void setRow(int y, int begin, int end) {
+        nbPixels -= rowEnd[y] - rowBegin[y];
+        if (begin >= end) {
+            begin = 0;
+            end = 0;
+        }
+        rowBegin[y] = begin;
+        rowEnd[y] = end;
+        nbPixels += end - begin;
+        updateRows();
+    }
+
+    private void updateRows() {
+        firstRow = 0;
+        while (firstRow < height && rowBegin[firstRow] == rowEnd[firstRow]) {
+            firstRow++;
+        }
+        lastRow = height;
+        while (lastRow > firstRow && rowBegin[lastRow - 1] == rowEnd[lastRow - 1]) {
+            lastRow--;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return first row with pixels.
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * @return last row with pixels + 1.
+     */
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * @param y row.
+     * @return first column of the row.
+     */
+    public int getRowBegin(int y) {
+        return rowBegin[y];
+    }
+
+    /**
+     * @param y row.
+     * @return last column of the row + 1, equals getRowBegin when the row is
+     * empty.
+     */
+    public int getRowEnd(int y) {
+        return rowEnd[y];
+    }
+
+    public boolean contains(int x, int y) {
+        return y >= 0 && y < height && x >= rowBegin[y] && x < rowEnd[y];
+    }
+
+    public int getNbPixels() {
+        return nbPixels;
+    }
+
+    public boolean isEmpty() {
+        return nbPixels == 0;
+    }
+
+    /**
+     * @return part of the image in the region, from 0 to 1.
+     */
+    public float getCoverage() {
+        return (float) nbPixels / (width * height);
+    }
+
+    @Override
+    public String toString() {
+        return "DepthROI rows " + firstRow + " to " + lastRow + ", "
+                + (int) (getCoverage() * 100) + "% of the image";
+    }
+}
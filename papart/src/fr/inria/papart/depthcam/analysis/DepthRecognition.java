@@ -15,11 +15,19 @@ import fr.inria.papart.depthcam.ProjectedDepthData;
 public abstract class DepthRecognition {
 
     protected final DepthAnalysisImpl depthAnalysis;
-    protected final ProjectedDepthData depthData;
+    protected ProjectedDepthData depthData;
 
     public DepthRecognition(DepthAnalysisImpl depthAnalysis) {
         this.depthAnalysis = depthAnalysis;
         this.depthData = depthAnalysis.depthData;
     }
+
+    /**
+     * Use the depth data being computed, the depth analysis changes it after
+     * each publication.
+     */
+    protected void updateDepthData() {
+        this.depthData = depthAnalysis.getDepthData();
+    }
     
 }
@@ -22,8 +22,11 @@ package fr.inria.papart.depthcam.devices;
 
 /**
  * Abstraction for finding depth for each device.
+ * @deprecated replaced by DepthAnalysis.DepthComputation, created by
+ * DepthCameraDevice.createDepthComputation().
  * @author Jeremy Laviole
  */
+@Deprecated
 public interface DepthComputation {
 
     public float findDepth(int offset, Object buffer);
@@ -97,6 +97,15 @@ public class Kinect360 extends DepthCameraDevice {
             return d;
         }
 
+        @Override
+        public void findDepth(int begin, int end, int step, float[] depth) {
+            byte[] raw = depthRaw;
+            for (int offset = begin; offset < end; offset += step) {
+                depth[offset] = (raw[offset * 2] & 0xFF) << 8
+                        | (raw[offset * 2 + 1] & 0xFF);
+            }
+        }
+
         @Override
         public void updateDepth(IplImage depthImage) {
             depthImage.getByteBuffer().get(depthRaw);
@@ -90,6 +90,16 @@ public final class KinectOne extends DepthCameraDevice {
             return d / KINECT_ONE_DEPTH_RATIO; // / 65535f * 10000f;
         }
 
+        @Override
+        public void findDepth(int begin, int end, int step, float[] depth) {
+            byte[] raw = depthRaw;
+            for (int offset = begin; offset < end; offset += step) {
+                float d = (raw[offset * 3 + 1] & 0xFF) * 256
+                        + (raw[offset * 3] & 0xFF);
+                depth[offset] = d / KINECT_ONE_DEPTH_RATIO;
+            }
+        }
+
         @Override
         public void updateDepth(opencv_core.IplImage depthImage) {
             depthImage.getByteBuffer().get(depthRaw);
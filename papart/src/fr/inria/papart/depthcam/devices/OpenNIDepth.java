@@ -17,6 +17,7 @@ import org.bytedeco.javacpp.opencv_core;
 public class OpenNIDepth implements DepthAnalysis.DepthComputation {
 
     private ShortBuffer frameData;
+    private short[] depthRaw;
     float[] histogram;
 
     public OpenNIDepth() {
@@ -31,8 +32,34 @@ public class OpenNIDepth implements DepthAnalysis.DepthComputation {
         return depth;
     }
 
+    @Override
+    public void findDepth(int begin, int end, int step, float[] depth) {
+        if (step != 1) {
+            // Only the sampled pixels, absolute reads do not move the buffer.
+            ShortBuffer buffer = frameData;
+            for (int offset = begin; offset < end; offset += step) {
+                int d = buffer.get(offset) & 0xFFFF;
+                depth[offset] = d == 0 ? INVALID_DEPTH : d;
+            }
+            return;
+        }
+        // Bulk copy, on a duplicate: the stripes decode at the same time.
+        ShortBuffer buffer = frameData.duplicate();
+        buffer.position(begin);
+        buffer.get(depthRaw, begin, end - begin);
+
+        short[] raw = depthRaw;
+        for (int offset = begin; offset < end; offset++) {
+            int d = raw[offset] & 0xFFFF;
+            depth[offset] = d == 0 ? INVALID_DEPTH : d;
+        }
+    }
+
     @Override
     public void updateDepth(opencv_core.IplImage depthImage) {
         frameData = depthImage.getShortBuffer();
+        if (depthRaw == null || depthRaw.length != frameData.capacity()) {
+            depthRaw = new short[frameData.capacity()];
+        }
     }
 }
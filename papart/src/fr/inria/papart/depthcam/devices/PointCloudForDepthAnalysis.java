@@ -20,6 +20,8 @@
 package fr.inria.papart.depthcam.devices;
 
 import fr.inria.papart.depthcam.DepthDataElementProjected;
+import fr.inria.papart.depthcam.ProjectedDepthData;
+import fr.inria.papart.depthcam.PointArray;
 import fr.inria.papart.depthcam.PointCloud;
 import fr.inria.papart.depthcam.analysis.DepthAnalysisPImageView;
 import fr.inria.papart.depthcam.analysis.DepthAnalysisImpl;
@@ -58,7 +60,7 @@ public class PointCloudForDepthAnalysis extends PointCloud implements PConstants
     public void updateWith(DepthAnalysisPImageView depthAnalysis) {
 //        boolean[] valid = depthAnalysis.getValidPoints();
 
-        Vec3D[] points = depthAnalysis.getDepthPoints();
+        PointArray points = depthAnalysis.getDepthPoints();
         PImage colorsImg = depthAnalysis.getColouredDepthImage();
 
         nbVertices = 0;
@@ -72,12 +74,11 @@ public class PointCloudForDepthAnalysis extends PointCloud implements PConstants
                 int i = x + y * depthAnalysis.getWidth();
 
 //                if (valid[i]) {
-                Vec3D p = points[i];
                 int c = colorsImg.pixels[i];
 
-                verticesJava[k++] = p.x;
-                verticesJava[k++] = p.y;
-                verticesJava[k++] = -p.z;
+                verticesJava[k++] = points.x[i];
+                verticesJava[k++] = points.y[i];
+                verticesJava[k++] = -points.z[i];
                 verticesJava[k++] = 1;
 
                 int c2 = javaToNativeARGB(c);
@@ -99,7 +100,6 @@ public class PointCloudForDepthAnalysis extends PointCloud implements PConstants
     }
 
     public void updateWithNormalColors(DepthAnalysisImpl depthAnalysis, ArrayList<TrackedDepthPoint> touchs) {
-        Vec3D[] points = depthAnalysis.getDepthPoints();
 
         nbVertices = 0;
         nbColors = 0;
@@ -143,7 +143,6 @@ public class PointCloudForDepthAnalysis extends PointCloud implements PConstants
     }
 
     public void updateWithIDColors(DepthAnalysisImpl kinect, ArrayList<TrackedDepthPoint> touchs) {
-        Vec3D[] points = kinect.getDepthPoints();
 
         nbVertices = 0;
         nbColors = 0;
@@ -179,8 +178,11 @@ public class PointCloudForDepthAnalysis extends PointCloud implements PConstants
     }
 
     public void updateWithCamColors(DepthAnalysisImpl analysis, ArrayList<TrackedDepthPoint> touchs) {
-        Vec3D[] points = analysis.getDepthPoints();
-        int[] pointColors = analysis.getDepthData().pointColors;
+        ProjectedDepthData depthData = analysis.getPublishedDepthData();
+        if (depthData == null) {
+            depthData = analysis.getDepthData();
+        }
+        int[] pointColors = depthData.pointColors;
         nbVertices = 0;
         nbColors = 0;
         int k = 0;
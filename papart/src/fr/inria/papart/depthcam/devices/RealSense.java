@@ -88,6 +88,7 @@ public final class RealSense extends DepthCameraDevice {
 
         private final float depthRatio;
         private ShortBuffer depthRawShortBuffer;
+        private short[] depthRaw;
 
         public RealSenseDepth() {
             this.depthRatio = cameraRS.getDepthScale();
@@ -99,10 +100,36 @@ public final class RealSense extends DepthCameraDevice {
             return d;
         }
 
+        @Override
+        public void findDepth(int begin, int end, int step, float[] depth) {
+            float ratio = depthRatio * 1000f;
+            if (step != 1) {
+                // Only the sampled pixels, absolute reads do not move the
+                // buffer.
+                ShortBuffer buffer = depthRawShortBuffer;
+                for (int offset = begin; offset < end; offset += step) {
+                    depth[offset] = buffer.get(offset) * ratio;
+                }
+                return;
+            }
+            // The buffer position is not shared with the other stripes.
+            ShortBuffer buffer = depthRawShortBuffer.duplicate();
+            buffer.position(begin);
+            buffer.get(depthRaw, begin, end - begin);
+
+            short[] raw = depthRaw;
+            for (int offset = begin; offset < end; offset++) {
+                depth[offset] = raw[offset] * ratio;
+            }
+        }
+
         @Override
         public void updateDepth(opencv_core.IplImage depthImage) {
             ByteBuffer depthRawBuffer = depthImage.getByteBuffer();
             depthRawShortBuffer = depthRawBuffer.asShortBuffer();
+            if (depthRaw == null || depthRaw.length != depthRawShortBuffer.capacity()) {
+                depthRaw = new short[depthRawShortBuffer.capacity()];
+            }
         }
     }
 
@@ -19,15 +19,19 @@
  */
 package fr.inria.papart.multitouch;
 
+import fr.inria.papart.depthcam.PointArray;
+import fr.inria.papart.utils.IntArrayList;
 import fr.inria.papart.utils.WithSize;
-import java.util.ArrayList;
 import toxi.geom.Vec3D;
 
 /**
+ * List of pixel offsets. The offsets are primitive ints, a component can be
+ * cleared and reused for the next frame. It is still a List of Integer, like
+ * the ArrayList&lt;Integer&gt; it replaces.
  *
  * @author Jeremy Laviole
  */
-public class ConnectedComponent extends ArrayList<Integer> {
+public class ConnectedComponent extends IntArrayList {
 
     public static final ConnectedComponent INVALID_COMPONENT = new ConnectedComponent();
     
@@ -49,7 +53,8 @@ public class ConnectedComponent extends ArrayList<Integer> {
     public Vec3D getMean(WithSize size) {
         Vec3D mean = new Vec3D(0, 0, 0);
 
-        for (int offset : this) {
+        for (int i = 0; i < size(); i++) {
+            int offset = getInt(i);
             int x = offset % size.getWidth();
             int y = (int) offset / size.getWidth();
             
@@ -66,7 +71,8 @@ public class ConnectedComponent extends ArrayList<Integer> {
      */
     public Vec3D getMean(Vec3D[] array) {
         Vec3D mean = new Vec3D(0, 0, 0);
-        for (int offset : this) {
+        for (int i = 0; i < size(); i++) {
+            int offset = getInt(i);
             mean.addSelf(array[offset]);
         }
         mean.scaleSelf(1.0f / this.size());
@@ -75,7 +81,8 @@ public class ConnectedComponent extends ArrayList<Integer> {
 
     public float getMinZ(Vec3D[] array) {
         float min = Float.MAX_VALUE;
-        for (int offset : this) {
+        for (int i = 0; i < size(); i++) {
+            int offset = getInt(i);
             float z = array[offset].z;
             if (z < min) {
                 min = z;
@@ -87,7 +94,8 @@ public class ConnectedComponent extends ArrayList<Integer> {
     public float getHeight(Vec3D[] array) {
         float min = Float.MAX_VALUE;
         float max = 0;
-        for (int offset : this) {
+        for (int i = 0; i < size(); i++) {
+            int offset = getInt(i);
             float z = array[offset].z;
             if (z < min) {
                 min = z;
@@ -99,4 +107,52 @@ public class ConnectedComponent extends ArrayList<Integer> {
         return max - min;
     }
 
+    /**
+     * Get the mean location given an input array of positions.
+     * @param points
+     * @return 
+     */
+    public Vec3D getMean(PointArray points) {
+        float x = 0, y = 0, z = 0;
+        int[] offsets = getData();
+        for (int i = 0; i < size(); i++) {
+            int offset = offsets[i];
+            x += points.x[offset];
+            y += points.y[offset];
+            z += points.z[offset];
+        }
+        float invSize = 1.0f / this.size();
+        return new Vec3D(x * invSize, y * invSize, z * invSize);
+    }
+
+    public float getMinZ(PointArray points) {
+        float min = Float.MAX_VALUE;
+        int[] offsets = getData();
+        for (int i = 0; i < size(); i++) {
+            int offset = offsets[i];
+            float z = points.z[offset];
+            if (z < min) {
+                min = z;
+            }
+        }
+        return min;
+    }
+
+    public float getHeight(PointArray points) {
+        float min = Float.MAX_VALUE;
+        float max = 0;
+        int[] offsets = getData();
+        for (int i = 0; i < size(); i++) {
+            int offset = offsets[i];
+            float z = points.z[offset];
+            if (z < min) {
+                min = z;
+            }
+            if (z > max) {
+                max = z;
+            }
+        }
+        return max - min;
+    }
+
 }
@@ -24,10 +24,12 @@ import fr.inria.papart.multitouch.tracking.TouchPointTracker;
 import fr.inria.papart.multitouch.tracking.TrackedDepthPoint;
 import fr.inria.papart.calibration.files.PlanarTouchCalibration;
 import fr.inria.papart.depthcam.DepthDataElementProjected;
+import fr.inria.papart.depthcam.ProjectedDepthData;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 
 import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
 import fr.inria.papart.depthcam.analysis.DepthAnalysisImpl;
+import fr.inria.papart.depthcam.analysis.DepthROI;
 import fr.inria.papart.depthcam.devices.DepthCameraDevice;
 import fr.inria.papart.multitouch.detection.ArmDetection;
 import fr.inria.papart.multitouch.detection.Simple2D;
@@ -86,6 +88,69 @@ public class DepthTouchInput extends TouchInput {
         this.planeAndProjCalibration = papc;
     }
 
+    // Region of the depth image where the touch can be: above the plane, and
+    // projected in the calibrated area.
+    private boolean useROI = true;
+    private float roiHeight = 400f;
+    private float roiMargin = 0.1f;
+    private static final int ROI_BORDER = 6;
+
+    /**
+     * Compute the depth only in the region of the depth image that views
+     * the calibrated area (enabled by default). The region is computed
+     * again when the calibration changes.
+     *
+     * @param useROI
+     */
+    public void setUseROI(boolean useROI) {
+        this.useROI = useROI;
+        if (!useROI && depthAnalysis.getROI() != null) {
+            depthAnalysis.setROI(null);
+        }
+    }
+
+    public boolean isUseROI() {
+        return useROI;
+    }
+
+    /**
+     * Set the size of the region of the depth image to compute.
+     *
+     * @param height maximum height of the points above the plane, in mm.
+     * Points higher than this are not computed (default 400mm).
+     * @param margin margin around the calibrated area, in normalized
+     * coordinates: 0.1 is 10% of the width and height (default).
+     */
+    public void setROISize(float height, float margin) {
+        this.roiHeight = height;
+        this.roiMargin = margin;
+    }
+
+    /**
+     * Set or update the region of the depth image to compute, from the
+     * plane and projection calibration.
+     */
+    private void updateROI() {
+        if (!useROI || planeAndProjCalibration == null) {
+            return;
+        }
+        // The region contains at least the points of the 2D detection.
+        float height = Math.max(roiHeight, planeAndProjCalibration.getPlaneHeight());
+        DepthROI roi = depthAnalysis.getROI();
+        if (roi != null && roi.isComputedFrom(planeAndProjCalibration, height, roiMargin, ROI_BORDER)) {
+            return;
+        }
+        roi = DepthROI.fromPlane(depthAnalysis.getDepthProjectiveDevice(),
+                planeAndProjCalibration, height, roiMargin, ROI_BORDER);
+        if (roi.isEmpty()) {
+            System.err.println("DepthTouchInput: the calibrated area is not visible by the depth camera, the whole image is computed.");
+            useROI = false;
+            depthAnalysis.setROI(null);
+            return;
+        }
+        depthAnalysis.setROI(roi);
+    }
+
     public void setTouchDetectionCalibration(int i, PlanarTouchCalibration touchCalib) {
         touchCalibrations[i] = touchCalib;
     }
@@ -151,8 +216,8 @@ public class DepthTouchInput extends TouchInput {
                 return;
             }
 
-            depthDataSem.acquire();
-
+            // The computation uses a back buffer, the published depth data
+            // is read by the other threads during this time.
             if (!touchDetectionsReady) {
                 initTouchDetections();
             }
@@ -160,12 +225,20 @@ public class DepthTouchInput extends TouchInput {
             int initPrecision = 3;
 //            Instant start = Instant.now();
 
+            updateROI();
             depthAnalysis.computeDepthAndNormals(depthImage, colImage, initPrecision);
 
             simpleDetection.findTouch(planeAndProjCalibration);
 
 //            Instant depth = Instant.now();
             armDetection.findTouch(planeAndProjCalibration);
+
+            depthDataSem.acquire();
+            try {
+                depthAnalysis.publishDepthData();
+            } finally {
+                depthDataSem.release();
+            }
 //            Instant touch1 =  Instant.now();
 //            Instant touch2 =  Instant.now();
 //            Instant touch3 =  Instant.now();
@@ -181,11 +254,19 @@ public class DepthTouchInput extends TouchInput {
             ex.printStackTrace();
         } catch (Exception ex) {
             ex.printStackTrace();
-        } finally {
-            depthDataSem.release();
         }
     }
 
+    /**
+     * Depth data of the last complete frame, with its touch detection. It
+     * is not modified while the next frame is computed.
+     *
+     * @return the depth data, null before the first frame.
+     */
+    public ProjectedDepthData getDepthData() {
+        return depthAnalysis.getPublishedDepthData();
+    }
+
     private static final Touch INVALID_TOUCH = new Touch();
 
     @Override
@@ -507,6 +588,10 @@ public class DepthTouchInput extends TouchInput {
         touchPointSemaphore.release();
     }
 
+    /**
+     * Prevent the publication of new depth data until releaseDepthData().
+     * Only useful to keep getDepthData() for more than one depth frame.
+     */
     public void lockDepthData() {
         try {
             depthDataSem.acquire();
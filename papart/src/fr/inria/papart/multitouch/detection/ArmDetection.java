@@ -33,10 +33,10 @@ import fr.inria.papart.multitouch.tracking.TouchPointTracker;
 import fr.inria.papart.multitouch.tracking.TrackedDepthPoint;
 import fr.inria.papart.utils.WithSize;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import toxi.geom.Plane;
 import toxi.geom.Vec3D;
 
 /**
@@ -55,8 +55,11 @@ public class ArmDetection extends TouchDetectionDepth {
         touchRecognition = new Compute3D(depthAnalysisImpl);
     }
 
+    /**
+     * @return a copy of the selection of the last frame.
+     */
     public DepthSelection getDepthSelection() {
-        return touchRecognition.getSelection();
+        return touchRecognition.getSelection().copy();
     }
 
     public class CheckTouchPoint3D implements PointValidityCondition {
@@ -66,10 +69,9 @@ public class ArmDetection extends TouchDetectionDepth {
 
             return !assignedPoints[candidate] // not assigned  
                     && touchRecognition.getSelection().validPointsMask[candidate] // is valid, necessary ?
-                    && (depthData.depthPoints[candidate].distanceTo(DepthAnalysis.INVALID_POINT) > 1) // NON zero points
-                    && (depthData.depthPoints[candidate] != DepthAnalysis.INVALID_POINT) // not invalid point (invalid depth)
-                    && depthData.depthPoints[initialPoint].distanceTo(depthData.depthPoints[candidate]) < calib.getMaximumDistanceInit()
-                    && depthData.depthPoints[candidate].distanceTo(depthData.depthPoints[currentPoint]) < calib.getMaximumDistance();
+                    && (depthData.depthPoints.magnitude(candidate) > 1) // NON zero points
+                    && depthData.depthPoints.distanceTo(initialPoint, candidate) < calib.getMaximumDistanceInit()
+                    && depthData.depthPoints.distanceTo(candidate, currentPoint) < calib.getMaximumDistance();
 
         }
     }
@@ -95,8 +97,8 @@ public class ArmDetection extends TouchDetectionDepth {
 
     @Override
     protected void setSearchParameters() {
-        this.toVisit.clear();
-        this.toVisit.addAll(touchRecognition.getSelection().validPointsList);
+        clearToVisit();
+        addToVisit(touchRecognition.getSelection().validPointsList);
 
 //        int firstPoint = toVisit.iterator().next();
 //        setPrecisionFrom(firstPoint);
@@ -104,14 +106,24 @@ public class ArmDetection extends TouchDetectionDepth {
 //        maximumRecursion = 1000; // TODO: fix this value.
     }
 
+    private float[] sortKeys = new float[0];
+    private final Vec3D sortPoint = new Vec3D();
+
     @Override
     protected TrackedDepthPoint createTouchPoint(ConnectedComponent connectedComponent) {
 
 //        ClosestComparatorY closestComparator = new ClosestComparatorY(depthData.projectedPoints);
-        ClosestComparatorHeight closestComparator = new ClosestComparatorHeight(depthData.projectedPoints, depthData.planeAndProjectionCalibration.getPlaneCalibration());
-
-        // get a subset of the points.
-        Collections.sort(connectedComponent, closestComparator);
+        // get a subset of the points: the farthest from the plane first. 
+        // Same order as the ClosestComparatorHeight.
+        Plane plane = depthData.planeAndProjectionCalibration.getPlaneCalibration().getPlane();
+        if (sortKeys.length < connectedComponent.size()) {
+            sortKeys = new float[connectedComponent.size()];
+        }
+        for (int i = 0; i < connectedComponent.size(); i++) {
+            depthData.projectedPoints.get(connectedComponent.getInt(i), sortPoint);
+            sortKeys[i] = -plane.distanceTo(sortPoint);
+        }
+        connectedComponent.sortByKey(sortKeys);
 
         // First remove the X closest points (fingers) 
 //        int max = connectedComponent.size() - 20 <= 0 ? 0 : 20;
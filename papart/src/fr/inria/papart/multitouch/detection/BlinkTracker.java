@@ -8,14 +8,10 @@ package fr.inria.papart.multitouch.detection;
 import fr.inria.papart.calibration.files.PlanarTouchCalibration;
 import fr.inria.papart.multitouch.tracking.TouchPointTracker;
 import fr.inria.papart.multitouch.tracking.TrackedElement;
-import fr.inria.papart.procam.FFT;
 import fr.inria.papart.procam.PaperScreen;
-import fr.inria.papart.utils.MathUtils;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import static processing.core.PApplet.abs;
 import static processing.core.PApplet.sqrt;
-import processing.core.PConstants;
 
 /**
  *
@@ -25,29 +21,36 @@ public class BlinkTracker extends ColorTracker {
 
     public BlinkTracker(PaperScreen paperScreen, PlanarTouchCalibration calibration, float scale) {
         super(paperScreen, calibration, scale);
-
-        fft = new FFT(frameSize);
     }
 
-    LinkedList<int[]> images = new LinkedList<>();
+    // Samples are r + g + b, the FFT version used (r + g + b) / 3 * 255.
+    private static final float SAMPLE_SCALE = 255f / 3f;
+    // Extra bins computed around the searched band, so that small frame rate
+    // changes do not need a new computation of the bins.
+    private static final int BIN_MARGIN = 2;
+
+    SlidingDFT dft;
     int frameSize = 128;
     float frameRate = 30;
     float elapsedTime = 0;
-    FFT fft;
     float epsilon;
-    float[] re;
-    float[] im;
     float rate = 0;
 
-    LinkedList<Integer> framesTime = new LinkedList<>();
+    // Ring buffer of the frame times, framesTime[framesHead] is the oldest.
+    int[] framesTime = new int[frameSize];
+    int framesHead = 0;
+    int nbFrames = 0;
 
     int lastImageTime = 0;
     int lastcomputeTime = 0;
-    int timeBetweenCompute = 500;
+    int timeBetweenCompute = 0;
 
     public void resetImages() {
-        images.clear();
-        framesTime.clear();
+        if (dft != null) {
+            dft.reset();
+        }
+        framesHead = 0;
+        nbFrames = 0;
     }
 
     /**
@@ -67,18 +70,32 @@ public class BlinkTracker extends ColorTracker {
         }
         lastImageTime = currentImageTime;
 
-        // Get the image
-        capturedImage = trackedView.getViewOf(paperScreen.getCameraTracking());
-        capturedImage.loadPixels();
+        // Get the image, shared with the other trackers of the screen.
+        capturedImage = segmentation.getImage();
+        if (capturedImage == null) {
+            return trackedElements;
+        }
 
-        images.push(capturedImage.pixels.clone());
-        framesTime.push(time);
-        if (images.size() > frameSize) {
-            images.removeLast();
-            framesTime.removeLast();
+        if (dft == null
+                || dft.getWindowSize() != frameSize
+                || dft.getNbPixels() != capturedImage.pixels.length) {
+            if (dft != null) {
+                // Stop the workers of the previous one.
+                dft.setParallel(false);
+            }
+            dft = new SlidingDFT(capturedImage.width, capturedImage.height, frameSize);
+            dft.setParallel(parallel);
+            framesTime = new int[frameSize];
+            framesHead = 0;
+            nbFrames = 0;
         }
-        if (images.size() < frameSize) {
-            System.out.println("Frames too short: " + images.size());
+
+        // One update per image, each sample is added once.
+        dft.push(capturedImage.pixels);
+        framesTime[framesHead] = time;
+        framesHead = (framesHead + 1) % frameSize;
+        if (nbFrames < frameSize) {
+            nbFrames++;
         }
 
         if (currentImageTime > lastcomputeTime + timeBetweenCompute) {
@@ -88,40 +105,40 @@ public class BlinkTracker extends ColorTracker {
             return trackedElements;
         }
 
+        // Reset the colorFoundArray
+        touchDetectionColor.resetInputArray();
+
+        if (!dft.isFull()) {
+            return trackedElements;
+        }
+
         // compute the real framerate
-        int initFrame = framesTime.getLast();
-        int lastFrame = framesTime.getFirst();
-//        frameRate =  (float)(initFrame - lastFrame) / (float)(framesTime.size());
+        int initFrame = framesTime[framesHead];
+        int lastFrame = framesTime[(framesHead + frameSize - 1) % frameSize];
         elapsedTime = (float) (lastFrame - initFrame);
-//        System.out.println("Framerate: " + frameRate);
         rate = (float) frameSize / elapsedTime * 1000f; // in ms
-//       System.out.println("rate:" + rate);
-
-        if (re == null || im == null || re.length != frameSize) {
-            re = new float[frameSize];
-            im = new float[frameSize];
-        }
 
         epsilon = errorRange * frameRate / (int) frameSize;
 
-        // Reset the colorFoundArray
-        touchDetectionColor.resetInputArray();
-
-        // Default to RGB 255 for now. 
-        paperScreen.getGraphics().colorMode(PConstants.RGB, 255);
+        // Bins of the searched band, the FFT version looked for the peak in
+        // [2, frameSize / 2[.
+        int minBin = Math.max(2, (int) Math.floor((freqToFind - epsilon) * frameSize / rate));
+        int maxBin = Math.min(frameSize / 2 - 1, (int) Math.ceil((freqToFind + epsilon) * frameSize / rate));
+        if (minBin > maxBin) {
+            return trackedElements;
+        }
+        if (minBin - 1 < dft.getFirstBin() || maxBin + 1 > dft.getLastBin()) {
+            dft.setBins(minBin - 1 - BIN_MARGIN, maxBin + 1 + BIN_MARGIN);
+        }
 
         // each pixels.
         byte id = 0;
 
         // Tag each pixels
-        for (int x = 0; x < capturedImage.width; x++) {
-            for (int y = 0; y < capturedImage.height; y++) {
-                int offset = x + y * capturedImage.width;
-                boolean good = fftPx(offset, freqToFind);
-                if (good) {
-                    colorFoundArray[offset] = id;
-                }
-
+        int nbPixels = Math.min(colorFoundArray.length, dft.getNbPixels());
+        for (int offset = 0; offset < nbPixels; offset++) {
+            if (blinkPx(offset, freqToFind, minBin, maxBin)) {
+                colorFoundArray[offset] = id;
             }
         }
 
@@ -132,68 +149,44 @@ public class BlinkTracker extends ColorTracker {
 //            te.filter(time);
 //        }
 
-        lastFound = colorFoundArray.clone();
+        if (lastFound == null || lastFound.length != colorFoundArray.length) {
+            lastFound = new byte[colorFoundArray.length];
+        }
+        System.arraycopy(colorFoundArray, 0, lastFound, 0, colorFoundArray.length);
 
         return trackedElements;
     }
 
-    private boolean fftPx(int offset, float freq) {
-
-        // todo: do this before
-        int nbImages = images.size();
-        if (nbImages < frameSize) {
-            return false;
-        }
-
-        int k = 0;
-        for (int[] image : images) {
-
-            int c1 = image[offset];
-            int r1 = c1 >> 16 & 255;
-            int g1 = c1 >> 8 & 255;
-            int b1 = c1 >> 0 & 255;
-
-            // todo: faster than this
-            re[k] = (float) (r1 + g1 + b1) / 3f * 255f;
-            im[k] = 0;
-            k++;
-        }
-        fft.fft(re, im);
+    /**
+     * The peak of the band [minBin, maxBin] must be close to the frequency,
+     * strong enough, and hold most of the power of the signal: the full
+     * spectrum is not computed.
+     */
+    private boolean blinkPx(int offset, float freq, int minBin, int maxBin) {
 
         float max = 0;
-        int id = 0;
-        for (int i = 2; i < re.length / 2; i++) {
-            float v = strength(i, re, im);
+        int id = minBin;
+        for (int i = minBin; i <= maxBin; i++) {
+            float v = dft.magnitude(i, offset);
             if (v > max) {
                 max = v;
                 id = i;
             }
         }
-
-        // error can be computed... 
-//        float epsilon = 0.3f;
-//        float f = +(float) id / (float) frameSize * (float) frameRate * 2;
-//        float f = +(float) id / (float) frameSize * (float) frameRate;
-        float f = idToFreq(id);
-
-        float total = max;
-        // get a finer estimate with 3 values average.
-        if (id > 0 && id < frameSize - 1) {
-            f = (float) id * max;
-            float sm1 = strength(id - 1, re, im);
-            float sp1 = strength(id + 1, re, im);
-            float fNext = ((float) id + 1) * sm1;
-            float fPrev = ((float) id - 1) * sp1;
-            total = max + sm1 + sp1;
-            f = ((f + fNext + fPrev) / (max + sm1 + sp1)) / (float) frameSize * rate;
+        if (max == 0) {
+            return false;
         }
-//          System.out.println("found ? freq: " + f + " total: " + total);
 
-        if (abs(f - freq) < epsilon && total > maxValue) {
-//            System.out.println("found: " + f + " total: " + total);
-            return true;
-        }
-        return false;
+        // get a finer estimate with 3 values average.
+        float sm1 = dft.magnitude(id - 1, offset);
+        float sp1 = dft.magnitude(id + 1, offset);
+        float total = max + sm1 + sp1;
+        float f = (id * max + (id - 1) * sm1 + (id + 1) * sp1) / total / (float) frameSize * rate;
+
+        float peakPower = max * max + sm1 * sm1 + sp1 * sp1;
+        return abs(f - freq) < epsilon
+                && total * SAMPLE_SCALE > maxValue
+                && peakPower >= minPowerRatio * dft.acPower(offset);
     }
 
     byte[] lastFound;
@@ -204,11 +197,8 @@ public class BlinkTracker extends ColorTracker {
 
     private float maxValue = 10000f; // depends on number of frames ?
     private float errorRange = 1.5f;
-
-    private float idToFreq(float id) {
-        return (id) / (float) frameSize * rate;
-
-    }
+    private float minPowerRatio = 0.5f;
+    private boolean parallel = false;
 
     public float strength(int i, float[] re, float[] im) {
         return sqrt(re[i] * re[i] + im[i] * im[i]);
@@ -228,6 +218,51 @@ public class BlinkTracker extends ColorTracker {
         this.maxValue = maxValue;
     }
 
+    public float getMinPowerRatio() {
+        return minPowerRatio;
+    }
+
+    /**
+     * Part of the power of the signal that must be in the peak (and its two
+     * neighbour bins) to accept a pixel. It replaces the search of the peak in
+     * the whole spectrum.
+     *
+     * @param minPowerRatio in [0, 1].
+     */
+    public void setMinPowerRatio(float minPowerRatio) {
+        this.minPowerRatio = minPowerRatio;
+    }
+
+    /**
+     * Update the frequencies of the rows of the image in parallel.
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+        if (dft != null) {
+            dft.setParallel(parallel);
+        }
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int getTimeBetweenCompute() {
+        return timeBetweenCompute;
+    }
+
+    /**
+     * Minimum time between two detections, the frequencies are updated with
+     * each image anyway.
+     *
+     * @param timeBetweenCompute in ms, 0 to detect at each image.
+     */
+    public void setTimeBetweenCompute(int timeBetweenCompute) {
+        this.timeBetweenCompute = timeBetweenCompute;
+    }
+
     public float getErrorRange() {
         return errorRange;
     }
@@ -9,9 +9,7 @@ import fr.inria.papart.multitouch.tracking.TouchPointTracker;
 import fr.inria.papart.multitouch.tracking.TrackedElement;
 import fr.inria.papart.procam.Papart;
 import fr.inria.papart.procam.PaperScreen;
-import fr.inria.papart.utils.MathUtils;
 import java.util.ArrayList;
-import processing.core.PConstants;
 
 /**
  * [experimental] Similar to the ColorTracker but for all the calibrated colors.
@@ -60,46 +58,13 @@ public class CalibratedColorTracker extends ColorTracker {
         }
         lastImageTime = currentImageTime;
 
-        // Get the image
-        capturedImage = trackedView.getViewOf(paperScreen.getCameraTracking());
-        capturedImage.loadPixels();
-
-        // Reset the colorFoundArray
-        touchDetectionColor.resetInputArray();
-
-        // Default to RGB 255 for now, for color distances. 
-        paperScreen.getGraphics().colorMode(PConstants.RGB, 255);
-
-        // Tag each pixels
-        for (int x = 0; x < capturedImage.width; x++) {
-            for (int y = 0; y < capturedImage.height; y++) {
-                int offset = x + y * capturedImage.width;
-                int c = capturedImage.pixels[offset];
-
-                // for each except the last DEBUG
-//               byte id = 0;
-                for (byte id = 0; id < numberOfRefs; id++) {
-
-                    reference = references[id];
-                    boolean good = false;
-
-//                    if (id == 0) {
-//                        good = MathUtils.colorFinderHSBRedish(paperScreen.getGraphics(),
-//                                reference.referenceColor, c, reference.hue, reference.saturation, reference.brightness);
-//                    } else {
-                        good = MathUtils.colorFinderLAB(paperScreen.getGraphics(),
-                                c, reference);
-//                        good = MathUtils.colorFinderHSB(paperScreen.getGraphics(),
-//                                c, reference.referenceColor, reference.hue, reference.saturation, reference.brightness);
-//                    }
-                    // HSB only for now.
-                    if (good) {
-//                    if (references[id].colorFinderHSB(paperScreen.getGraphics(), c)) {
-                        colorFoundArray[offset] = id;
-                    }
-
-                }
-            }
+        // One pass for all the references, shared with the other trackers.
+        if (firstLabel == -1) {
+            firstLabel = segmentation.addReferences(ColorClassifier.Mode.LAB, references);
+        }
+        capturedImage = segmentation.getImage();
+        if (!segmentation.select(firstLabel, numberOfRefs, colorFoundArray)) {
+            return trackedElements;
         }
 
         int erosion = 0;
@@ -0,0 +1,241 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.multitouch.detection;
+
+import fr.inria.papart.utils.MathUtils;
+import java.util.Arrays;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/**
+ * Color classification with a lookup table. The RGB cube is quantized
+ * (5 bits per channel by default: 32x32x32 cells), each cell stores the id
+ * of the reference that matches its center color, or
+ * TouchDetectionColor.INVALID_COLOR. The table is computed again only when
+ * the thresholds change, classifying an image is then one table lookup per
+ * pixel.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class ColorClassifier {
+
+    public static final int DEFAULT_BITS = 5;
+
+    /**
+     * Color tests of MathUtils used to fill the table.
+     */
+    public enum Mode {
+        /**
+         * colorFinderHSB.
+         */
+        HSB,
+        /**
+         * colorFinderHSBRedish.
+         */
+        HSB_RED,
+        /**
+         * colorFinderHSB and isBlue.
+         */
+        HSB_BLUE,
+        /**
+         * colorFinderLAB.
+         */
+        LAB
+    }
+
+    private final int bits;
+    private final int mask;
+    private final byte[] table;
+
+    private float[] parameters = null;
+
+    public ColorClassifier() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * @param bits bits per channel, from 1 to 8. 8 is exact but the table
+     * takes 16MB and is slow to compute.
+     */
+    public ColorClassifier(int bits) {
+        if (bits < 1 || bits > 8) {
+            throw new IllegalArgumentException("ColorClassifier: bits per channel must be in [1, 8]: " + bits);
+        }
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.table = new byte[1 << (3 * bits)];
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Compute the table again if the mode or the thresholds changed.
+     *
+     * @param g graphics used for the color conversions, its color mode is
+     * set to RGB 255.
+     * @param mode color test.
+     * @param references the id of references[i] is i.
+     * @return true if the table was computed.
+     */
+    public boolean update(PGraphics g, Mode mode, ColorReferenceThresholds... references) {
+        Mode[] modes = new Mode[references.length];
+        Arrays.fill(modes, mode);
+        return update(g, modes, references);
+    }
+
+    /**
+     * Compute the table again if a mode or a threshold changed. When a color
+     * matches several references, the one with the closest reference color
+     * is kept (the last one for equal distances).
+     *
+     * @param g graphics used for the color conversions, its color mode is
+     * set to RGB 255.
+     * @param modes color test of each reference.
+     * @param references the id of references[i] is i.
+     * @return true if the table was computed.
+     */
+    public boolean update(PGraphics g, Mode[] modes, ColorReferenceThresholds[] references) {
+        if (references.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("ColorClassifier: too many references: " + references.length);
+        }
+        float[] newParameters = parametersOf(modes, references);
+        if (Arrays.equals(newParameters, this.parameters)) {
+            return false;
+        }
+        g.colorMode(PConstants.RGB, 255);
+
+        int levels = 1 << bits;
+        int step = 256 >> bits;
+        int half = step / 2;
+        int index = 0;
+        for (int r = 0; r < levels; r++) {
+            for (int gr = 0; gr < levels; gr++) {
+                for (int b = 0; b < levels; b++) {
+                    int c = 0xFF000000
+                            | ((r * step + half) << 16)
+                            | ((gr * step + half) << 8)
+                            | (b * step + half);
+                    byte id = TouchDetectionColor.INVALID_COLOR;
+                    int bestDist = Integer.MAX_VALUE;
+                    for (int i = 0; i < references.length; i++) {
+                        if (!accept(g, modes[i], references[i], c)) {
+                            continue;
+                        }
+                        int dist = rgbDistSq(c, references[i].referenceColor);
+                        if (dist <= bestDist) {
+                            bestDist = dist;
+                            id = (byte) i;
+                        }
+                    }
+                    table[index++] = id;
+                }
+            }
+        }
+        this.parameters = newParameters;
+        return true;
+    }
+
+    private static int rgbDistSq(int c1, int c2) {
+        int dr = ((c1 >> 16) & 0xFF) - ((c2 >> 16) & 0xFF);
+        int dg = ((c1 >> 8) & 0xFF) - ((c2 >> 8) & 0xFF);
+        int db = (c1 & 0xFF) - (c2 & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static boolean accept(PGraphics g, Mode mode, ColorReferenceThresholds ref, int c) {
+        switch (mode) {
+            case HSB_RED:
+                return MathUtils.colorFinderHSBRedish(g, ref.referenceColor, c,
+                        ref.hue, ref.saturation, ref.brightness);
+            case HSB_BLUE:
+                return MathUtils.colorFinderHSB(g, ref.referenceColor, c,
+                        ref.hue, ref.saturation, ref.brightness)
+                        && MathUtils.isBlue(g, c, ref.referenceColor, ref.blueThreshold);
+            case LAB:
+                return MathUtils.colorFinderLAB(g, c, ref);
+            case HSB:
+            default:
+                return MathUtils.colorFinderHSB(g, ref.referenceColor, c,
+                        ref.hue, ref.saturation, ref.brightness);
+        }
+    }
+
+    private static float[] parametersOf(Mode[] modes, ColorReferenceThresholds[] references) {
+        float[] p = new float[references.length * 14];
+        int k = 0;
+        for (int i = 0; i < references.length; i++) {
+            ColorReferenceThresholds ref = references[i];
+            p[k++] = modes[i].ordinal();
+            // One value per channel: the bits of an opaque color read as a
+            // float are a NaN, and all the NaNs are equal for Arrays.equals.
+            p[k++] = (ref.referenceColor >> 16) & 0xFF;
+            p[k++] = (ref.referenceColor >> 8) & 0xFF;
+            p[k++] = ref.referenceColor & 0xFF;
+            p[k++] = ref.hue;
+            p[k++] = ref.saturation;
+            p[k++] = ref.brightness;
+            p[k++] = ref.blueThreshold;
+            p[k++] = ref.averageL;
+            p[k++] = ref.averageA;
+            p[k++] = ref.averageB;
+            p[k++] = ref.LThreshold;
+            p[k++] = ref.AThreshold;
+            p[k++] = ref.BThreshold;
+        }
+        return p;
+    }
+
+    /**
+     * @param rgb color.
+     * @return id of the reference or TouchDetectionColor.INVALID_COLOR.
+     */
+    public byte classify(int rgb) {
+        return table[index(rgb)];
+    }
+
+    /**
+     * Classify the pixels in [0, size[, row-major.
+     *
+     * @param pixels colors.
+     * @param out ids of the references.
+     * @param size number of pixels.
+     */
+    public void classify(int[] pixels, byte[] out, int size) {
+        final byte[] lut = table;
+        final int m = mask;
+        final int shiftR = 24 - bits;
+        final int shiftG = 16 - bits;
+        final int shiftB = 8 - bits;
+        final int bits2 = 2 * bits;
+        for (int i = 0; i < size; i++) {
+            int c = pixels[i];
+            out[i] = lut[(((c >> shiftR) & m) << bits2)
+                    | (((c >> shiftG) & m) << bits)
+                    | ((c >> shiftB) & m)];
+        }
+    }
+
+    private int index(int c) {
+        return (((c >> (24 - bits)) & mask) << (2 * bits))
+                | (((c >> (16 - bits)) & mask) << bits)
+                | ((c >> (8 - bits)) & mask);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.multitouch.detection;
+
+import fr.inria.papart.procam.PaperScreen;
+import fr.inria.papart.procam.camera.Camera;
+import fr.inria.papart.procam.camera.TrackedView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import processing.core.PImage;
+
+/**
+ * Color segmentation shared by the color trackers of a PaperScreen with the
+ * same view geometry. The view is extracted once per camera frame, and each
+ * pixel is labelled once with the id of the reference color it matches. Each
+ * tracker registers its references and reads its own labels with select().
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class ColorSegmentation {
+
+    /**
+     * Get the segmentation of the views of a PaperScreen with the geometry of
+     * a view, it is created on the first call. The segmentations are stored
+     * in the PaperScreen.
+     *
+     * @param paperScreen
+     * @param view view of a tracker, its corner, capture size, pixel size and
+     * orientation are copied.
+     * @return the segmentation shared by the trackers with the same geometry.
+     */
+    public static ColorSegmentation getSegmentation(PaperScreen paperScreen, TrackedView view) {
+        ArrayList<ColorSegmentation> list = paperScreen.getColorSegmentations();
+        synchronized (list) {
+            for (ColorSegmentation segmentation : list) {
+                if (segmentation.hasGeometryOf(view)) {
+                    return segmentation;
+                }
+            }
+            ColorSegmentation segmentation = new ColorSegmentation(paperScreen, view);
+            list.add(segmentation);
+            return segmentation;
+        }
+    }
+
+    private final PaperScreen paperScreen;
+    // Own copy of the geometry, never handed out.
+    private final TrackedView trackedView;
+
+    private ColorClassifier classifier = new ColorClassifier();
+    private final ArrayList<ColorReferenceThresholds> references = new ArrayList<>();
+    private final ArrayList<ColorClassifier.Mode> modes = new ArrayList<>();
+
+    private PImage image;
+    private byte[] labels;
+    private int imageFrame = -1;
+    private int labelsFrame = -1;
+
+    private ColorSegmentation(PaperScreen paperScreen, TrackedView view) {
+        this.paperScreen = paperScreen;
+        this.trackedView = new TrackedView(paperScreen);
+        this.trackedView.setTopLeftCorner(view.getTopLeftCorner());
+        this.trackedView.forceYOrientation(view.isYUp());
+        this.trackedView.setCaptureSizeMM(view.getCaptureSizeMM());
+        this.trackedView.setImageWidthPx(view.getImageWidthPx());
+        this.trackedView.setImageHeightPx(view.getImageHeightPx());
+        this.trackedView.init();
+    }
+
+    private boolean hasGeometryOf(TrackedView view) {
+        return view.getTopLeftCorner().equals(trackedView.getTopLeftCorner())
+                && view.isYUp() == trackedView.isYUp()
+                && view.getCaptureSizeMM().equals(trackedView.getCaptureSizeMM())
+                && view.getImageWidthPx() == trackedView.getImageWidthPx()
+                && view.getImageHeightPx() == trackedView.getImageHeightPx();
+    }
+
+    /**
+     * Register reference colors.
+     *
+     * @param mode color test of these references.
+     * @param refs references, they are read again at each frame.
+     * @return the label of refs[0], the label of refs[i] is this value + i.
+     */
+    public synchronized int addReferences(ColorClassifier.Mode mode, ColorReferenceThresholds... refs) {
+        int first = references.size();
+        for (ColorReferenceThresholds ref : refs) {
+            references.add(ref);
+            modes.add(mode);
+        }
+        labelsFrame = -1;
+        return first;
+    }
+
+    /**
+     * Change the color test of a registered reference.
+     *
+     * @param label label returned by addReferences.
+     * @param mode new color test.
+     */
+    public synchronized void setMode(int label, ColorClassifier.Mode mode) {
+        if (modes.get(label) != mode) {
+            modes.set(label, mode);
+            labelsFrame = -1;
+        }
+    }
+
+    public int getNbReferences() {
+        return references.size();
+    }
+
+    /**
+     * Set the precision of the color lookup table, for all the trackers of
+     * this segmentation.
+     *
+     * @param bits bits per channel, from 1 to 8.
+     */
+    public synchronized void setColorPrecision(int bits) {
+        if (bits != classifier.getBits()) {
+            classifier = new ColorClassifier(bits);
+            labelsFrame = -1;
+        }
+    }
+
+    public synchronized int getColorPrecision() {
+        return classifier.getBits();
+    }
+
+    /**
+     * View of the PaperScreen in the current camera frame, extracted once per
+     * frame.
+     *
+     * @return the image, or null if the extraction is not possible.
+     */
+    public synchronized PImage getImage() {
+        // The images come from the acting camera, like in TrackedView.
+        Camera camera = Camera.checkActingCamera(paperScreen.getCameraTracking());
+        int frame = camera.getFrameNumber();
+        if (frame != imageFrame || image == null) {
+            image = trackedView.getViewOf(camera);
+            if (image != null) {
+                image.loadPixels();
+            }
+            imageFrame = frame;
+        }
+        return image;
+    }
+
+    /**
+     * Labels of the current camera frame, computed once per frame.
+     *
+     * @return the label of each pixel or TouchDetectionColor.INVALID_COLOR,
+     * null if the image is not available.
+     */
+    public synchronized byte[] getLabels() {
+        PImage img = getImage();
+        if (img == null) {
+            return null;
+        }
+        if (labelsFrame == imageFrame && labels != null) {
+            return labels;
+        }
+        int size = img.pixels.length;
+        if (labels == null || labels.length != size) {
+            labels = new byte[size];
+        }
+        classifier.update(paperScreen.getGraphics(),
+                modes.toArray(new ColorClassifier.Mode[modes.size()]),
+                references.toArray(new ColorReferenceThresholds[references.size()]));
+        classifier.classify(img.pixels, labels, size);
+        labelsFrame = imageFrame;
+        return labels;
+    }
+
+    /**
+     * Copy the labels [first, first + nbLabels[ of the current frame, the
+     * label first is written as 0, first + 1 as 1 and so on. Other pixels are
+     * set to TouchDetectionColor.INVALID_COLOR.
+     *
+     * @param first label returned by addReferences.
+     * @param nbLabels number of references registered with this label.
+     * @param out segmented image of a tracker.
+     * @return false if the image is not available.
+     */
+    public synchronized boolean select(int first, int nbLabels, byte[] out) {
+        byte[] current = getLabels();
+        if (current == null) {
+            return false;
+        }
+        int size = Math.min(current.length, out.length);
+        for (int i = 0; i < size; i++) {
+            int label = current[i] - first;
+            out[i] = (label >= 0 && label < nbLabels)
+                    ? (byte) label
+                    : TouchDetectionColor.INVALID_COLOR;
+        }
+        if (size < out.length) {
+            Arrays.fill(out, size, out.length, TouchDetectionColor.INVALID_COLOR);
+        }
+        return true;
+    }
+}
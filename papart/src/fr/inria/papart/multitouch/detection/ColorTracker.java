@@ -27,9 +27,7 @@ import fr.inria.papart.multitouch.detection.TouchDetectionColor;
 import fr.inria.papart.procam.Papart;
 import fr.inria.papart.procam.PaperScreen;
 import fr.inria.papart.procam.camera.TrackedView;
-import fr.inria.papart.utils.MathUtils;
 import java.util.ArrayList;
-import processing.core.PConstants;
 import processing.core.PImage;
 
 /**
@@ -53,6 +51,9 @@ public class ColorTracker {
     protected String name;
     private final PlanarTouchCalibration calibration;
 
+    protected ColorSegmentation segmentation;
+    protected int firstLabel = -1;
+
     public ColorTracker(PaperScreen paperScreen) {
         this(paperScreen, 1);
     }
@@ -101,6 +102,10 @@ public class ColorTracker {
         touchDetectionColor.setCalibration(calibration);
 
         colorFoundArray = touchDetectionColor.createInputArray();
+
+        // Shared with the trackers of the same view geometry.
+        segmentation = ColorSegmentation.getSegmentation(paperScreen, trackedView);
+        firstLabel = -1;
     }
 
     public TrackedView getTrackedView() {
@@ -133,54 +138,16 @@ public class ColorTracker {
         }
         lastImageTime = currentImageTime;
 
-        // Get the image
-        capturedImage = trackedView.getViewOf(paperScreen.getCameraTracking());
-        capturedImage.loadPixels();
-
-        // Reset the colorFoundArray
-        touchDetectionColor.resetInputArray();
-
-        // Default to RGB 255 for now. 
-        paperScreen.getGraphics().colorMode(PConstants.RGB, 255);
-
-        // each pixels.
-        byte id = 0;
-
-        // Tag each pixels
-        for (int x = 0; x < capturedImage.width; x++) {
-            for (int y = 0; y < capturedImage.height; y++) {
-                int offset = x + y * capturedImage.width;
-                int c = capturedImage.pixels[offset];
-
-                boolean good = false;
-
-                if ("red".equals(name)) {
-                    good = MathUtils.colorFinderHSBRedish(paperScreen.getGraphics(),
-                            reference.referenceColor, c, reference.hue, reference.saturation, reference.brightness);
-
-                    boolean red = true;
-//                    boolean red = MathUtils.isRed(paperScreen.getGraphics(),
-//                            c, ref2, reference.redThreshold);
-                    good = good && red;
-                } else {
-                    if ("blue".equals(name)) {
-                        good = MathUtils.colorFinderHSB(paperScreen.getGraphics(),
-                                reference.referenceColor, c, reference.hue, reference.saturation, reference.brightness);
-
-                        boolean blue = MathUtils.isBlue(paperScreen.getGraphics(),
-                                c, reference.referenceColor, reference.blueThreshold);
-                        good = good && blue;
-                    } else {
-                        good = MathUtils.colorFinderHSB(paperScreen.getGraphics(),
-                               reference.referenceColor, c, reference.hue, reference.saturation, reference.brightness);
-                    }
-                }
-
-                if (good) {
-                    colorFoundArray[offset] = id;
-                }
-
-            }
+        // Extraction and labelling are shared with the other trackers of the screen.
+        ColorClassifier.Mode mode = modeOf(name);
+        if (firstLabel == -1) {
+            firstLabel = segmentation.addReferences(mode, reference);
+        } else {
+            segmentation.setMode(firstLabel, mode);
+        }
+        capturedImage = segmentation.getImage();
+        if (!segmentation.select(firstLabel, 1, colorFoundArray)) {
+            return trackedElements;
         }
 
         ArrayList<TrackedElement> newElements
@@ -194,6 +161,41 @@ public class ColorTracker {
         return trackedElements;
     }
 
+    /**
+     * Color test used for a tracked color name.
+     *
+     * @param name "red", "blue" or something else.
+     * @return the mode of the classifier.
+     */
+    protected ColorClassifier.Mode modeOf(String name) {
+        if ("red".equals(name)) {
+            return ColorClassifier.Mode.HSB_RED;
+        }
+        if ("blue".equals(name)) {
+            return ColorClassifier.Mode.HSB_BLUE;
+        }
+        return ColorClassifier.Mode.HSB;
+    }
+
+    /**
+     * Set the precision of the color lookup table. 5 bits per channel is the
+     * default, 8 bits gives the same results as testing each pixel. It is
+     * shared by the trackers of the PaperScreen with the same view geometry.
+     *
+     * @param bits bits per channel, from 1 to 8.
+     */
+    public void setColorPrecision(int bits) {
+        segmentation.setColorPrecision(bits);
+    }
+
+    public int getColorPrecision() {
+        return segmentation.getColorPrecision();
+    }
+
+    public ColorSegmentation getSegmentation() {
+        return segmentation;
+    }
+
     public byte[] getColorFoundArray() {
         return colorFoundArray;
     }
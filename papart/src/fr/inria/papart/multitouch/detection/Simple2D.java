@@ -74,10 +74,9 @@ public class Simple2D extends TouchDetectionDepth {
             boolean classicCheck = !assignedPoints[candidate] // not assigned   
 
                     && touchRecognition.getSelection().validPointsMask[candidate] // is valid, necessary ?
-                    && (depthData.depthPoints[candidate].distanceTo(DepthAnalysis.INVALID_POINT) > 1) // NON zero points
-                    && (depthData.depthPoints[candidate] != DepthAnalysis.INVALID_POINT) // not invalid point (invalid depth)
-                    && depthData.depthPoints[initialPoint].distanceTo(depthData.depthPoints[candidate]) < calib.getMaximumDistanceInit()
-                    && depthData.depthPoints[candidate].distanceTo(depthData.depthPoints[currentPoint]) < calib.getMaximumDistance();
+                    && (depthData.depthPoints.magnitude(candidate) > 1) // NON zero points
+                    && depthData.depthPoints.distanceTo(initialPoint, candidate) < calib.getMaximumDistanceInit()
+                    && depthData.depthPoints.distanceTo(candidate, currentPoint) < calib.getMaximumDistance();
             
             return classicCheck;
         }
@@ -116,8 +115,8 @@ public class Simple2D extends TouchDetectionDepth {
 
     @Override
     protected void setSearchParameters() {
-        this.toVisit.clear();
-        this.toVisit.addAll(touchRecognition.getSelection().validPointsList);
+        clearToVisit();
+        addToVisit(touchRecognition.getSelection().validPointsList);
         contactPoints.clear();
     }
 
@@ -0,0 +1,301 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.multitouch.detection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sliding DFT of the intensity of each pixel of an image sequence, on the
+ * last windowSize images. Only a band of frequency bins is computed, and it
+ * is updated with each new image in constant time per pixel and bin.
+ *
+ * The samples are the sum r + g + b of each pixel, stored in a ring buffer.
+ * The sum and sum of squares of the window are kept to get the power of the
+ * signal without computing the other bins (Parseval).
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class SlidingDFT {
+
+    private final int nbPixels;
+    private final int width;
+    private final int windowSize;
+
+    // [slot * nbPixels + pixel]
+    private final short[] samples;
+    private final int[] sum;
+    private final int[] sumSq;
+    private int head = 0;
+    private int count = 0;
+
+    private int firstBin = -1, lastBin = -2;
+    // [(bin - firstBin) * nbPixels + pixel]
+    private float[] re = new float[0];
+    private float[] im = new float[0];
+    private float[] rotCos = new float[0];
+    private float[] rotSin = new float[0];
+
+    /**
+     * @param width width of the images.
+     * @param height height of the images.
+     * @param windowSize number of images in the window.
+     */
+    public SlidingDFT(int width, int height, int windowSize) {
+        this.width = width;
+        this.nbPixels = width * height;
+        this.windowSize = windowSize;
+        this.samples = new short[windowSize * nbPixels];
+        this.sum = new int[nbPixels];
+        this.sumSq = new int[nbPixels];
+    }
+
+    public int getNbPixels() {
+        return nbPixels;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return true when windowSize images have been added.
+     */
+    public boolean isFull() {
+        return count == windowSize;
+    }
+
+    public int getFirstBin() {
+        return firstBin;
+    }
+
+    public int getLastBin() {
+        return lastBin;
+    }
+
+    /**
+     * Remove all the images.
+     */
+    public void reset() {
+        Arrays.fill(samples, (short) 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumSq, 0);
+        Arrays.fill(re, 0);
+        Arrays.fill(im, 0);
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Set the bins to compute. The new bins are computed from the images in
+     * the window.
+     *
+     * @param first first bin, at least 0.
+     * @param last last bin, at most windowSize / 2.
+     */
+    public void setBins(int first, int last) {
+        first = Math.max(first, 0);
+        last = Math.min(last, windowSize / 2);
+        if (first == firstBin && last == lastBin) {
+            return;
+        }
+        firstBin = first;
+        lastBin = last;
+        int nbBins = Math.max(last - first + 1, 0);
+        re = new float[nbBins * nbPixels];
+        im = new float[nbBins * nbPixels];
+        rotCos = new float[nbBins];
+        rotSin = new float[nbBins];
+        for (int b = 0; b < nbBins; b++) {
+            double angle = 2 * Math.PI * (first + b) / windowSize;
+            rotCos[b] = (float) Math.cos(angle);
+            rotSin[b] = (float) Math.sin(angle);
+        }
+        recompute(0, nbPixels, head);
+    }
+
+    /**
+     * Add an image, the oldest one is removed when the window is full.
+     *
+     * @param pixels RGB pixels of the image.
+     */
+    public void push(int[] pixels) {
+        // The bins are computed again from the samples once per window, to
+        // remove the drift of the float updates.
+        boolean resync = head == windowSize - 1;
+        if (threadPool == null || nbThreads <= 1) {
+            update(pixels, 0, nbPixels, resync);
+        } else {
+            int height = nbPixels / width;
+            int nbParts = Math.min(nbThreads, height);
+            ArrayList<RowsTask> tasks = new ArrayList<>(nbParts);
+            for (int i = 0; i < nbParts; i++) {
+                int begin = (height * i / nbParts) * width;
+                int end = (height * (i + 1) / nbParts) * width;
+                tasks.add(new RowsTask(pixels, begin, end, resync));
+            }
+            try {
+                for (Future<Object> future : threadPool.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Sliding DFT update failed.", e.getCause());
+            }
+        }
+        head = (head + 1) % windowSize;
+        if (count < windowSize) {
+            count++;
+        }
+    }
+
+    private void update(int[] pixels, int begin, int end, boolean resync) {
+        final int slot = head * nbPixels;
+        final int nbBins = rotCos.length;
+        for (int p = begin; p < end; p++) {
+            int c = pixels[p];
+            int x = ((c >> 16) & 0xFF) + ((c >> 8) & 0xFF) + (c & 0xFF);
+            int old = samples[slot + p];
+            samples[slot + p] = (short) x;
+            sum[p] += x - old;
+            sumSq[p] += x * x - old * old;
+
+            if (resync) {
+                continue;
+            }
+            float delta = x - old;
+            for (int b = 0, k = p; b < nbBins; b++, k += nbPixels) {
+                float r = re[k] + delta;
+                float i = im[k];
+                re[k] = r * rotCos[b] - i * rotSin[b];
+                im[k] = r * rotSin[b] + i * rotCos[b];
+            }
+        }
+        if (resync) {
+            recompute(begin, end, (head + 1) % windowSize);
+        }
+    }
+
+    /**
+     * Direct DFT of the window for the pixels in [begin, end[. Before the
+     * window is full, the missing samples are zeros.
+     *
+     * @param oldest slot of the oldest sample.
+     */
+    private void recompute(int begin, int end, int oldest) {
+        final int nbBins = rotCos.length;
+        for (int b = 0; b < nbBins; b++) {
+            int bin = firstBin + b;
+            int offset = b * nbPixels;
+            Arrays.fill(re, offset + begin, offset + end, 0);
+            Arrays.fill(im, offset + begin, offset + end, 0);
+            for (int n = 0; n < windowSize; n++) {
+                int slot = ((oldest + n) % windowSize) * nbPixels;
+                double angle = -2 * Math.PI * ((long) bin * n % windowSize) / windowSize;
+                float cos = (float) Math.cos(angle);
+                float sin = (float) Math.sin(angle);
+                for (int p = begin; p < end; p++) {
+                    float x = samples[slot + p];
+                    re[offset + p] += x * cos;
+                    im[offset + p] += x * sin;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bin frequency bin, in [getFirstBin(), getLastBin()].
+     * @param pixel offset of the pixel.
+     * @return magnitude of the bin, for samples r + g + b.
+     */
+    public float magnitude(int bin, int pixel) {
+        int k = (bin - firstBin) * nbPixels + pixel;
+        return (float) Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+    }
+
+    /**
+     * Sum of the squared magnitudes of the bins 1 to windowSize - 1, divided
+     * by 2: the power of the positive frequencies.
+     *
+     * @param pixel offset of the pixel.
+     * @return power, for samples r + g + b.
+     */
+    public float acPower(int pixel) {
+        return ((float) windowSize * sumSq[pixel] - (float) sum[pixel] * sum[pixel]) / 2f;
+    }
+
+    // Parallel version, the image is split in stripes of rows.
+    private int nbThreads = Runtime.getRuntime().availableProcessors();
+    private ExecutorService threadPool;
+
+    /**
+     * Enable the parallel update, each thread handles a stripe of rows.
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        if (parallel && threadPool == null) {
+            threadPool = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SlidingDFT worker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if (!parallel && threadPool != null) {
+            threadPool.shutdown();
+            threadPool = null;
+        }
+    }
+
+    public boolean isParallel() {
+        return threadPool != null;
+    }
+
+    class RowsTask implements Callable<Object> {
+
+        private final int[] pixels;
+        private final int begin;
+        private final int end;
+        private final boolean resync;
+
+        public RowsTask(int[] pixels, int begin, int end, boolean resync) {
+            this.pixels = pixels;
+            this.begin = begin;
+            this.end = end;
+            this.resync = resync;
+        }
+
+        @Override
+        public Object call() {
+            update(pixels, begin, end, resync);
+            return null;
+        }
+    }
+}
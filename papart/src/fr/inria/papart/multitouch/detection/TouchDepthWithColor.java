@@ -57,6 +57,7 @@ public class TouchDepthWithColor extends TouchDetectionDepth {
     public class CheckTouchPoint implements PointValidityCondition {
 
         private int inititalPoint;
+        private final Vec3D candidatePoint = new Vec3D();
 
         public void setInitalPoint(int offset) {
             this.inititalPoint = offset;
@@ -77,11 +78,11 @@ public class TouchDepthWithColor extends TouchDetectionDepth {
                     //                    && depthData.validPointsMask[offset] // is valid
                     //                                        && depthData.depthPoints[offset] != INVALID_POINT // is valid
                     //                                        && depthData.depthPoints[offset].distanceTo(INVALID_POINT) >= 0.01f
-                    && depthData.normals[candidate] != null  //  good normal is good health
-                    && isValidPoint(depthData.projectedPoints[candidate]) //  TODO WHY "0" and non invalidpoints here.
-                    && isValidPoint(depthData.depthPoints[candidate]) //  TODO WHY "0" and non invalidpoints here.
-                    && depthData.depthPoints[inititalPoint].distanceTo(depthData.depthPoints[candidate]) < calib.getMaximumDistanceInit()
-                    && depthData.depthPoints[candidate].distanceTo(depthData.depthPoints[currentPoint]) < calib.getMaximumDistance();
+                    && depthData.hasNormal(candidate)  //  good normal is good health
+                    && depthData.projectedPoints.isValid(candidate) //  TODO WHY "0" and non invalidpoints here.
+                    && depthData.depthPoints.isValid(candidate) //  TODO WHY "0" and non invalidpoints here.
+                    && depthData.depthPoints.distanceTo(inititalPoint, candidate) < calib.getMaximumDistanceInit()
+                    && depthData.depthPoints.distanceTo(candidate, currentPoint) < calib.getMaximumDistance();
 
             // A close one does not have a correct normal.
 //            if (classicCheck && !goodNormal) {
@@ -96,14 +97,14 @@ public class TouchDepthWithColor extends TouchDetectionDepth {
 //            }/
             boolean goodNormal = true;
             
-            if (depthData.normals[candidate] != null) {
-                float dN = (depthData.planeAndProjectionCalibration.getPlane().normal).distanceToSquared(depthData.normals[candidate]);
-                float d1 = (depthData.planeAndProjectionCalibration.getPlane().getDistanceToPoint(depthData.depthPoints[candidate]));
+            if (depthData.hasNormal(candidate)) {
+                float dN = depthData.normals.distanceToSquared(candidate, depthData.planeAndProjectionCalibration.getPlane().normal);
+                float d1 = (depthData.planeAndProjectionCalibration.getPlane().getDistanceToPoint(depthData.depthPoints.get(candidate, candidatePoint)));
                 
                 // WARNING MAGIC NUMBER HERE
 //                boolean higher = depthData.projectedPoints[candidate].z < depthData.projectedPoints[currentPoint].z;
                 
-                goodNormal = (depthData.normals[candidate] != null && dN > calib.getNormalFilter()) || d1 > 20f;  // Higher  than Xmm
+                goodNormal = dN > calib.getNormalFilter() || d1 > 20f;  // Higher  than Xmm
                
             }
             return classicCheck && goodNormal;
@@ -139,8 +140,8 @@ public class TouchDepthWithColor extends TouchDetectionDepth {
         h = imgSize.getHeight();
 initialPoint = startingPoint;
         // DEBUG
-        assert (isValidPoint(depthData.depthPoints[startingPoint]));
-        assert (isValidPoint(depthData.projectedPoints[startingPoint]));
+        assert (depthData.depthPoints.isValid(startingPoint));
+        assert (depthData.projectedPoints.isValid(startingPoint));
 
         ConnectedComponent cc = findNeighboursRec(startingPoint, 0, getX(startingPoint), getY(startingPoint));
 
@@ -160,8 +161,8 @@ initialPoint = startingPoint;
     }
 
     protected void clearPoints(ConnectedComponent cc) {
-        for (Integer pt : cc) {
-            connectedComponentImage[pt] = NO_CONNECTED_COMPONENT;
+        for (int i = 0; i < cc.size(); i++) {
+            connectedComponentImage[cc.getInt(i)] = NO_CONNECTED_COMPONENT;
         }
     }
 
@@ -236,8 +237,8 @@ initialPoint = startingPoint;
 
     @Override
     protected void setSearchParameters() {
-        this.toVisit.clear();
-        this.toVisit.addAll(touchRecognition.getSelection().validPointsList);
+        clearToVisit();
+        addToVisit(touchRecognition.getSelection().validPointsList);
         contactPoints.clear();
     }
 
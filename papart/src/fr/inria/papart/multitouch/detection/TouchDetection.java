@@ -11,11 +11,11 @@ import fr.inria.papart.multitouch.ConnectedComponent;
 import static fr.inria.papart.multitouch.ConnectedComponent.INVALID_COMPONENT;
 import fr.inria.papart.multitouch.detection.Simple2D.CheckTouchPoint;
 import fr.inria.papart.multitouch.tracking.TrackedElement;
+import fr.inria.papart.utils.IntArrayList;
 import fr.inria.papart.utils.WithSize;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
 import processing.core.PVector;
 import toxi.geom.Vec3D;
 
@@ -47,7 +47,15 @@ public abstract class TouchDetection {
     protected WithSize imgSize;
 
     // WARNING HERE toVisit  DIFFERENT FROM THE ONE IN DEPTH SELECTION
-    protected final HashSet<Integer> toVisit = new HashSet<>();
+    // Starting points of the connected components, in [0, nbToVisit[.
+    protected int[] toVisit = new int[0];
+    protected int nbToVisit = 0;
+    // Flood fill layers, reused between components.
+    private int[] currentLayer = new int[256];
+    private int[] nextLayer = new int[256];
+    // Connected components, reused from one frame to the next.
+    private final ArrayList<ConnectedComponent> componentPool = new ArrayList<>();
+    private int nbComponentsUsed = 0;
     protected PointValidityCondition currentPointValidityCondition;
     protected int currentTime;
 
@@ -92,6 +100,23 @@ public abstract class TouchDetection {
         Arrays.fill(boundaries, false);
         Arrays.fill(connectedComponentImage, NO_CONNECTED_COMPONENT);
         currentCompo = STARTING_CONNECTED_COMPONENT;
+        nbComponentsUsed = 0;
+    }
+
+    /**
+     * Get an empty connected component from the pool. The components are
+     * valid until the next search: they are reused by clearMemory().
+     *
+     * @return an empty component.
+     */
+    protected ConnectedComponent obtainConnectedComponent() {
+        if (nbComponentsUsed == componentPool.size()) {
+            componentPool.add(new ConnectedComponent());
+        }
+        ConnectedComponent cc = componentPool.get(nbComponentsUsed++);
+        cc.clear();
+        cc.setId(0);
+        return cc;
     }
 
     protected ArrayList<ConnectedComponent> findConnectedComponents() {
@@ -109,9 +134,13 @@ public abstract class TouchDetection {
 
         ArrayList<ConnectedComponent> connectedComponents = new ArrayList<ConnectedComponent>();
 
-        // recursive search for each component. 
-        while (toVisit.size() > 0) {
-            int startingPoint = toVisit.iterator().next();
+        // One pass over the starting points, the points already in a
+        // component are assigned and skipped.
+        for (int i = 0; i < nbToVisit; i++) {
+            int startingPoint = toVisit[i];
+            if (assignedPoints[startingPoint]) {
+                continue;
+            }
             ConnectedComponent cc = findConnectedComponent(startingPoint);
             if (cc != INVALID_COMPONENT) {
                 connectedComponents.add(cc);
@@ -120,6 +149,25 @@ public abstract class TouchDetection {
         return connectedComponents;
     }
 
+    protected void clearToVisit() {
+        nbToVisit = 0;
+    }
+
+    protected void addToVisit(int offset) {
+        if (nbToVisit == toVisit.length) {
+            toVisit = Arrays.copyOf(toVisit, Math.max(256, toVisit.length * 2));
+        }
+        toVisit[nbToVisit++] = offset;
+    }
+
+    protected void addToVisit(IntArrayList offsets) {
+        if (nbToVisit + offsets.size() > toVisit.length) {
+            toVisit = Arrays.copyOf(toVisit, nbToVisit + offsets.size());
+        }
+        System.arraycopy(offsets.getData(), 0, toVisit, nbToVisit, offsets.size());
+        nbToVisit += offsets.size();
+    }
+
     // TODO: optimisations here ?
     int w, h;
     protected int searchDepth;
@@ -168,7 +216,6 @@ public abstract class TouchDetection {
     private void addPointTo(ConnectedComponent cc, int point) {
         assignedPoints[point] = true;
         connectedComponentImage[point] = currentCompo;
-        toVisit.remove(point);
         cc.add(point);
     }
 
@@ -201,19 +248,16 @@ public abstract class TouchDetection {
 
     public ConnectedComponent findNeighboursFloodFill(int currentPoint) {
         int recLevel = 0;
-        ConnectedComponent finalCC = new ConnectedComponent();
-        ConnectedComponent currentFill = new ConnectedComponent();
-        ConnectedComponent nextFill = new ConnectedComponent();
+        ConnectedComponent finalCC = obtainConnectedComponent();
+        int currentSize = 0;
 
         // Add the first point
         assignedPoints[currentPoint] = true;
         connectedComponentImage[currentPoint] = currentCompo;
-        // Remove from the global list. 
-        toVisit.remove(currentPoint);
         // Add to the valid list.
         finalCC.add(currentPoint);
         // Add to the next step list.
-        currentFill.add(currentPoint);
+        currentLayer[currentSize++] = currentPoint;
 
         // We start a point - currentPoint 
         // Then we create a list of points to visit in the next iteration
@@ -223,8 +267,11 @@ public abstract class TouchDetection {
 
         // Lets do it with a while 
         while (recLevel <= calib.getMaximumRecursion()) {
+            int nextSize = 0;
+
             // For all points of the current layer
-            for (Integer currentOffset : currentFill) {
+            for (int k = 0; k < currentSize; k++) {
+                int currentOffset = currentLayer[k];
                 int x = getX(currentOffset);
                 int y = getY(currentOffset);
 
@@ -240,29 +287,24 @@ public abstract class TouchDetection {
                 int added = 0;
 
                 for (int j = minY; j <= maxY; j += precision) {
-                    boolean isBorderY = (j == y - searchDepth) || (j == y + searchDepth);
                     for (int i = minX; i <= maxX; i += precision) {
-                        boolean isBorderX = (i == x - searchDepth) || (i == x + searchDepth);
-
                         int offset = j * w + i;
 
                         // Avoid getting ouside the limits
                         if (currentPointValidityCondition.checkPoint(offset, currentOffset)) {
 
-                            // We found a point ! 
-                            int point = offset;
-
-                            assignedPoints[point] = true;
-                            connectedComponentImage[point] = currentCompo;
-
-                            // Remove from the global list. 
-                            toVisit.remove(point);
+                            // We found a point ! 
+                            assignedPoints[offset] = true;
+                            connectedComponentImage[offset] = currentCompo;
 
                             // Add to the valid list.
-                            finalCC.add(point);
+                            finalCC.add(offset);
 
                             // Add to the next step list.
-                            nextFill.add(point);
+                            if (nextSize == nextLayer.length) {
+                                nextLayer = Arrays.copyOf(nextLayer, nextSize * 2);
+                            }
+                            nextLayer[nextSize++] = offset;
                             added++;
 
                         } // if is ValidPoint
@@ -275,13 +317,15 @@ public abstract class TouchDetection {
             } // for the current layer
 
             // No more to find in the next either
-            if (nextFill.isEmpty()) {
+            if (nextSize == 0) {
                 break;
             }
 
-            // The next becoes the current
-            currentFill = nextFill;
-            nextFill = new ConnectedComponent();
+            // The next becomes the current
+            int[] tmp = currentLayer;
+            currentLayer = nextLayer;
+            nextLayer = tmp;
+            currentSize = nextSize;
             recLevel = recLevel + 1;
         }
 
@@ -289,8 +333,16 @@ public abstract class TouchDetection {
     }
 
     public ConnectedComponent findNeighboursRec(int currentPoint, int recLevel, int x, int y) {
+        ConnectedComponent neighbourList = obtainConnectedComponent();
+        findNeighboursRec(neighbourList, currentPoint, recLevel, x, y);
+        return neighbourList;
+    }
 
-        ConnectedComponent neighbourList = new ConnectedComponent();
+    /**
+     * Recursive search, the points are added to neighbourList in the order
+     * they are found.
+     */
+    private void findNeighboursRec(ConnectedComponent neighbourList, int currentPoint, int recLevel, int x, int y) {
 
         // At least one point in connected compo !
         if (recLevel == 0) {
@@ -301,13 +353,13 @@ public abstract class TouchDetection {
         if (recLevel == calib.getMaximumRecursion()) {
             // TEST: Do not add latest level
 //            addPointInConnectedComponent(neighbourList, currentPoint);
-            return neighbourList;
+            return;
         }
 
         // do nothing on borders -> dead zone optimization ?!
         if (x - searchDepth < 0 || x + searchDepth > w - 1
                 || y - searchDepth < 0 || y + searchDepth > h - 1) {
-            return neighbourList;
+            return;
         }
 
         assert (assignedPoints[currentPoint] == true);
@@ -327,14 +379,11 @@ public abstract class TouchDetection {
                 if (currentPointValidityCondition.checkPoint(offset, currentPoint)) {
                     addPointTo(neighbourList, offset);
                     if (isBorderY || isBorderX) {
-                        ConnectedComponent subNeighbours = findNeighboursRec(offset, recLevel + 1, i, j);
-                        neighbourList.addAll(subNeighbours);
+                        findNeighboursRec(neighbourList, offset, recLevel + 1, i, j);
                     }
                 } // if is ValidPoint
             } // for j
         } // for i
-
-        return neighbourList;
     }
 
     static public final int constrain(int amt, int low, int high) {
@@ -113,11 +113,11 @@ public class TouchDetectionColor extends TouchDetection {
 
     @Override
     protected void setSearchParameters() {
-        this.toVisit.clear();
+        clearToVisit();
 
         for (int i = 0; i < segmentedImage.length; i++) {
             if (segmentedImage[i] != INVALID_COLOR) {
-                toVisit.add(i);
+                addToVisit(i);
             }
         }
 
@@ -127,7 +127,7 @@ public class TouchDetectionColor extends TouchDetection {
         // Do an erosion to remove the useless elements
 
         for (int i = 0; i < erosionLevel; i++) {
-            MathUtils.erodePoints2(toVisit,
+            nbToVisit = MathUtils.erodePoints2(toVisit, nbToVisit,
                     segmentedImage, segmentedImageCopy,
                     calib.getPrecision(), INVALID_COLOR, imgSize);
         }
@@ -168,7 +168,7 @@ public class TouchDetectionColor extends TouchDetection {
         tp.setConfidence(connectedComponent.size());
 
         // We attach the colorID here.
-        tp.attachedValue = segmentedImage[connectedComponent.get(0)];
+        tp.attachedValue = segmentedImage[connectedComponent.getInt(0)];
         // TODO: re-enable this one day ?
 //        tp.setConnectedComponent(connectedComponent);
 // EXPERIMENTAL, check if a copy is necessary
@@ -23,6 +23,7 @@ package fr.inria.papart.multitouch.detection;
 import fr.inria.papart.calibration.files.PlanarTouchCalibration;
 import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
 import fr.inria.papart.calibration.files.PlaneCalibration;
+import fr.inria.papart.depthcam.PointArray;
 import fr.inria.papart.depthcam.ProjectedDepthData;
 import fr.inria.papart.depthcam.analysis.DepthAnalysis;
 import static fr.inria.papart.depthcam.analysis.DepthAnalysis.INVALID_POINT;
@@ -101,7 +102,7 @@ public abstract class TouchDetectionDepth extends TouchDetection {
     @Deprecated
     protected void setPrecisionFrom(int firstPoint) {
 
-        Vec3D currentPoint = depthData.depthPoints[firstPoint];
+        Vec3D currentPoint = depthData.depthPoints.get(firstPoint);
         PVector coordinates = depthData.projectiveDevice.getCoordinates(firstPoint);
 
         // Find a point. 
@@ -133,17 +134,17 @@ public abstract class TouchDetectionDepth extends TouchDetection {
 
     class ClosestComparator implements Comparator {
 
-        public Vec3D[] projPoints;
+        public PointArray projPoints;
 
-        public ClosestComparator(Vec3D[] proj) {
+        public ClosestComparator(PointArray proj) {
             projPoints = proj;
         }
 
         public int compare(Object tp1, Object tp2) {
 
-            Vec3D pos1 = projPoints[(Integer) tp1];
-            Vec3D pos2 = projPoints[(Integer) tp2];
-            if (pos1.z > pos2.z) {
+            float z1 = projPoints.z[(Integer) tp1];
+            float z2 = projPoints.z[(Integer) tp2];
+            if (z1 > z2) {
                 return 1;
             }
             return -1;
@@ -152,21 +153,21 @@ public abstract class TouchDetectionDepth extends TouchDetection {
 
     class ClosestComparatorY implements Comparator {
 
-        public Vec3D[] projPoints;
+        public PointArray projPoints;
 
-        public ClosestComparatorY(Vec3D[] proj) {
+        public ClosestComparatorY(PointArray proj) {
             projPoints = proj;
         }
 
         @Override
         public int compare(Object tp1, Object tp2) {
 
-            Vec3D pos1 = projPoints[(Integer) tp1];
-            Vec3D pos2 = projPoints[(Integer) tp2];
-            if (pos1.y < pos2.y) {
+            float y1 = projPoints.y[(Integer) tp1];
+            float y2 = projPoints.y[(Integer) tp2];
+            if (y1 < y2) {
                 return 1;
             }
-            if (pos1.y == pos2.y) {
+            if (y1 == y2) {
                 return 0;
             }
 
@@ -176,10 +177,12 @@ public abstract class TouchDetectionDepth extends TouchDetection {
 
     class ClosestComparatorHeight implements Comparator {
 
-        public Vec3D[] points;
+        public PointArray points;
         PlaneCalibration calibration;
+        private final Vec3D p1 = new Vec3D();
+        private final Vec3D p2 = new Vec3D();
 
-        public ClosestComparatorHeight(Vec3D points[],
+        public ClosestComparatorHeight(PointArray points,
                 PlaneCalibration calib) {
             this.points = points;
             this.calibration = calib;
@@ -188,8 +191,8 @@ public abstract class TouchDetectionDepth extends TouchDetection {
         @Override
         public int compare(Object tp1, Object tp2) {
 
-            float d1 = calibration.getPlane().distanceTo(points[(Integer) tp1]);
-            float d2 = calibration.getPlane().distanceTo(points[(Integer) tp2]);
+            float d1 = calibration.getPlane().distanceTo(points.get((Integer) tp1, p1));
+            float d2 = calibration.getPlane().distanceTo(points.get((Integer) tp2, p2));
             if (d1 < d2) {
                 return 1;
             }
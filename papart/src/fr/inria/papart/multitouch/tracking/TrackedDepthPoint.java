@@ -128,8 +128,8 @@ public class TrackedDepthPoint extends TrackedElement {
 
     public void setDepthDataElements(ProjectedDepthData depthData, ConnectedComponent connectedComponent) {
         depthDataElements.clear();
-        for (Integer i : connectedComponent) {
-            depthDataElements.add(depthData.getDepthElement(i));
+        for (int i = 0; i < connectedComponent.size(); i++) {
+            depthDataElements.add(depthData.getDepthElement(connectedComponent.getInt(i)));
         }
     }
 
@@ -0,0 +1,312 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.procam;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import org.bytedeco.javacpp.opencv_core.CvMat;
+import org.bytedeco.javacpp.opencv_core.CvRect;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.bytedeco.javacv.ProjectiveDevice;
+
+import static org.bytedeco.javacpp.opencv_core.*;
+import static org.bytedeco.javacpp.opencv_imgproc.*;
+
+/**
+ * Lens distortion table of a ProjectiveDevice: for each pixel, its position
+ * with (DISTORT) or without (UNDISTORT) the lens distortion. The table is
+ * computed once per calibration and saved next to the calibration file, the
+ * next loads read it back.
+ *
+ * The DISTORT table is the remap table of the undistortion of the images,
+ * it is converted to the fixed point format of cvRemap on first use.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class LensMap {
+
+    public enum Direction {
+        /**
+         * Position in the distorted image of each undistorted pixel,
+         * ProjectiveDevice.distort().
+         */
+        DISTORT,
+        /**
+         * Undistorted position of each pixel, ProjectiveDevice.undistort().
+         */
+        UNDISTORT
+    }
+
+    // "PMAP"
+    private static final int MAGIC = 0x504D4150;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * 4 + 8 + 4;
+
+    private final int width, height;
+    private final Direction direction;
+    private final long calibrationHash;
+    private final float[] mapX, mapY;
+
+    // cvRemap tables, created on first use.
+    private CvMat fixedXY, fixedA;
+    private final CvMat subXY = new CvMat(), subA = new CvMat();
+
+    private LensMap(int width, int height, Direction direction, long calibrationHash) {
+        this.width = width;
+        this.height = height;
+        this.direction = direction;
+        this.calibrationHash = calibrationHash;
+        this.mapX = new float[width * height];
+        this.mapY = new float[width * height];
+    }
+
+    /**
+     * Load the table of the calibration file, or compute it and save it
+     * next to the file. A saved table is used only if it was computed with
+     * the same intrinsics and distortion coefficients.
+     *
+     * @param pdp device with distortion coefficients.
+     * @param direction
+     * @param calibrationFile calibration of the device, can be null: the
+     * table is then not saved.
+     * @return the table.
+     */
+    public static LensMap load(ProjectiveDeviceP pdp, Direction direction, String calibrationFile) {
+        ProjectiveDevice device = pdp.getDevice();
+        long hash = calibrationHash(device);
+        File file = mapFile(calibrationFile, direction);
+
+        if (file != null && file.isFile()) {
+            try {
+                LensMap map = read(file);
+                if (map.width == pdp.getWidth() && map.height == pdp.getHeight()
+                        && map.direction == direction && map.calibrationHash == hash) {
+                    return map;
+                }
+            } catch (IOException e) {
+                System.err.println("LensMap: cannot read " + file + ", computing it again. " + e);
+            }
+        }
+
+        LensMap map = new LensMap(pdp.getWidth(), pdp.getHeight(), direction, hash);
+        map.compute(device);
+        if (file != null) {
+            try {
+                map.write(file);
+            } catch (IOException e) {
+                System.err.println("LensMap: cannot save " + file + ". " + e);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @param calibrationFile
+     * @param direction
+     * @return file of the table, null if there is no calibration file.
+     */
+    public static File mapFile(String calibrationFile, Direction direction) {
+        if (calibrationFile == null || !new File(calibrationFile).isFile()) {
+            return null;
+        }
+        String suffix = direction == Direction.DISTORT ? ".distort.map" : ".undistort.map";
+        return new File(calibrationFile + suffix);
+    }
+
+    private static long calibrationHash(ProjectiveDevice device) {
+        long hash = 17;
+        hash = hashMat(hash, device.cameraMatrix);
+        hash = hashMat(hash, device.distortionCoeffs);
+        return hash;
+    }
+
+    private static long hashMat(long hash, CvMat mat) {
+        if (mat == null) {
+            return hash * 31;
+        }
+        int size = mat.rows() * mat.cols() * mat.channels();
+        for (int i = 0; i < size; i++) {
+            hash = hash * 31 + Double.doubleToLongBits(mat.get(i));
+        }
+        return hash;
+    }
+
+    /**
+     * The device functions take an array of points, one call per row.
+     */
+    private void compute(ProjectiveDevice device) {
+        double[] row = new double[width * 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x * 2] = x;
+                row[x * 2 + 1] = y;
+            }
+            double[] out = direction == Direction.DISTORT
+                    ? device.distort(row)
+                    : device.undistort(row);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                mapX[offset + x] = (float) out[x * 2];
+                mapY[offset + x] = (float) out[x * 2 + 1];
+            }
+        }
+    }
+
+    private static LensMap read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("not a lens map file.");
+            }
+            int w = header.getInt();
+            int h = header.getInt();
+            long hash = header.getLong();
+            int dir = header.getInt();
+            if (w <= 0 || h <= 0 || dir < 0 || dir >= Direction.values().length
+                    || channel.size() != HEADER_SIZE + 8L * w * h) {
+                throw new IOException("corrupted lens map file.");
+            }
+            LensMap map = new LensMap(w, h, Direction.values()[dir], hash);
+            ByteBuffer data = ByteBuffer.allocateDirect(4 * w * h).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, data);
+            data.flip();
+            data.asFloatBuffer().get(map.mapX);
+            data.clear();
+            readFully(channel, data);
+            data.flip();
+            data.asFloatBuffer().get(map.mapY);
+            return map;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of file.");
+            }
+        }
+    }
+
+    private void write(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                    .putLong(calibrationHash).putInt(direction.ordinal());
+            header.flip();
+            writeFully(channel, header);
+            ByteBuffer data = ByteBuffer.allocateDirect(4 * width * height).order(ByteOrder.LITTLE_ENDIAN);
+            data.asFloatBuffer().put(mapX);
+            writeFully(channel, data);
+            data.clear();
+            data.asFloatBuffer().put(mapY);
+            writeFully(channel, data);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return x position of each pixel, width * height values.
+     */
+    public float[] getMapX() {
+        return mapX;
+    }
+
+    /**
+     * @return y position of each pixel, width * height values.
+     */
+    public float[] getMapY() {
+        return mapY;
+    }
+
+    /**
+     * Remove the lens distortion of an image, with a DISTORT table.
+     *
+     * @param src image of the size of the table.
+     * @param dst undistorted image, same size and format as src.
+     */
+    public void remap(IplImage src, IplImage dst) {
+        remap(src, dst, null);
+    }
+
+    /**
+     * Remove the lens distortion of a region of an image, with a DISTORT
+     * table. The pixels of dst outside of the region are not modified.
+     *
+     * @param src image of the size of the table.
+     * @param dst undistorted image, same size and format as src.
+     * @param roi region of dst to compute, null for the whole image.
+     */
+    public synchronized void remap(IplImage src, IplImage dst, CvRect roi) {
+        if (direction != Direction.DISTORT) {
+            throw new IllegalStateException("LensMap: images are remapped with a DISTORT table.");
+        }
+        if (fixedXY == null) {
+            initFixedMaps();
+        }
+        if (roi == null) {
+            cvRemap(src, dst, fixedXY, fixedA,
+                    CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, cvScalarAll(0));
+            return;
+        }
+        cvGetSubRect(fixedXY, subXY, roi);
+        cvGetSubRect(fixedA, subA, roi);
+        cvSetImageROI(dst, roi);
+        cvRemap(src, dst, subXY, subA,
+                CV_INTER_LINEAR | CV_WARP_FILL_OUTLIERS, cvScalarAll(0));
+        cvResetImageROI(dst);
+    }
+
+    private void initFixedMaps() {
+        CvMat floatX = CvMat.create(height, width, CV_32FC1);
+        CvMat floatY = CvMat.create(height, width, CV_32FC1);
+        floatX.getFloatBuffer().put(mapX);
+        floatY.getFloatBuffer().put(mapY);
+        fixedXY = CvMat.create(height, width, CV_16SC2);
+        fixedA = CvMat.create(height, width, CV_16UC1);
+        cvConvertMaps(floatX, floatY, fixedXY, fixedA);
+        cvReleaseMat(floatX);
+        cvReleaseMat(floatY);
+    }
+}
@@ -27,6 +27,7 @@ import fr.inria.papart.tracking.MarkerBoard;
 import fr.inria.papart.procam.camera.Camera;
 import fr.inria.papart.calibration.files.HomographyCalibration;
 import fr.inria.papart.multitouch.Touch;
+import fr.inria.papart.multitouch.detection.ColorSegmentation;
 import fr.inria.papart.multitouch.tracking.TrackedElement;
 import fr.inria.papart.procam.display.BaseDisplay;
 import fr.inria.papart.procam.display.ARDisplay;
@@ -80,6 +81,7 @@ public class PaperScreen extends DelegatedGraphics {
     private float filteringDistance = 30;
     private float filteringFreq = 30;
     private float filteringCutoff = 4;
+    private boolean usePrediction = false;
 
     private PMatrix3D manualLocation = new PMatrix3D();
 
@@ -100,6 +102,9 @@ public class PaperScreen extends DelegatedGraphics {
     public static int count = 0;
     private final PMatrix3D table, tableInv;
 
+    // Color segmentations shared by the color trackers of this screen.
+    private final ArrayList<ColorSegmentation> colorSegmentations = new ArrayList<>();
+
     /**
      * Create a new PaperScreen, a Papart object has to be created first. A
      * PaperScreen is a rendering / interacting space like a Processing Sketch.
@@ -336,6 +341,9 @@ public class PaperScreen extends DelegatedGraphics {
         if (useManualLocation) {
             return manualLocation.get();
         }
+        if (usePrediction) {
+            return markerBoard.getPredictedTransfoMat(camera);
+        }
         return markerBoard.getTransfoMat(camera).get();
     }
 
@@ -1260,6 +1268,16 @@ public class PaperScreen extends DelegatedGraphics {
         return cameraTracking;
     }
 
+    /**
+     * Color segmentations of this screen, see
+     * ColorSegmentation.getSegmentation().
+     *
+     * @return the list, synchronize on it to use it.
+     */
+    public ArrayList<ColorSegmentation> getColorSegmentations() {
+        return colorSegmentations;
+    }
+
     /**
      * PaperScreen can be rendered for multiple displays. This method add a new
      * display.
@@ -1433,6 +1451,17 @@ public class PaperScreen extends DelegatedGraphics {
         this.filteringCutoff = cutOff;
     }
 
+    /**
+     * Draw at the location predicted for the current frame, from the
+     * movement of the board. For a tracking slower than the rendering, it
+     * works best with the drawing filter disabled (setDrawingFilter(0)).
+     *
+     * @param prediction
+     */
+    protected void setTrackingPrediction(boolean prediction) {
+        this.usePrediction = prediction;
+    }
+
     ///////////////////
     //// VR Rendering 
     ///////////////////
@@ -20,9 +20,11 @@
 package fr.inria.papart.procam;
 
 import fr.inria.papart.calibration.files.ProjectiveDeviceCalibration;
+import fr.inria.papart.depthcam.PointArray;
 import org.bytedeco.javacv.CameraDevice;
 import org.bytedeco.javacv.ProjectiveDevice;
 import org.bytedeco.javacv.ProjectorDevice;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.opencv_calib3d;
 
@@ -55,6 +57,11 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
     private Mat intrinsicsMat;
     private boolean hasExtrinsics = false;
     private boolean handleDistorsion = false;
+    // Back-projection tables, computed on demand. They are read by the
+    // depth analysis threads: all the accesses are synchronized.
+    private float[] rayX, rayY;
+    private float[] pixelRayX, pixelRayY;
+    private boolean pixelRaysUndistorted;
 
     private ProjectiveDeviceP() {
     }
@@ -183,6 +190,113 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
         result.z = depth;
     }
 
+    /**
+     * For internal use, the result is written in the point array.
+     *
+     * @param x
+     * @param y
+     * @param depth
+     * @param result
+     * @param offset offset of the point in the array.
+     */
+    public void pixelToWorld(int x, int y, float depth, PointArray result, int offset) {
+        result.x[offset] = ((float) x - cx) * depth * ifx;
+        result.y[offset] = ((float) y - cy) * depth * ify;
+        result.z[offset] = depth;
+    }
+
+    /**
+     * Normalized x coordinate of each column: (x - cx) / fx. The
+     * back-projection of a pixel is rayX[x] * depth.
+     *
+     * @return array of width values.
+     */
+    public synchronized float[] getRayX() {
+        if (rayX == null || rayX.length != w) {
+            float[] table = new float[w];
+            for (int x = 0; x < w; x++) {
+                table[x] = ((float) x - cx) * ifx;
+            }
+            rayX = table;
+        }
+        return rayX;
+    }
+
+    /**
+     * Normalized y coordinate of each row: (y - cy) / fy. The
+     * back-projection of a pixel is rayY[y] * depth.
+     *
+     * @return array of height values.
+     */
+    public synchronized float[] getRayY() {
+        if (rayY == null || rayY.length != h) {
+            float[] table = new float[h];
+            for (int y = 0; y < h; y++) {
+                table[y] = ((float) y - cy) * ify;
+            }
+            rayY = table;
+        }
+        return rayY;
+    }
+
+    /**
+     * Normalized x coordinate of each pixel. The back-projection of the
+     * pixel at offset is (pixelRayX[offset] * depth, pixelRayY[offset] *
+     * depth, depth). The table is computed once and kept until the
+     * intrinsics change.
+     *
+     * @param undistort remove the lens distortion of the device (when it has
+     * distortion coefficients).
+     * @return array of width * height values.
+     */
+    public synchronized float[] getPixelRayX(boolean undistort) {
+        updatePixelRays(undistort);
+        return pixelRayX;
+    }
+
+    /**
+     * Normalized y coordinate of each pixel, see getPixelRayX.
+     *
+     * @param undistort remove the lens distortion of the device.
+     * @return array of width * height values.
+     */
+    public synchronized float[] getPixelRayY(boolean undistort) {
+        updatePixelRays(undistort);
+        return pixelRayY;
+    }
+
+    private synchronized void updatePixelRays(boolean undistort) {
+        undistort = undistort && this.handleDistorsion && device != null;
+        if (pixelRayX != null && pixelRayX.length == w * h
+                && pixelRaysUndistorted == undistort) {
+            return;
+        }
+        float[] tableX = new float[w * h];
+        float[] tableY = new float[w * h];
+        if (undistort) {
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int offset = x + y * w;
+                    double[] out = device.undistort(x, y);
+                    tableX[offset] = ((float) out[0] - cx) * ifx;
+                    tableY[offset] = ((float) out[1] - cy) * ify;
+                }
+            }
+        } else {
+            float[] rx = getRayX();
+            float[] ry = getRayY();
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    tableX[x + y * w] = rx[x];
+                    tableY[x + y * w] = ry[y];
+                }
+            }
+        }
+        pixelRaysUndistorted = undistort;
+        pixelRayY = tableY;
+        pixelRayX = tableX;
+    }
+
     public Vec3D pixelToWorld(int x, int y, float depthValue) {
 
         Vec3D result = new Vec3D();
@@ -317,6 +431,21 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
 
     public PMatrix3D estimateOrientation(PVector[] objectPoints,
             PVector[] imagePoints) {
+        return estimateOrientation(objectPoints, imagePoints, null);
+    }
+
+    /**
+     * Pose estimation with solvePnP, the iterations start from a guess when
+     * there is one (previous or predicted pose). When the solution from the
+     * guess is behind the camera, it is computed again without guess.
+     *
+     * @param objectPoints model points.
+     * @param imagePoints pixels of the model points.
+     * @param guess initial pose, can be null.
+     * @return the pose of the model.
+     */
+    public PMatrix3D estimateOrientation(PVector[] objectPoints,
+            PVector[] imagePoints, PMatrix3D guess) {
 
         assert (objectPoints.length == imagePoints.length);
 
@@ -328,17 +457,33 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
         initNativeIntrinsic();
         fillNative(objectPoints, imagePoints, op, ip);
 
+        boolean useGuess = guess != null;
+        if (useGuess) {
+            Mat rotGuess = new Mat(3, 3, CV_64FC1);
+            DoubleIndexer rotIdx = rotGuess.createIndexer();
+            rotIdx.put(0, 0, guess.m00).put(0, 1, guess.m01).put(0, 2, guess.m02);
+            rotIdx.put(1, 0, guess.m10).put(1, 1, guess.m11).put(1, 2, guess.m12);
+            rotIdx.put(2, 0, guess.m20).put(2, 1, guess.m21).put(2, 2, guess.m22);
+            Rodrigues(rotGuess, rotation);
+            DoubleIndexer trIdx = translation.createIndexer();
+            trIdx.put(0, 0, guess.m03).put(1, 0, guess.m13).put(2, 0, guess.m23);
+        }
+
         boolean solved = opencv_calib3d.solvePnP(op,
                 ip,
                 intrinsicsMat, new Mat(),
                 rotation, translation,
-                false, opencv_calib3d.SOLVEPNP_ITERATIVE);
+                useGuess, opencv_calib3d.SOLVEPNP_ITERATIVE);
+
+        double[] translationIndex = (double[]) translation.createIndexer(false).array();
+        if (useGuess && (!solved || translationIndex[2] <= 0)) {
+            return estimateOrientation(objectPoints, imagePoints, null);
+        }
 
         Mat rotMat = new Mat(3, 3, CV_64FC1);
         Rodrigues(rotation, rotMat);
 
         double[] rotationIndex = (double[]) rotMat.createIndexer(false).array();
-        double[] translationIndex = (double[]) translation.createIndexer(false).array();
 
 //        float RTMat[] = {
 //            (float) rotationIndex[0], (float) rotationIndex[1], (float) rotationIndex[2], (float) translationIndex[0],
@@ -413,7 +558,7 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
         return mat;
     }
 
-    private void initNativeIntrinsic() {
+    private synchronized void initNativeIntrinsic() {
         if (intrinsicsMat == null) {
             intrinsicsMat = new Mat(3, 3, CV_32FC1);
             FloatIndexer intrinsicIdx = intrinsicsMat.createIndexer(true);
@@ -665,13 +810,17 @@ public class ProjectiveDeviceP implements PConstants, HasExtrinsics {
         updateFromIntrinsics();
     }
 
-    public void updateFromIntrinsics() {
+    public synchronized void updateFromIntrinsics() {
         fx = intrinsics.m00;
         fy = intrinsics.m11;
         ifx = 1f / intrinsics.m00;
         ify = 1f / intrinsics.m11;
         cx = intrinsics.m02;
         cy = intrinsics.m12;
+        rayX = null;
+        rayY = null;
+        pixelRayX = null;
+        pixelRayY = null;
     }
 
     public String toString() {
@@ -22,9 +22,13 @@ package fr.inria.papart.procam.camera;
 import fr.inria.papart.procam.camera.Camera.PixelFormat;
 import java.awt.Image;
 import java.nio.ByteBuffer;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import processing.core.PApplet;
 import processing.core.PImage;
+import processing.opengl.PGL;
+import processing.opengl.PGraphicsOpenGL;
+import processing.opengl.Texture;
 
 /**
  *
@@ -36,6 +40,11 @@ public abstract class CamImage extends PImage {
     protected ByteBuffer natBuffer = null;
     protected Camera.PixelFormat incomingFormat;
 
+    // Last image of update(), the pixels are converted only on loadPixels().
+    protected IplImage lastImage = null;
+    protected boolean pixelsLoaded = true;
+    protected boolean directUpload = false;
+
     protected CamImage(PApplet parent, int width, int height, int format, PixelFormat incomingFormat) {
         super(width, height, format);
         this.incomingFormat = incomingFormat;
@@ -51,6 +60,70 @@ public abstract class CamImage extends PImage {
 
     public abstract void update(IplImage iplImage);
 
+    /**
+     * Fill the pixels array from lastImage.
+     */
+    protected abstract void fillPixels();
+
+    /**
+     * The pixels are filled from the last camera image only when they are
+     * asked, the texture does not need them.
+     */
+    @Override
+    public void loadPixels() {
+        super.loadPixels();
+        if (!pixelsLoaded && lastImage != null) {
+            pixelsLoaded = true;
+            fillPixels();
+        }
+    }
+
+    /**
+     * Send the camera images to the texture without conversion, the format
+     * is handled by OpenGL. In this mode update() must be called from the
+     * drawing thread.
+     *
+     * @param directUpload
+     */
+    public void setDirectUpload(boolean directUpload) {
+        this.directUpload = directUpload;
+    }
+
+    public boolean isDirectUpload() {
+        return directUpload;
+    }
+
+    /**
+     * Upload an 8 bits image in the texture.
+     *
+     * @param img image of the size of this one, without row padding.
+     * @param glFormat OpenGL format of the pixels of img.
+     * @return false if the image cannot be sent directly.
+     */
+    protected boolean uploadTexture(IplImage img, int glFormat) {
+        if (img.depth() != IPL_DEPTH_8U
+                || img.width() != width || img.height() != height
+                || img.widthStep() != width * img.nChannels()) {
+            return false;
+        }
+        PGraphicsOpenGL pg = (PGraphicsOpenGL) parent.g;
+        Texture tex = pg.getTexture(this);
+        if (tex == null) {
+            return false;
+        }
+        PGL pgl = pg.pgl;
+        tex.bind();
+        pgl.pixelStorei(PGL.UNPACK_ALIGNMENT, 1);
+        pgl.texSubImage2D(tex.glTarget, 0, 0, 0, width, height,
+                glFormat, PGL.UNSIGNED_BYTE, img.getByteBuffer());
+        pgl.pixelStorei(PGL.UNPACK_ALIGNMENT, 4);
+        if (tex.usingMipmaps()) {
+            pgl.generateMipmap(tex.glTarget);
+        }
+        tex.unbind();
+        return true;
+    }
+
     public synchronized void disposeBuffer(Object buf) {
 
     }
@@ -22,6 +22,7 @@ package fr.inria.papart.procam.camera;
 import fr.inria.papart.utils.ImageUtils;
 import fr.inria.papart.utils.ARToolkitPlusUtils;
 import java.awt.Image;
+import com.jogamp.opengl.GL2;
 import java.nio.ByteBuffer;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import processing.core.PApplet;
@@ -36,6 +37,8 @@ import processing.opengl.Texture;
 public class CamImageColor extends CamImage {
 
     protected ByteBuffer argbBuffer;
+    // argbBuffer holds the last image.
+    private boolean argbReady = false;
 
     public CamImageColor(PApplet parent, Image img) {
         super(parent, img);
@@ -63,6 +66,14 @@ public class CamImageColor extends CamImage {
 
     @Override
     public void update(IplImage iplImage) {
+        lastImage = iplImage;
+        pixelsLoaded = false;
+        argbReady = false;
+
+        if (directUpload && uploadTexture(iplImage, glFormat())) {
+            return;
+        }
+
         Texture tex = ((PGraphicsOpenGL) parent.g).getTexture(this);
         ByteBuffer imageBuffer = iplImage.getByteBuffer();
 
@@ -77,6 +88,36 @@ public class CamImageColor extends CamImage {
         }
         tex.copyBufferFromSource(null, argbBuffer, width, height);
         argbBuffer.rewind();
+        argbReady = true;
+    }
+
+    private int glFormat() {
+        switch (incomingFormat) {
+            case BGR:
+                return GL2.GL_BGR;
+            case RGB:
+                return GL2.GL_RGB;
+            case ARGB:
+                return GL2.GL_RGBA;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    protected void fillPixels() {
+        if (argbReady) {
+            ImageUtils.byteBufferRGBAtoPixels(argbBuffer, pixels);
+            return;
+        }
+        if (incomingFormat == Camera.PixelFormat.ARGB) {
+            ImageUtils.byteBufferRGBAtoPixels(lastImage.getByteBuffer(), pixels);
+            return;
+        }
+        ImageUtils.IplImageToPixels(lastImage, incomingFormat == Camera.PixelFormat.RGB, pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
     }
 
 }
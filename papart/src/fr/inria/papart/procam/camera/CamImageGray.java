@@ -24,6 +24,7 @@ import fr.inria.papart.utils.ImageUtils;
 import fr.inria.papart.utils.ARToolkitPlusUtils;
 import fr.inria.papart.procam.camera.Camera.PixelFormat;
 import java.awt.Image;
+import com.jogamp.opengl.GL2;
 import java.nio.ByteBuffer;
 import org.bytedeco.javacpp.opencv_core;
 import processing.core.PApplet;
@@ -37,6 +38,8 @@ import processing.opengl.Texture;
 public class CamImageGray extends CamImage {
 
     protected ByteBuffer argbBuffer;
+    // argbBuffer holds the last image.
+    private boolean argbReady = false;
 
     public CamImageGray(PApplet parent, Image img) {
         super(parent, img);
@@ -63,6 +66,14 @@ public class CamImageGray extends CamImage {
 
     @Override
     public void update(opencv_core.IplImage iplImage) {
+        lastImage = iplImage;
+        pixelsLoaded = false;
+        argbReady = false;
+
+        if (directUpload && incomingFormat == PixelFormat.GRAY
+                && uploadTexture(iplImage, GL2.GL_LUMINANCE)) {
+            return;
+        }
 
         Texture tex = ((PGraphicsOpenGL) parent.g).getTexture(this);
         ByteBuffer imageBuffer = iplImage.getByteBuffer();
@@ -89,6 +100,16 @@ public class CamImageGray extends CamImage {
 //         Utils.byteBufferBRGtoARGB(bgrBuffer, argbBuffer);
         tex.copyBufferFromSource(null, argbBuffer, width, height);
         imageBuffer.rewind();
+        argbReady = true;
+    }
+
+    @Override
+    protected void fillPixels() {
+        if (argbReady) {
+            ImageUtils.byteBufferRGBAtoPixels(argbBuffer, pixels);
+        } else {
+            ImageUtils.IplImageToPixels(lastImage, false, pixels);
+        }
     }
 
 }
@@ -25,6 +25,7 @@ package fr.inria.papart.procam.camera;
  */
 import fr.inria.papart.multitouch.TouchInput;
 import fr.inria.papart.procam.HasExtrinsics;
+import fr.inria.papart.procam.LensMap;
 import fr.inria.papart.utils.ImageUtils;
 import fr.inria.papart.tracking.MarkerBoard;
 import fr.inria.papart.procam.ProjectiveDeviceP;
@@ -33,6 +34,7 @@ import fr.inria.papart.tracking.DetectedMarker;
 import fr.inria.papart.tracking.MarkerList;
 import fr.inria.papart.utils.WithSize;
 import org.bytedeco.javacpp.opencv_core.CvMat;
+import org.bytedeco.javacpp.opencv_core.CvRect;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,6 +42,10 @@ import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvRect;
+import static org.bytedeco.javacpp.opencv_imgproc.CV_BGR2GRAY;
+import static org.bytedeco.javacpp.opencv_imgproc.cvCvtColor;
 import org.bytedeco.javacv.ProjectiveDevice;
 
 import processing.core.PApplet;
@@ -53,8 +59,13 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
     public static Camera INVALID_CAMERA = new CameraOpenCV(-1);
 
     // Images
+    // currentImage is the image of the grabber, the others are computed from
+    // it when they are asked, once per frame.
     protected IplImage currentImage, copyUndist;
     protected CamImage camImage = null;
+    private volatile CameraFrame currentFrame = null;
+    private IplImage grayImage, grayUndist, grayCurrent;
+    private int undistFrame = -1, grayFrame = -1, camImageFrame = -1;
     protected DetectedMarker[] lastMarkers = null;
 
     private final PMatrix3D extrinsics = new PMatrix3D(1, 0, 0, 0,
@@ -104,6 +115,9 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
 
     protected int frameRate;
     protected boolean trackSheets = false;
+    protected boolean pipelinedTracking = false;
+    protected boolean parallelBoardUpdate = false;
+    protected boolean adaptiveMarkerSearch = false;
     protected boolean isClosing = false;
     protected boolean isConnected = false;
 
@@ -228,6 +242,7 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
     }
 
     private void updateCalibration() {
+        undistortMap = null;
         camIntrinsicsP3D = pdp.getIntrinsics();
         this.width = pdp.getWidth();
         this.height = pdp.getHeight();
@@ -236,11 +251,12 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
 
     public PImage getPImageCopy() {
         PImage out = parent.createImage(this.width, this.height, RGB);
-        if (currentImage == null) {
+        IplImage img = getIplImage();
+        if (img == null) {
             System.err.println("Error in PImageCopy(): no current image. ");
             return out;
         }
-        ImageUtils.IplImageToPImage(currentImage, false, out);
+        ImageUtils.IplImageToPImage(img, false, out);
         return out;
     }
 
@@ -252,12 +268,12 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
      */
     public PImage getPImageCopy(PApplet context) {
         PImage out = context.createImage(this.width, this.height, RGB);
-        ImageUtils.IplImageToPImage(currentImage, this.format == PixelFormat.RGB, out);
+        ImageUtils.IplImageToPImage(getIplImage(), this.format == PixelFormat.RGB, out);
         return out;
     }
 
     public PImage getPImageCopyTo(PImage out) {
-        ImageUtils.IplImageToPImage(currentImage, this.format, out);
+        ImageUtils.IplImageToPImage(getIplImage(), this.format, out);
         return out;
     }
 
@@ -371,6 +387,65 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
         }
     }
 
+    /**
+     * Grab the next image while the previous one is tracked. The thread
+     * drops the images when the tracking is slower than the camera.
+     *
+     * @param pipelined
+     */
+    public void setPipelinedTracking(boolean pipelined) {
+        this.pipelinedTracking = pipelined;
+        if (thread != null) {
+            thread.setPipelined(pipelined);
+        }
+    }
+
+    public boolean isPipelinedTracking() {
+        return this.pipelinedTracking;
+    }
+
+    /**
+     * Update the tracked boards in parallel in the camera thread. The
+     * thread waits for all the boards before the next image.
+     *
+     * @param parallel
+     */
+    public void setParallelBoardUpdate(boolean parallel) {
+        this.parallelBoardUpdate = parallel;
+        if (thread != null) {
+            thread.setParallelBoardUpdate(parallel);
+        }
+    }
+
+    public boolean isParallelBoardUpdate() {
+        return this.parallelBoardUpdate;
+    }
+
+    /**
+     * Search the markers only around the predicted locations of the boards
+     * found in the previous images. The whole image is still scanned
+     * periodically and when a board is lost.
+     *
+     * @param adaptive
+     */
+    public void setAdaptiveMarkerSearch(boolean adaptive) {
+        this.adaptiveMarkerSearch = adaptive;
+        if (thread != null) {
+            thread.setAdaptiveMarkerSearch(adaptive);
+        }
+    }
+
+    public boolean isAdaptiveMarkerSearch() {
+        return this.adaptiveMarkerSearch;
+    }
+
+    /**
+     * @return the update thread, or null if the camera is not threaded.
+     */
+    public CameraThread getThread() {
+        return thread;
+    }
+
     public boolean tracks(MarkerBoard board) {
         return this.sheets.contains(board);
     }
@@ -411,40 +486,182 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
     }
 
     protected int timeStamp = 0;
+    protected volatile int frameNumber = 0;
 
     public int getTimeStamp() {
         return timeStamp;
     }
+
+    /**
+     * Incremented with each new image, unlike the time stamp two images
+     * cannot have the same number.
+     *
+     * @return number of the current image.
+     */
+    public int getFrameNumber() {
+        return frameNumber;
+    }
     /**
-     * Update the current Image, from the specific grabber, lens distorsions are
-     * handled here.
+     * Update the current Image, from the specific grabber. The lens
+     * distorsions are removed only when the undistorted image is asked, see
+     * getIplImage().
      *
      * @param img
      */
     protected void updateCurrentImage(IplImage img) {
-        
+
+        if (undistort && (pdp == null || !pdp.handleDistorsions())) {
+            System.err.println("I cannot distort the image for processing. The "
+                    + "calibration did not contain information. ");
+            return;
+        }
+
+        // The image first, see getIplImage().
+        currentImage = img;
         this.timeStamp = parent.millis();
-        
-        if (undistort) {
-            if (pdp == null || !pdp.handleDistorsions()) {
-                System.err.println("I cannot distort the image for processing. The "
-                        + "calibration did not contain information. ");
-                return;
-            }
+        this.frameNumber++;
+        currentFrame = new CameraFrame(img, frameNumber, timeStamp, getPixelFormat());
+    }
 
-            if (copyUndist == null) {
-                copyUndist = img.clone();
+    /**
+     * Last image grabbed, without undistortion nor conversion.
+     *
+     * @return the frame, or null if no image was grabbed.
+     */
+    public CameraFrame getCurrentFrame() {
+        return currentFrame;
+    }
+
+    /**
+     * @return the image of the grabber, with the lens distorsions.
+     */
+    public IplImage getRawImage() {
+        return currentImage;
+    }
+
+    /**
+     * Remove the lens distorsions of an image of this camera.
+     *
+     * @param src image of the size of the camera.
+     * @param dst undistorted image, same size and format as src.
+     * @return false if the images of this camera are not undistorted, dst is
+     * then not modified.
+     */
+    public boolean undistortImage(IplImage src, IplImage dst) {
+        // Workaround for crash when the java program is closing
+        // to avoid native code to continue to run...
+        if (!undistort || pdp == null || isClosing()) {
+            return false;
+        }
+        LensMap map = getUndistortMap();
+        if (map.getWidth() != src.width() || map.getHeight() != src.height()) {
+            pdp.getDevice().undistort(src, dst);
+            return true;
+        }
+        map.remap(src, dst, undistortROI);
+        return true;
+    }
+
+    private LensMap undistortMap = null;
+    private CvRect undistortROI = null;
+
+    /**
+     * Remap table of the undistortion, loaded from the calibration folder
+     * or computed on the first call.
+     *
+     * @return the table of the current calibration.
+     */
+    protected synchronized LensMap getUndistortMap() {
+        if (undistortMap == null) {
+            undistortMap = LensMap.load(pdp, LensMap.Direction.DISTORT, calibrationFile);
+        }
+        return undistortMap;
+    }
+
+    /**
+     * Undistort only a region of the images. Outside of it, the undistorted
+     * images are not updated.
+     *
+     * @param x
+     * @param y
+     * @param w
+     * @param h
+     */
+    public void setUndistortROI(int x, int y, int w, int h) {
+        x = Math.max(0, x);
+        y = Math.max(0, y);
+        w = Math.min(w, width - x);
+        h = Math.min(h, height - y);
+        if (w <= 0 || h <= 0) {
+            throw new IllegalArgumentException("Camera: the undistortion region is outside of the image.");
+        }
+        undistortROI = cvRect(x, y, w, h);
+    }
+
+    /**
+     * Undistort the whole images (default).
+     */
+    public void clearUndistortROI() {
+        undistortROI = null;
+    }
+
+    /**
+     * Gray version of the current image, computed once per frame. The color
+     * images are converted before the undistortion so that only one channel
+     * is undistorted.
+     *
+     * @return 8 bits gray image, or the current image if it has one channel.
+     */
+    public synchronized IplImage getGrayImage() {
+        // Read before the image, an image newer than its number is only
+        // converted again.
+        int frame = frameNumber;
+        IplImage raw = currentImage;
+        if (raw == null || raw.nChannels() == 1) {
+            return getIplImage();
+        }
+        if (grayFrame == frame && grayCurrent != null) {
+            return grayCurrent;
+        }
+        if (grayImage == null
+                || grayImage.width() != raw.width()
+                || grayImage.height() != raw.height()) {
+            grayImage = IplImage.create(raw.width(), raw.height(), IPL_DEPTH_8U, 1);
+            grayUndist = null;
+        }
+        cvCvtColor(raw, grayImage, CV_BGR2GRAY);
+        grayCurrent = grayImage;
+        if (undistort) {
+            if (grayUndist == null) {
+                grayUndist = grayImage.clone();
             }
-            // Workaround for crash when the java program is closing
-            // to avoid native code to continue to run...
-            if (isClosing()) {
-                return;
+            if (!undistortImage(grayImage, grayUndist)) {
+                return grayImage;
             }
-            pdp.getDevice().undistort(img, copyUndist);
-            currentImage = copyUndist;
-        } else {
-            currentImage = img;
+            grayCurrent = grayUndist;
+        }
+        grayFrame = frame;
+        return grayCurrent;
+    }
+
+    /**
+     * Update the CamImage with the current image, at most once per frame.
+     * Used by the getPImage() implementations.
+     *
+     * @return the CamImage, null if there is no image.
+     */
+    protected PImage updateCamImage() {
+        int frame = frameNumber;
+        IplImage img = getIplImage();
+        if (img == null) {
+            return null;
+        }
+        checkCamImage();
+        if (camImage != null && camImageFrame != frame) {
+            camImage.update(img);
+            camImageFrame = frame;
         }
+        return camImage;
     }
 
     /**
@@ -462,14 +679,63 @@ public abstract class Camera implements PConstants, HasExtrinsics, WithSize {
             if (!this.isPixelFormatColor() && !this.isPixelFormatGray()) {
                 System.out.println("Error: No pixel format set for the camera!");
             }
+            if (camImage != null) {
+                camImage.setDirectUpload(directTextureUpload);
+            }
         }
     }
 
+    protected boolean directTextureUpload = false;
+
+    /**
+     * Send the 8 bits BGR, RGB and GRAY images directly to the texture of
+     * getPImage(), the pixels are converted only when loadPixels() is called.
+     * getPImage() must then be called from the drawing thread.
+     *
+     * @param directTextureUpload
+     */
+    public void setDirectTextureUpload(boolean directTextureUpload) {
+        this.directTextureUpload = directTextureUpload;
+        if (camImage != null) {
+            camImage.setDirectUpload(directTextureUpload);
+        }
+    }
+
+    public boolean isDirectTextureUpload() {
+        return directTextureUpload;
+    }
+
 // Public API 
     public abstract void grab();
 
-    public IplImage getIplImage() {
-        return currentImage;
+    /**
+     * Current image, undistorted if isUndistort(). The undistortion is done
+     * on the first call for each frame.
+     *
+     * @return the image, or null if no image was grabbed.
+     */
+    public synchronized IplImage getIplImage() {
+        // Read before the image, an image newer than its number is only
+        // undistorted again.
+        int frame = frameNumber;
+        IplImage raw = currentImage;
+        if (!undistort || raw == null) {
+            return raw;
+        }
+        if (undistFrame == frame && copyUndist != null) {
+            return copyUndist;
+        }
+        if (copyUndist == null
+                || copyUndist.width() != raw.width()
+                || copyUndist.height() != raw.height()
+                || copyUndist.nChannels() != raw.nChannels()) {
+            copyUndist = raw.clone();
+        }
+        if (!undistortImage(raw, copyUndist)) {
+            return raw;
+        }
+        undistFrame = frame;
+        return copyUndist;
     }
 
     public ProjectiveDeviceP getProjectiveDevice() {
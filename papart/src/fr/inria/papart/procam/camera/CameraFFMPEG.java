@@ -129,14 +129,8 @@ public class CameraFFMPEG extends Camera {
 
     @Override
     public PImage getPImage() {
-
-        if (currentImage != null) {
-            this.checkCamImage();
-            camImage.update(currentImage);
-            return camImage;
-        }
         // TODO: exceptions !!!
-        return null;
+        return updateCamImage();
     }
 
     @Override
@@ -110,14 +110,8 @@ public class CameraFlyCapture extends Camera {
 
     @Override
     public PImage getPImage() {
-
-        if (currentImage != null) {
-            this.checkCamImage();
-            camImage.update(currentImage);
-            return camImage;
-        }
         // TODO: exceptions !!!
-        return null;
+        return updateCamImage();
     }
 
     public void setBayerDecode(boolean isBayer) {
@@ -0,0 +1,77 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.procam.camera;
+
+import fr.inria.papart.procam.camera.Camera.PixelFormat;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+
+/**
+ * Image grabbed by a Camera, as given by the grabber: not undistorted nor
+ * converted. The undistorted, gray and PImage versions are computed by the
+ * Camera when they are asked, once per frame.
+ *
+ * The image buffer is usually reused by the grabber, it is valid until the
+ * next grab.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public final class CameraFrame {
+
+    private final IplImage image;
+    private final int number;
+    private final int timeStamp;
+    private final PixelFormat format;
+
+    public CameraFrame(IplImage image, int number, int timeStamp, PixelFormat format) {
+        this.image = image;
+        this.number = number;
+        this.timeStamp = timeStamp;
+        this.format = format;
+    }
+
+    /**
+     * @return the raw image, with the lens distortions.
+     */
+    public IplImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return number of the frame, see Camera.getFrameNumber().
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @return time of the grab, in milliseconds (PApplet.millis()).
+     */
+    public int getTimeStamp() {
+        return timeStamp;
+    }
+
+    public PixelFormat getPixelFormat() {
+        return format;
+    }
+
+    @Override
+    public String toString() {
+        return "CameraFrame " + number + " at " + timeStamp + "ms, " + format;
+    }
+}
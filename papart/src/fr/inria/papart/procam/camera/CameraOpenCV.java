@@ -82,14 +82,8 @@ public class CameraOpenCV extends Camera {
 
     @Override
     public PImage getPImage() {
-
-        if (currentImage != null) {
-            this.checkCamImage();
-            camImage.update(currentImage);
-            return camImage;
-        }
         // TODO: exceptions !!!
-        return null;
+        return updateCamImage();
     }
 
     @Override
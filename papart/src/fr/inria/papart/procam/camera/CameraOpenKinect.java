@@ -71,9 +71,9 @@ public class CameraOpenKinect extends CameraRGBIRDepth {
     @Override
     public void grabDepth() {
         try {
-            depthCamera.currentImage = grabber.grabDepth();
+            depthCamera.updateCurrentImage(grabber.grabDepth());
 
-            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.currentImage);
+            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.getIplImage());
         } catch (FrameGrabber.Exception ex) {
             Logger.getLogger(CameraOpenKinect.class.getName()).log(Level.SEVERE, null, ex);
         }
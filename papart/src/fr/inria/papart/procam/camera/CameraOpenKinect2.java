@@ -119,8 +119,8 @@ public class CameraOpenKinect2 extends CameraRGBIRDepth {
 
     @Override
     public void grabDepth() {
-        depthCamera.currentImage = grabber.getDepthImage();
-        ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.currentImage);
+        depthCamera.updateCurrentImage(grabber.getDepthImage());
+        ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.getIplImage());
     }
 
     @Override
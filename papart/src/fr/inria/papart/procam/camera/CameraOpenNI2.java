@@ -162,11 +162,11 @@ public class CameraOpenNI2 extends CameraRGBIRDepth {
     @Override
     public void grabDepth() {
         if (getActingCamera() == IRCamera) {
-            ((WithTouchInput) depthCamera).newTouchImageWithColor(IRCamera.currentImage);
+            ((WithTouchInput) depthCamera).newTouchImageWithColor(IRCamera.getIplImage());
             return;
         }
         if (getActingCamera() == colorCamera || useColor && colorCamera.currentImage != null) {
-            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.currentImage);
+            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.getIplImage());
             return;
         }
         ((WithTouchInput) depthCamera).newTouchImage();
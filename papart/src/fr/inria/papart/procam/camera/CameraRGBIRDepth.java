@@ -459,6 +459,57 @@ public abstract class CameraRGBIRDepth extends Camera {
         return actAsCamera.getIplImage();
     }
 
+    @Override
+    public CameraFrame getCurrentFrame() {
+        return actAsCamera.getCurrentFrame();
+    }
+
+    /**
+     * Frame number of the acting camera, the images are published by it.
+     *
+     * @return number of the current image.
+     */
+    @Override
+    public int getFrameNumber() {
+        if (actAsCamera == null) {
+            return super.getFrameNumber();
+        }
+        return actAsCamera.getFrameNumber();
+    }
+
+    @Override
+    public int getTimeStamp() {
+        if (actAsCamera == null) {
+            return super.getTimeStamp();
+        }
+        return actAsCamera.getTimeStamp();
+    }
+
+    @Override
+    public opencv_core.IplImage getRawImage() {
+        return actAsCamera.getRawImage();
+    }
+
+    @Override
+    public opencv_core.IplImage getGrayImage() {
+        return actAsCamera.getGrayImage();
+    }
+
+    @Override
+    public boolean undistortImage(opencv_core.IplImage src, opencv_core.IplImage dst) {
+        return actAsCamera.undistortImage(src, dst);
+    }
+
+    @Override
+    public void setUndistortROI(int x, int y, int w, int h) {
+        actAsCamera.setUndistortROI(x, y, w, h);
+    }
+
+    @Override
+    public void clearUndistortROI() {
+        actAsCamera.clearUndistortROI();
+    }
+
     @Override
     public ProjectiveDeviceP getProjectiveDevice() {
         return actAsCamera.getProjectiveDevice();
@@ -172,11 +172,11 @@ public class CameraRealSense extends CameraRGBIRDepth {
         // update the touch input
 
         if (getActingCamera() == IRCamera) {
-            ((WithTouchInput) depthCamera).newTouchImageWithColor(IRCamera.currentImage);
+            ((WithTouchInput) depthCamera).newTouchImageWithColor(IRCamera.getIplImage());
             return;
         }
         if (getActingCamera() == colorCamera || useColor) {
-            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.currentImage);
+            ((WithTouchInput) depthCamera).newTouchImageWithColor(colorCamera.getIplImage());
             return;
         }
         ((WithTouchInput) depthCamera).newTouchImage();
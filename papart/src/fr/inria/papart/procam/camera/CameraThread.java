@@ -22,40 +22,74 @@ package fr.inria.papart.procam.camera;
 import fr.inria.papart.procam.Papart;
 import fr.inria.papart.tracking.MarkerBoard;
 import fr.inria.papart.tracking.DetectedMarker;
+import fr.inria.papart.tracking.MarkerIndex;
+import fr.inria.papart.tracking.MarkerSearch;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.bytedeco.javacpp.ARToolKitPlus;
 import static org.bytedeco.javacpp.opencv_core.IPL_DEPTH_8U;
+import static org.bytedeco.javacpp.opencv_core.cvCopy;
 import org.bytedeco.javacpp.opencv_imgcodecs;
 import static org.bytedeco.javacpp.opencv_imgproc.CV_BGR2GRAY;
 import static org.bytedeco.javacpp.opencv_imgproc.cvCvtColor;
 import processing.core.PVector;
 
 /**
+ * Grabs the camera images and tracks the MarkerBoards.
+ *
+ * In the sequential mode each image is grabbed, converted to gray, the
+ * markers are detected and the boards are updated before the next grab. In
+ * the pipelined mode each step runs in its own thread: the camera is grabbed
+ * while the previous image is tracked. The stages exchange the frames
+ * through single slots, a frame not taken by the next stage is replaced by
+ * the newest one (and counted as dropped).
  *
  * @author jeremylaviole
  */
 public class CameraThread extends Thread {
 
+    /**
+     * Steps of the tracking.
+     */
+    public enum Stage {
+        GRAB, GRAY, DETECTION, BOARD_UPDATE
+    }
+
     private final Camera camera;
     Camera cameraForMarkerboard;
     private boolean compute;
     private IplImage image, grayImage;
+    // When true the images are asked to the camera, only the ones needed by
+    // the boards are computed.
+    private boolean imageFromCamera = false;
     private DetectedMarker[] detectedMarkers;
 
-    public boolean stop;
+    // Read by the pipeline stages.
+    public volatile boolean stop;
+
+    private volatile boolean pipelined = false;
+    private Pipeline pipeline = null;
+    private final AtomicLongArray stageTimes = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray droppedFrames = new AtomicLongArray(Stage.values().length);
 
     public CameraThread(Camera camera) {
         this.camera = camera;
         stop = false;
 
         cameraForMarkerboard = camera;
+        pipelined = camera.isPipelinedTracking();
+        parallelBoardUpdate = camera.isParallelBoardUpdate();
+        adaptiveMarkerSearch = camera.isAdaptiveMarkerSearch();
 
         // Thread version... No bonus whatsoever for now.
         initThreadPool();
@@ -63,14 +97,16 @@ public class CameraThread extends Thread {
 
     private final int nbThreads = 4;
     private ExecutorService threadPool = null;
+    private boolean parallelBoardUpdate = false;
 
-    private void tryInitThreadPool() {
+    private synchronized ExecutorService tryInitThreadPool() {
         if (threadPool == null) {
             this.initThreadPool();
         }
+        return threadPool;
     }
 
-    private void initThreadPool() {
+    private synchronized void initThreadPool() {
         threadPool = Executors.newFixedThreadPool(nbThreads);
 //        threadPool = Executors.newCachedThreadPool();
     }
@@ -80,16 +116,36 @@ public class CameraThread extends Thread {
 
         while (!stop) {
             checkSubCamera();
+            long start = System.nanoTime();
             camera.grab();
+            stageTimes.set(Stage.GRAB.ordinal(), System.nanoTime() - start);
             // If there is no camera for tracking...
             if (cameraForMarkerboard == null || !compute || camera.getTrackedSheets().isEmpty()) {
                 continue;
             }
-            image = camera.getIplImage();
-            if (image != null) {
-                this.compute();
+            // The stages are stopped before the sequential tracking, it
+            // uses the same marker detection.
+            if (!pipelined && pipeline != null) {
+                if (!pipeline.stop()) {
+                    break;
+                }
+                pipeline = null;
+            }
+            IplImage raw = camera.getRawImage();
+            if (raw != null) {
+                if (pipelined) {
+                    pushToPipeline(raw);
+                } else {
+                    imageFromCamera = true;
+                    this.compute();
+                }
             }
         }
+        boolean stopped = pipeline == null || pipeline.stop();
+        if (stopped && markerSearch != null) {
+            markerSearch.close();
+            markerSearch = null;
+        }
     }
 
     /**
@@ -98,6 +154,7 @@ public class CameraThread extends Thread {
      */
     public void setImage(IplImage image) {
         this.image = image;
+        this.imageFromCamera = false;
     }
 
     private void checkSubCamera() {
@@ -117,12 +174,17 @@ public class CameraThread extends Thread {
     public void compute() {
         try {
             camera.getSheetSemaphore().acquire();
+            long start = System.nanoTime();
             tryComputeGrayScale();
+            long grayEnd = System.nanoTime();
             tryToFindMarkers();
+            long detectionEnd = System.nanoTime();
 
-             updateSequential();
-//            updateParallel();
+            updateBoards(camera.getTrackedSheets(), image, grayImage, detectedMarkers);
 
+            stageTimes.set(Stage.GRAY.ordinal(), grayEnd - start);
+            stageTimes.set(Stage.DETECTION.ordinal(), detectionEnd - grayEnd);
+            stageTimes.set(Stage.BOARD_UPDATE.ordinal(), System.nanoTime() - detectionEnd);
             camera.getSheetSemaphore().release();
         } catch (InterruptedException ex) {
             Logger.getLogger(CameraThread.class.getName()).log(Level.SEVERE, null, ex);
@@ -131,6 +193,24 @@ public class CameraThread extends Thread {
 
     private void tryComputeGrayScale() {
 
+        // The marker boards only need the gray image, which is converted
+        // before the undistortion. The color image is undistorted only if a
+        // board needs it.
+        if (imageFromCamera) {
+            image = null;
+            grayImage = null;
+            for (MarkerBoard sheet : camera.getTrackedSheets()) {
+                if (sheet.useMarkers()) {
+                    if (grayImage == null) {
+                        grayImage = camera.getGrayImage();
+                    }
+                } else if (image == null) {
+                    image = camera.getIplImage();
+                }
+            }
+            return;
+        }
+
 //        if (image.depth() == IPL_DEPTH_8U) {
         if (image.nChannels() == 1) {
             grayImage = image;
@@ -151,7 +231,7 @@ public class CameraThread extends Thread {
     private void tryToFindMarkers() {
         for (MarkerBoard sheet : camera.getTrackedSheets()) {
             if (sheet.useCustomARToolkitBoard()) {
-                if (tracker == null) {
+                if (markerSearch == null) {
                     initMarkerTracking();
                 }
                 this.detectedMarkers = computeMarkerLocations();
@@ -178,12 +258,18 @@ public class CameraThread extends Thread {
         grayImage = IplImage.create(width, height, IPL_DEPTH_8U, 1);
     }
 
-    private ARToolKitPlus.MultiTracker tracker = null;
+    // Trackers and native buffers of the marker detection, released when the
+    // thread stops.
+    private MarkerSearch markerSearch = null;
+    private boolean adaptiveMarkerSearch = false;
+    private int fullScanPeriod = 15;
 
     private void initMarkerTracking() {
         int cameraWidth = camera.width();
         int cameraHeight = camera.height();
-        tracker = DetectedMarker.createDetector(cameraWidth, cameraHeight);
+        markerSearch = new MarkerSearch(cameraWidth, cameraHeight);
+        markerSearch.setFullScanPeriod(fullScanPeriod);
+        markerSearch.setAdaptive(adaptiveMarkerSearch);
     }
 
     private void computeGrayScaleImage() {
@@ -192,60 +278,161 @@ public class CameraThread extends Thread {
 
     static int k  = 0;
     private DetectedMarker[] computeMarkerLocations() {
-        return DetectedMarker.detect(tracker, grayImage);
+        return markerSearch.detect(grayImage, camera.getTrackedSheets(), cameraForMarkerboard);
+    }
+
+    /**
+     * Update the boards, in parallel or not. Called with the sheet semaphore
+     * acquired, all the updates are finished when it returns.
+     */
+    private void updateBoards(List<MarkerBoard> boards, IplImage image, IplImage grayImage, DetectedMarker[] markers) {
+        // The markers are indexed once for all the boards.
+        MarkerIndex index = new MarkerIndex(markers);
+        if (parallelBoardUpdate && boards.size() > 1) {
+            updateParallel(boards, image, grayImage, index);
+        } else {
+            updateSequential(boards, image, grayImage, index);
+        }
     }
 
     protected void updateSequential() {
-        for (MarkerBoard markerBoard : camera.getTrackedSheets()) {
-            updateBoardLocation(markerBoard);
+        updateSequential(image, grayImage, new MarkerIndex(detectedMarkers));
+    }
+
+    protected void updateSequential(IplImage image, IplImage grayImage, MarkerIndex markers) {
+        updateSequential(camera.getTrackedSheets(), image, grayImage, markers);
+    }
+
+    protected void updateSequential(List<MarkerBoard> boards, IplImage image, IplImage grayImage, MarkerIndex markers) {
+        for (MarkerBoard markerBoard : boards) {
+            updateBoardLocation(markerBoard, image, grayImage, markers);
         }
     }
 
     protected void updateBoardLocation(MarkerBoard markerBoard) {
+        updateBoardLocation(markerBoard, image, grayImage, new MarkerIndex(detectedMarkers));
+    }
+
+    protected void updateBoardLocation(MarkerBoard markerBoard, IplImage image, IplImage grayImage, MarkerIndex markers) {
         // The markerboard will know the real camera, not the top-level camera. 
         if (markerBoard.useMarkers()) {
-            markerBoard.updateLocation(cameraForMarkerboard, grayImage, this.detectedMarkers);
+            markerBoard.updateLocation(cameraForMarkerboard, grayImage, markers);
         } else {
             markerBoard.updateLocation(cameraForMarkerboard, image, null);
         }
     }
 
     protected void updateParallel() {
-        tryInitThreadPool();
+        updateParallel(image, grayImage, new MarkerIndex(detectedMarkers));
+    }
 
-        ArrayList<FutureTask<ARTrackingTask>> tasks = new ArrayList<>();
-        for (MarkerBoard sheet : camera.getTrackedSheets()) {
-            ARTrackingTask depthPixelTask = new ARTrackingTask(sheet);
-            FutureTask<ARTrackingTask> task = new FutureTask<ARTrackingTask>(depthPixelTask);
-            threadPool.submit(task);
-            tasks.add(task);
+    protected void updateParallel(IplImage image, IplImage grayImage, MarkerIndex markers) {
+        updateParallel(camera.getTrackedSheets(), image, grayImage, markers);
+    }
+
+    /**
+     * Update each board in the thread pool and wait for all of them. The
+     * images and markers are only read by the boards. A board tracked by
+     * several cameras is updated by one camera at a time (updateLocation
+     * is synchronized on the board).
+     */
+    protected void updateParallel(List<MarkerBoard> boards, IplImage image, IplImage grayImage, MarkerIndex markers) {
+        ExecutorService pool = tryInitThreadPool();
+
+        ArrayList<Future<Object>> tasks = new ArrayList<>();
+        try {
+            for (MarkerBoard sheet : boards) {
+                tasks.add(pool.submit(new ARTrackingTask(sheet, image, grayImage, markers)));
+            }
+        } catch (RejectedExecutionException e) {
+            // The pool was shut down by setCompute(false), finish here.
+            for (int i = tasks.size(); i < boards.size(); i++) {
+                updateBoardLocation(boards.get(i), image, grayImage, markers);
+            }
         }
-//        try {
-//            for (FutureTask<DepthPixelTask> task : tasks) {
-//                task.get();
-//            }
-//        } catch (ExecutionException e) {
-//        } catch (InterruptedException e) {
-//        }
 
+        for (Future<Object> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                Logger.getLogger(CameraThread.class.getName()).log(Level.SEVERE, null, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
-    class ARTrackingTask implements Callable {
+    class ARTrackingTask implements Callable<Object> {
 
         private final MarkerBoard markerBoard;
+        private final IplImage image, grayImage;
+        private final MarkerIndex markers;
 
-        public ARTrackingTask(MarkerBoard markerBoard) {
+        public ARTrackingTask(MarkerBoard markerBoard, IplImage image, IplImage grayImage, MarkerIndex markers) {
             this.markerBoard = markerBoard;
+            this.image = image;
+            this.grayImage = grayImage;
+            this.markers = markers;
         }
 
         @Override
         public Object call() {
-            updateBoardLocation(markerBoard);
+            updateBoardLocation(markerBoard, image, grayImage, markers);
             return null;
         }
 
     }
 
+    /**
+     * Update the boards in parallel, in a pool of 4 threads. Useful with
+     * many boards or with boards tracked by features (ObjectFinder).
+     *
+     * @param parallel
+     */
+    public void setParallelBoardUpdate(boolean parallel) {
+        this.parallelBoardUpdate = parallel;
+    }
+
+    public boolean isParallelBoardUpdate() {
+        return parallelBoardUpdate;
+    }
+
+    /**
+     * Search the markers around the predicted locations of the boards, the
+     * whole image is scanned every fullScanPeriod images or when a board is
+     * lost.
+     *
+     * @param adaptive
+     */
+    public void setAdaptiveMarkerSearch(boolean adaptive) {
+        this.adaptiveMarkerSearch = adaptive;
+        MarkerSearch search = markerSearch;
+        if (search != null) {
+            search.setAdaptive(adaptive);
+        }
+    }
+
+    public boolean isAdaptiveMarkerSearch() {
+        return adaptiveMarkerSearch;
+    }
+
+    /**
+     * @param period number of images between two scans of the whole image,
+     * in the adaptive marker search.
+     */
+    public void setFullScanPeriod(int period) {
+        this.fullScanPeriod = period;
+        MarkerSearch search = markerSearch;
+        if (search != null) {
+            search.setFullScanPeriod(period);
+        }
+    }
+
+    public int getFullScanPeriod() {
+        return fullScanPeriod;
+    }
+
     public boolean isCompute() {
         return compute;
     }
@@ -253,13 +440,341 @@ public class CameraThread extends Thread {
     public void setCompute(boolean compute) {
         this.compute = compute;
 
-        if (compute == false && this.threadPool != null) {
-            this.threadPool.shutdown();
-            this.threadPool = null;
+        if (compute == false) {
+            synchronized (this) {
+                if (this.threadPool != null) {
+                    this.threadPool.shutdown();
+                    this.threadPool = null;
+                }
+            }
         }
     }
 
     public void stopThread() {
         stop = true;
     }
+
+    /**
+     * Run the grab, gray conversion, marker detection and board update in
+     * separate threads. Takes effect on the next grabbed image, the stages
+     * are stopped before the next sequential tracking.
+     *
+     * @param pipelined
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Duration of a stage for the last frame that went through it.
+     *
+     * @param stage
+     * @return time in milliseconds.
+     */
+    public float getStageTime(Stage stage) {
+        return stageTimes.get(stage.ordinal()) / 1000000f;
+    }
+
+    /**
+     * Number of frames replaced by a newer one before this stage could take
+     * them. Always 0 for the grab stage and in sequential mode.
+     *
+     * @param stage
+     * @return number of dropped frames since the start.
+     */
+    public long getDroppedFrames(Stage stage) {
+        return droppedFrames.get(stage.ordinal());
+    }
+
+    private void pushToPipeline(IplImage image) {
+        if (pipeline == null) {
+            pipeline = new Pipeline();
+        }
+        Frame frame = pipeline.obtainFrame(image);
+
+        // The boards are read under the semaphore, the next stages only use
+        // this copy and these flags.
+        try {
+            camera.getSheetSemaphore().acquire();
+            try {
+                frame.boards.clear();
+                frame.boards.addAll(camera.getTrackedSheets());
+                frame.useMarkers = false;
+                frame.useARToolkit = false;
+                frame.useColor = false;
+                for (MarkerBoard sheet : frame.boards) {
+                    frame.useMarkers |= sheet.useMarkers();
+                    frame.useARToolkit |= sheet.useCustomARToolkitBoard();
+                    frame.useColor |= !sheet.useMarkers();
+                }
+            } finally {
+                camera.getSheetSemaphore().release();
+            }
+        } catch (InterruptedException ex) {
+            pipeline.recycle(frame);
+            return;
+        }
+        pipeline.grayInput.offer(frame);
+    }
+
+    /**
+     * A copy of a grabbed image, and the results of each stage. The image is
+     * copied before the undistortion, it is done in the gray stage.
+     */
+    static class Frame {
+
+        IplImage image, ownGrayImage, grayImage;
+        IplImage undistImage, undistGray, colorImage;
+        DetectedMarker[] markers;
+        // Boards tracked when the image was grabbed.
+        final ArrayList<MarkerBoard> boards = new ArrayList<>();
+        boolean useMarkers, useARToolkit, useColor;
+    }
+
+    /**
+     * Undistort src in dst with the calibration of the camera.
+     *
+     * @return the undistorted image, src if the camera does not undistort.
+     */
+    private IplImage undistort(IplImage src, IplImage dst) {
+        return camera.undistortImage(src, dst) ? dst : src;
+    }
+
+    /**
+     * Single frame handoff between two stages. A new frame replaces the one
+     * not taken yet.
+     */
+    class FrameSlot {
+
+        private final Stage stage;
+        private Frame frame = null;
+
+        FrameSlot(Stage stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * Give a frame to the next stage, the frame waiting is dropped.
+         *
+         * @param newFrame
+         */
+        synchronized void offer(Frame newFrame) {
+            if (frame != null) {
+                droppedFrames.incrementAndGet(stage.ordinal());
+                pipeline.recycle(frame);
+            }
+            frame = newFrame;
+            notifyAll();
+        }
+
+        /**
+         * Wait for a frame.
+         *
+         * @param timeout maximum wait, in ms.
+         * @return the frame, or null after the timeout or if interrupted
+         * (the interrupt status is kept).
+         */
+        synchronized Frame take(long timeout) {
+            long end = System.currentTimeMillis() + timeout;
+            try {
+                while (frame == null) {
+                    long remaining = end - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Frame out = frame;
+            frame = null;
+            return out;
+        }
+    }
+
+    // Wait of a stage for a frame, in ms, before it checks the stop flags.
+    private static final long TAKE_TIMEOUT = 100;
+
+    abstract class StageThread extends Thread {
+
+        private final Stage stage;
+        private final FrameSlot input;
+        private volatile boolean running = true;
+
+        StageThread(Stage stage, FrameSlot input) {
+            super("CameraThread " + stage);
+            this.stage = stage;
+            this.input = input;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!stop && running && !isInterrupted()) {
+                Frame frame = input.take(TAKE_TIMEOUT);
+                if (frame == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    process(frame);
+                } catch (RuntimeException e) {
+                    // Drop this frame, the stage keeps running.
+                    Logger.getLogger(CameraThread.class.getName()).log(Level.SEVERE,
+                            "CameraThread " + stage + ": frame dropped", e);
+                    pipeline.recycle(frame);
+                    continue;
+                }
+                stageTimes.set(stage.ordinal(), System.nanoTime() - start);
+            }
+        }
+
+        void halt() {
+            running = false;
+            interrupt();
+        }
+
+        /**
+         * Process the frame, then give it to the next stage or recycle it.
+         * The frame is recycled by the caller if it throws an exception.
+         *
+         * @param frame
+         */
+        abstract void process(Frame frame);
+    }
+
+    class Pipeline {
+
+        final FrameSlot grayInput = new FrameSlot(Stage.GRAY);
+        final FrameSlot detectionInput = new FrameSlot(Stage.DETECTION);
+        final FrameSlot boardInput = new FrameSlot(Stage.BOARD_UPDATE);
+        private final ConcurrentLinkedQueue<Frame> freeFrames = new ConcurrentLinkedQueue<>();
+        private final ArrayList<StageThread> threads = new ArrayList<>();
+
+        Pipeline() {
+            threads.add(new StageThread(Stage.GRAY, grayInput) {
+                @Override
+                void process(Frame frame) {
+                    if (camera.isUndistort() && frame.undistImage == null) {
+                        frame.undistImage = frame.image.clone();
+                    }
+                    if (frame.image.nChannels() == 1) {
+                        frame.grayImage = undistort(frame.image, frame.undistImage);
+                        frame.colorImage = frame.grayImage;
+                        detectionInput.offer(frame);
+                        return;
+                    }
+                    frame.grayImage = null;
+                    if (frame.useMarkers) {
+                        if (frame.ownGrayImage == null) {
+                            frame.ownGrayImage = IplImage.create(frame.image.width(),
+                                    frame.image.height(), IPL_DEPTH_8U, 1);
+                        }
+                        cvCvtColor(frame.image, frame.ownGrayImage, CV_BGR2GRAY);
+                        if (camera.isUndistort() && frame.undistGray == null) {
+                            frame.undistGray = frame.ownGrayImage.clone();
+                        }
+                        frame.grayImage = undistort(frame.ownGrayImage, frame.undistGray);
+                    }
+                    frame.colorImage = frame.useColor
+                            ? undistort(frame.image, frame.undistImage)
+                            : null;
+                    detectionInput.offer(frame);
+                }
+            });
+            threads.add(new StageThread(Stage.DETECTION, detectionInput) {
+                @Override
+                void process(Frame frame) {
+                    frame.markers = null;
+                    if (frame.useARToolkit && frame.grayImage != null) {
+                        if (markerSearch == null) {
+                            initMarkerTracking();
+                        }
+                        frame.markers = markerSearch.detect(frame.grayImage,
+                                frame.boards, cameraForMarkerboard);
+                    }
+                    boardInput.offer(frame);
+                }
+            });
+            threads.add(new StageThread(Stage.BOARD_UPDATE, boardInput) {
+                @Override
+                void process(Frame frame) {
+                    try {
+                        camera.getSheetSemaphore().acquire();
+                        try {
+                            if (frame.useARToolkit) {
+                                camera.setMarkers(frame.markers);
+                            }
+                            updateBoards(frame.boards, frame.colorImage, frame.grayImage, frame.markers);
+                        } finally {
+                            camera.getSheetSemaphore().release();
+                        }
+                    } catch (InterruptedException ex) {
+                        // Stopped, the frame is dropped.
+                        Thread.currentThread().interrupt();
+                    }
+                    recycle(frame);
+                }
+            });
+            for (StageThread thread : threads) {
+                thread.start();
+            }
+        }
+
+        /**
+         * Copy the image in a free frame. The camera reuses its image at
+         * the next grab.
+         */
+        Frame obtainFrame(IplImage image) {
+            Frame frame = freeFrames.poll();
+            if (frame == null) {
+                frame = new Frame();
+            }
+            if (frame.image == null
+                    || frame.image.width() != image.width()
+                    || frame.image.height() != image.height()
+                    || frame.image.nChannels() != image.nChannels()
+                    || frame.image.depth() != image.depth()) {
+                frame.image = IplImage.create(image.width(), image.height(),
+                        image.depth(), image.nChannels());
+                frame.ownGrayImage = null;
+                frame.undistImage = null;
+                frame.undistGray = null;
+            }
+            cvCopy(image, frame.image);
+            return frame;
+        }
+
+        void recycle(Frame frame) {
+            frame.markers = null;
+            frame.boards.clear();
+            freeFrames.add(frame);
+        }
+
+        /**
+         * Stop the stages and wait for them.
+         *
+         * @return false if interrupted before the stages are stopped.
+         */
+        boolean stop() {
+            for (StageThread thread : threads) {
+                thread.halt();
+            }
+            try {
+                for (StageThread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+    }
 }
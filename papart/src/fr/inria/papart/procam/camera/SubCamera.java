@@ -85,13 +85,9 @@ public class SubCamera extends Camera {
 
     @Override
     public PImage getPImage() {
-        // TODO: time management to avoid to send multiple times the same 
-        // frame to the graphics card. 
+        // The same frame is sent only once to the graphics card.
         this.checkCamImage();
-        if (currentImage != null) {
-            camImage.update(currentImage);
-//            return camImage;
-        }
+        updateCamImage();
         return camImage;
     }
 }
@@ -31,6 +31,8 @@ import fr.inria.papart.procam.camera.Camera;
 import fr.inria.papart.utils.WithSize;
 import java.util.ArrayList;
 import org.bytedeco.javacpp.opencv_core.CvMat;
+import static org.bytedeco.javacpp.opencv_core.CV_32FC1;
+import static org.bytedeco.javacpp.opencv_core.cvCreateMat;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import processing.core.PApplet;
 import processing.core.PImage;
@@ -72,6 +74,25 @@ public class TrackedView implements WithSize {
     private Camera camera;
     private IplImage mainImage;
 
+    // Last extractions: source image, frame and homography version.
+    private CvMat homography = null;
+    private CvMat srcPointsMat = null, dstPointsMat = null;
+    private float[] homographyPoints = new float[0];
+    private int homographyVersion = 0;
+    private IplImage iplViewSource = null;
+    private int iplViewFrame = -1;
+    private int iplViewHomography = -1;
+    private boolean iplViewValid = false;
+    private IplImage pImageViewSource = null;
+    private int pImageViewFrame = -1;
+    private int pImageViewHomography = -1;
+    private boolean pImageViewValid = false;
+    private boolean pImageViewRGB = false;
+
+    // Warp directly into the PImage, without extractedIplImage.
+    private boolean directWarp = true;
+    private boolean bilinear = true;
+
     // Public constructor for capturing the whole markerboard 
     public TrackedView(MarkerBoard board) {
         this.board = board;
@@ -137,6 +158,7 @@ public class TrackedView implements WithSize {
     public void init(int frameType) {
         extractedPImage = new PImage(imageWidthPx, imageHeightPx, frameType);
         initiateImageCoordinates();
+        invalidateView();
     }
 
     private void initiateImageCoordinates() {
@@ -169,11 +191,27 @@ public class TrackedView implements WithSize {
         this.mainImage = img;
         this.camera = camera;
 
-        CvMat homography = computeHomography();
-
+        updateHomography();
+        int frame = camera.getFrameNumber();
         boolean useRGB = camera.getPixelFormat() == Camera.PixelFormat.RGB;
-        // Convert to the good type... 
-        ImageUtils.remapImage(homography, img, extractedIplImage, extractedPImage, useRGB);
+        if (pImageViewValid && pImageViewRGB == useRGB
+                && img == pImageViewSource && frame == pImageViewFrame
+                && homographyVersion == pImageViewHomography) {
+            return extractedPImage;
+        }
+
+        if (directWarp && ImageUtils.isDirectRemapSupported(img)) {
+            ImageUtils.remapImage(homography, img, extractedPImage, useRGB, bilinear);
+        } else {
+            updateView(img, frame, true);
+            // Convert to the good type... 
+            ImageUtils.IplImageToPImage(extractedIplImage, useRGB, extractedPImage);
+        }
+        pImageViewSource = img;
+        pImageViewFrame = frame;
+        pImageViewHomography = homographyVersion;
+        pImageViewRGB = useRGB;
+        pImageViewValid = true;
         return extractedPImage;
     }
 
@@ -188,11 +226,17 @@ public class TrackedView implements WithSize {
         this.mainImage = img;
         this.camera = camera;
 
-        CvMat homography = computeHomography();
-
+        // The content of a given image is unknown, no cache.
+        updateHomography();
         boolean useRGB = camera.getPixelFormat() == Camera.PixelFormat.RGB;
-        // Convert to the good type... 
-        ImageUtils.remapImage(homography, img, extractedIplImage, extractedPImage, useRGB);
+        if (directWarp && ImageUtils.isDirectRemapSupported(img)) {
+            ImageUtils.remapImage(homography, img, extractedPImage, useRGB, bilinear);
+        } else {
+            updateView(img, -1, false);
+            // Convert to the good type... 
+            ImageUtils.IplImageToPImage(extractedIplImage, useRGB, extractedPImage);
+        }
+        pImageViewValid = false;
         return extractedPImage;
     }
 
@@ -206,7 +250,7 @@ public class TrackedView implements WithSize {
         this.mainImage = img;
         this.camera = camera;
 
-        CvMat homography = computeHomography();
+        updateHomography();
         double[] homoMat = homography.get();
         HomographyCalibration homoCalib = new HomographyCalibration();
         homoCalib.setMatrix(new PMatrix3D(
@@ -223,6 +267,8 @@ public class TrackedView implements WithSize {
     }
 
     public IplImage getIplViewOf(Camera camera) {
+        camera = Camera.checkActingCamera(camera);
+
         IplImage img = camera.getIplImage();
         if (!isExtractionReady(img)) {
             return null;
@@ -230,20 +276,20 @@ public class TrackedView implements WithSize {
 
         this.mainImage = img;
         this.camera = camera;
-        CvMat homography = computeHomography();
-        ImageUtils.remapImageIpl(homography, camera.getIplImage(), extractedIplImage);
+        updateView(img, camera.getFrameNumber(), true);
         return extractedIplImage;
     }
 
     public IplImage getIplViewOf(Camera camera, IplImage img) {
+        camera = Camera.checkActingCamera(camera);
+
         if (!isExtractionReady(img)) {
             return null;
         }
 
         this.mainImage = img;
         this.camera = camera;
-        CvMat homography = computeHomography();
-        ImageUtils.remapImageIpl(homography, img, extractedIplImage);
+        updateView(img, -1, false);
         return extractedIplImage;
     }
 
@@ -261,20 +307,113 @@ public class TrackedView implements WithSize {
                 || (useManualConrers && cornersSet));
     }
 
-    private CvMat computeHomography() {
+    /**
+     * Warp the image in extractedIplImage, unless the same frame was already
+     * extracted with the same homography.
+     *
+     * @param img source image.
+     * @param frame frame number of the source.
+     * @param useCache false when the content of img is unknown.
+     * @return true if the image was warped.
+     */
+    private boolean updateView(IplImage img, int frame, boolean useCache) {
+        updateHomography();
+        if (useCache && iplViewValid
+                && img == iplViewSource && frame == iplViewFrame
+                && homographyVersion == iplViewHomography) {
+            return false;
+        }
+        ImageUtils.remapImageIpl(homography, img, extractedIplImage);
+        iplViewSource = img;
+        iplViewFrame = frame;
+        iplViewHomography = homographyVersion;
+        iplViewValid = useCache;
+        return true;
+    }
+
+    /**
+     * Compute the corners, and the homography if they moved. The matrices are
+     * reused, homographyVersion changes with the homography.
+     */
+    private void updateHomography() {
         if (!this.useListofPairs) {
             computeCorners();
         }
 
-//        System.out.println("ComputeHomograpy with these points: ");
-//        int k = 0;
-//        for (PVector screen : screenPixelCoordinates) {
-//            PVector img = imagePixelCoordinates.get(k);
-////            System.out.println("id: " + k + " scr: " + screen + " img: " + img);
-//            k++;
-//        }
-        CvMat homography = ImageUtils.createHomography(screenPixelCoordinates, imagePixelCoordinates);
-        return homography;
+        int nbPoints = screenPixelCoordinates.size();
+        float[] points = homographyPoints;
+        boolean same = homography != null && points.length == nbPoints * 4;
+        if (!same) {
+            points = new float[nbPoints * 4];
+        }
+        for (int i = 0; i < nbPoints; i++) {
+            PVector screen = screenPixelCoordinates.get(i);
+            PVector image = imagePixelCoordinates.get(i);
+            same = same
+                    && points[i * 4] == screen.x
+                    && points[i * 4 + 1] == screen.y
+                    && points[i * 4 + 2] == image.x
+                    && points[i * 4 + 3] == image.y;
+            points[i * 4] = screen.x;
+            points[i * 4 + 1] = screen.y;
+            points[i * 4 + 2] = image.x;
+            points[i * 4 + 3] = image.y;
+        }
+        homographyPoints = points;
+        if (same) {
+            return;
+        }
+
+        if (srcPointsMat == null || srcPointsMat.cols() != nbPoints) {
+            srcPointsMat = cvCreateMat(2, nbPoints, CV_32FC1);
+            dstPointsMat = cvCreateMat(2, nbPoints, CV_32FC1);
+        }
+        if (homography == null) {
+            homography = cvCreateMat(3, 3, CV_32FC1);
+        }
+        ImageUtils.createHomography(screenPixelCoordinates, imagePixelCoordinates,
+                srcPointsMat, dstPointsMat, homography);
+        homographyVersion++;
+    }
+
+    /**
+     * Force the next extraction, for example after a change of the content of
+     * the camera image without a new frame.
+     */
+    public void invalidateView() {
+        iplViewValid = false;
+        pImageViewValid = false;
+    }
+
+    /**
+     * Warp the camera image directly into the PImage returned by getViewOf,
+     * only on the part where the camera image is visible. When disabled,
+     * OpenCV warps into an IplImage which is then converted.
+     *
+     * @param directWarp true by default.
+     */
+    public void setDirectWarp(boolean directWarp) {
+        this.directWarp = directWarp;
+        invalidateView();
+    }
+
+    public boolean isDirectWarp() {
+        return directWarp;
+    }
+
+    /**
+     * Interpolation of the direct warp.
+     *
+     * @param bilinear true for bilinear (default), false for nearest
+     * neighbour.
+     */
+    public void setBilinearInterpolation(boolean bilinear) {
+        this.bilinear = bilinear;
+        invalidateView();
+    }
+
+    public boolean isBilinearInterpolation() {
+        return bilinear;
     }
 
     private void checkMemory(IplImage memory) {
@@ -402,6 +541,10 @@ public class TrackedView implements WithSize {
         this.isYUp = up;
     }
 
+    public boolean isYUp() {
+        return isYUp;
+    }
+
     /**
      * Use either TopLeftCorner OR BottomLeftCorner. Calling one will discard
      * the other.
@@ -28,6 +28,7 @@ import fr.inria.papart.utils.DrawUtils;
 import fr.inria.papart.multitouch.TouchInput;
 import fr.inria.papart.procam.camera.Camera;
 import fr.inria.papart.procam.HasExtrinsics;
+import fr.inria.papart.procam.LensMap;
 import fr.inria.papart.procam.PaperScreen;
 import fr.inria.papart.procam.ProjectiveDeviceP;
 
@@ -65,6 +66,8 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
     protected float zNear = 20, zFar = 10000;
 
     private boolean distort = false;
+    // Used to save the lens map next to it.
+    protected String calibrationFile = null;
 
     /**
      * Warning Not used directly.
@@ -81,6 +84,7 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
         super(parent);
         this.camera = camera;
         this.hasCamera = true;
+        this.calibrationFile = camera.getCalibrationFile();
         setCalibration(camera.getProjectiveDevice());
     }
 
@@ -102,6 +106,7 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
         try {
 //            pdp = ProjectiveDeviceP.loadProjectiveDevice(calibrationYAML, 0);
             projectiveDeviceP = ProjectiveDeviceP.loadCameraDevice(parent, calibrationYAML, 0);
+            this.calibrationFile = calibrationYAML;
             setCalibration(projectiveDeviceP);
         } catch (Exception e) {
             System.out.println("ARDisplay, Error at loading internals !!" + e);
@@ -266,7 +271,9 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
 
     /**
      * This function initializes the distorsion map used by the distorsion
-     * shader. The texture is of the size of the projector resolution.
+     * shader. The texture is of the size of the projector resolution. The
+     * undistorted positions come from the LensMap of the calibration, saved
+     * with it.
      *
      * @param proj
      */
@@ -285,33 +292,32 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
         // Maximum disparity, in pixels
         float mag = 30;
 
-        parent.colorMode(PApplet.RGB, 1.0f);
+        LensMap lensMap = LensMap.load(projectiveDeviceP, LensMap.Direction.UNDISTORT, calibrationFile);
+        float[] undistX = lensMap.getMapX();
+        float[] undistY = lensMap.getMapY();
+        int mapWidth = lensMap.getWidth();
+        int mapHeight = lensMap.getHeight();
+
         int k = 0;
         for (int y = 0; y < mapImg.height; y++) {
+            // get the points without the scale
+            int y1 = Math.min((int) ((float) y / quality), mapHeight - 1);
             for (int x = 0; x < mapImg.width; x++) {
-
-                // get the points without the scale
-                int x1 = (int) ((float) x / quality);
-                int y1 = (int) ((float) y / quality);
-
-                double[] out = projectiveDevice.undistort(x1, y1);
-//                double[] out = proj.distort(x, y);
+                int x1 = Math.min((int) ((float) x / quality), mapWidth - 1);
+                int offset = x1 + y1 * mapWidth;
 
                 // get back at the rendering resolution
-                out[0] *= quality;
-                out[1] *= quality;
-
-                float r = ((float) out[0] - x) / mag + 0.5f;/// frameWidth; 
-                float g = ((float) out[1] - y) / mag + 0.5f;// / frameHeight; 
+                float r = (undistX[offset] * quality - x) / mag + 0.5f;
+                float g = (undistY[offset] * quality - y) / mag + 0.5f;
 
-                mapImg.pixels[k++] = parent.color(r, g, parent.random(1f));
+                // Blue is not read by the shader.
+                mapImg.pixels[k++] = 0xFF000000
+                        | (unitToByte(r) << 16)
+                        | (unitToByte(g) << 8);
             }
-
         }
         mapImg.updatePixels();
 
-        parent.colorMode(PApplet.RGB, 255);
-
         lensFilter.set("mapTex", mapImg);
         // name must not be texture ?
         lensFilter.set("textureGraphics", this.graphics);
@@ -320,6 +326,10 @@ public class ARDisplay extends BaseDisplay implements HasExtrinsics {
         lensFilter.set("mag", mag);
     }
 
+    private static int unitToByte(float v) {
+        return (int) (Math.max(0f, Math.min(1f, v)) * 255);
+    }
+
     public void loadProjection() {
         this.graphics.projection.set(projectionInit);
     }
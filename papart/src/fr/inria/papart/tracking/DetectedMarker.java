@@ -22,13 +22,12 @@ package fr.inria.papart.tracking;
 import fr.inria.papart.procam.ProjectiveDeviceP;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
 import org.bytedeco.javacpp.ARToolKitPlus;
 
 import static org.bytedeco.javacpp.ARToolKitPlus.*;
-import org.bytedeco.javacpp.IntPointer;
 import org.bytedeco.javacpp.opencv_core;
 import static org.bytedeco.javacpp.opencv_core.*;
-import static org.bytedeco.javacpp.opencv_imgproc.cvFindCornerSubPix;
 import org.bytedeco.javacv.Marker;
 import processing.core.PGraphics;
 import processing.core.PMatrix3D;
@@ -155,81 +154,72 @@ public class DetectedMarker implements Cloneable {
         return imageCache[id];
     }
 
+    /**
+     * Find the markers in an image. The native buffers are allocated for this
+     * call, use a MarkerDetectionContext to detect in each frame.
+     *
+     * @param tracker
+     * @param image gray image, without lens distortion.
+     * @return the markers with an id.
+     */
     public static DetectedMarker[] detect(ARToolKitPlus.TrackerMultiMarker tracker, opencv_core.IplImage image) {
+        try (MarkerDetectionContext context = new MarkerDetectionContext(tracker)) {
+            return context.detect(image);
+        }
+    }
 
-        int cameraWidth = image.width();
-        int cameraHeight = image.height();
-        // TODO: check imgWith and init width.
-
-        CvPoint2D32f corners = new CvPoint2D32f(4);
-        CvMemStorage memory = CvMemStorage.create();
-//        CvMat points = CvMat.create(1, 4, CV_32F, 2);
-        Mat points = new Mat(1, 4, CV_32F, 2);
-
-        CvSize subPixelSize = null, subPixelZeroZone = null;
-        CvTermCriteria subPixelTermCriteria = null;
-        int subPixelWindow = 11;
-
-        subPixelSize = cvSize(subPixelWindow / 2, subPixelWindow / 2);
-        subPixelZeroZone = cvSize(-1, -1);
-        subPixelTermCriteria = cvTermCriteria(CV_TERMCRIT_EPS, 100, 0.001);
+    /**
+     * Find the 3D position of the markers of a board. Only the markers of the
+     * model are looked up in the index. It uses the solvePnP function of
+     * OpenCV.
+     *
+     * @param index markers found in the image.
+     * @param markersFromSVG Model.
+     * @param camera its calibration is used.
+     * @return the position, or MarkerBoard.INVALID_LOCATION.
+     */
+    public static PMatrix3D compute3DPos(MarkerIndex index, MarkerList markersFromSVG,
+            fr.inria.papart.procam.camera.Camera camera) {
+        return compute3DPos(index, markersFromSVG, camera, null);
+    }
 
-//        tracker.setThreshold(128);
-        int n = 0;
-        IntPointer markerNum = new IntPointer(1);
-        ARToolKitPlus.ARMarkerInfo markers = new ARToolKitPlus.ARMarkerInfo(null);
-//        tracker.arDetectMarkerLite(image.imageData(), tracker.getThreshold() /* 100 */, markers, markerNum);
-        tracker.arDetectMarker(image.imageData(), tracker.getThreshold() /* 100 */, markers, markerNum);
-        DetectedMarker[] markers2 = new DetectedMarker[markerNum.get(0)];
-
-        for (int i = 0; i < markers2.length && !markers.isNull(); i++) {
-
-            markers.position(i);
-            int id = markers.id();
-            if (id < 0) {
-                // no detected ID...
-                continue;
-            }
-            int dir = markers.dir();
-            float confidence = markers.cf();
-            float[] vertex = new float[8];
-            markers.vertex().get(vertex);
-
-            int w = subPixelWindow / 2 + 1;
-            if (vertex[0] - w < 0 || vertex[0] + w >= cameraWidth || vertex[1] - w < 0 || vertex[1] + w >= cameraHeight
-                    || vertex[2] - w < 0 || vertex[2] + w >= cameraWidth || vertex[3] - w < 0 || vertex[3] + w >= cameraHeight
-                    || vertex[4] - w < 0 || vertex[4] + w >= cameraWidth || vertex[5] - w < 0 || vertex[5] + w >= cameraHeight
-                    || vertex[6] - w < 0 || vertex[6] + w >= cameraWidth || vertex[7] - w < 0 || vertex[7] + w >= cameraHeight) {
-                // too tight for cvFindCornerSubPix...
-
-                continue;
-            }
+    /**
+     * Find the 3D position of the markers of a board, solvePnP starts from
+     * a guess of the position.
+     *
+     * @param index markers found in the image.
+     * @param markersFromSVG Model.
+     * @param camera its calibration is used.
+     * @param guess previous or predicted position, can be null.
+     * @return the position, or MarkerBoard.INVALID_LOCATION.
+     */
+    public static PMatrix3D compute3DPos(MarkerIndex index, MarkerList markersFromSVG,
+            fr.inria.papart.procam.camera.Camera camera, PMatrix3D guess) {
+        ArrayList<PVector> objectPoints = new ArrayList<PVector>();
+        ArrayList<PVector> imagePoints = new ArrayList<PVector>();
 
-            // TODO: major bug here -> free error...
-//            opencv_core.CvMat points = opencv_core.CvMat.create(1, 4, CV_32F, 2);
-//            points.getFloatBuffer().put(vertex);
-//            opencv_core.CvBox2D box = cvMinAreaRect2(points, memory);
-//
-//            float bw = box.size().width();
-//            float bh = box.size().height();
-//            cvClearMemStorage(memory);
-//            if (bw <= 0 || bh <= 0 || bw / bh < 0.1 || bw / bh > 10) {
-//                // marker is too "flat" to have been IDed correctly...
-//                continue;
-//            }
-            for (int j = 0; j < 4; j++) {
-                corners.position(j).put(vertex[2 * j], vertex[2 * j + 1]);
+        for (Map.Entry<Integer, MarkerSvg> entry : markersFromSVG.entrySet()) {
+            int slot = index.firstSlot(entry.getKey());
+            for (; slot != -1; slot = index.nextSlot(slot)) {
+                DetectedMarker detected = index.get(slot);
+                if (detected.confidence < 1.0) {
+                    continue;
+                }
+                PVector[] object = entry.getValue().getCorners();
+                PVector[] image = detected.getCorners();
+                for (int i = 0; i < 4; i++) {
+                    objectPoints.add(object[i]);
+                    imagePoints.add(image[i]);
+                }
             }
-
-            cvFindCornerSubPix(image, corners.position(0), 4, subPixelSize, subPixelZeroZone, subPixelTermCriteria);
-            double[] d = {corners.position((4 - dir) % 4).x(), corners.position((4 - dir) % 4).y(),
-                corners.position((5 - dir) % 4).x(), corners.position((5 - dir) % 4).y(),
-                corners.position((6 - dir) % 4).x(), corners.position((6 - dir) % 4).y(),
-                corners.position((7 - dir) % 4).x(), corners.position((7 - dir) % 4).y()};
-
-            markers2[n++] = new DetectedMarker(id, d, confidence);
         }
-        return Arrays.copyOf(markers2, n);
+        if (objectPoints.isEmpty()) {
+            return MarkerBoard.INVALID_LOCATION;
+        }
+
+        PVector[] objectArray = objectPoints.toArray(new PVector[objectPoints.size()]);
+        PVector[] imageArray = imagePoints.toArray(new PVector[imagePoints.size()]);
+        return camera.getProjectiveDevice().estimateOrientation(objectArray, imageArray, guess);
     }
 
     /**
@@ -21,7 +21,6 @@ package fr.inria.papart.tracking;
 
 import fr.inria.papart.procam.camera.Camera;
 import fr.inria.papart.procam.display.ARDisplay;
-import fr.inria.papart.multitouch.OneEuroFilter;
 import fr.inria.papart.procam.camera.CameraRGBIRDepth;
 import fr.inria.papart.tracking.ObjectFinder;
 import org.bytedeco.javacpp.ARToolKitPlus;
@@ -49,7 +48,7 @@ public abstract class MarkerBoard {
     protected ArrayList<Float> minDistanceDrawingMode;
     protected ArrayList<PMatrix3D> transfos = new ArrayList<PMatrix3D>();
     protected ArrayList trackers;
-    protected ArrayList<OneEuroFilter[]> filters;
+    protected ArrayList<PoseTracker> poseTrackers;
     protected ArrayList<PVector> lastPos;
     protected ArrayList<Float> lastDistance;
     protected ArrayList<Integer> nextTimeEvent;
@@ -82,7 +81,7 @@ public abstract class MarkerBoard {
         this.width = width;
         this.height = height;
         cameras = new ArrayList<Camera>();
-        filters = new ArrayList<OneEuroFilter[]>();
+        poseTrackers = new ArrayList<PoseTracker>();
         drawingMode = new ArrayList<Boolean>();
         minDistanceDrawingMode = new ArrayList<Float>();
         lastPos = new ArrayList<PVector>();
@@ -93,7 +92,14 @@ public abstract class MarkerBoard {
 
     protected abstract void addTrackerImpl(Camera camera);
 
-    public void addTracker(PApplet applet, Camera camera) {
+    /**
+     * Register a camera. Synchronized like updateLocation: the per camera
+     * lists can be read by another camera thread.
+     *
+     * @param applet
+     * @param camera
+     */
+    public synchronized void addTracker(PApplet applet, Camera camera) {
 //    public void addTracker(PApplet applet, Camera camera, ARToolKitPlus.TrackerMultiMarker tracker, float[] transfo) {
         this.applet = applet;
 
@@ -104,8 +110,7 @@ public abstract class MarkerBoard {
         this.minDistanceDrawingMode.add(2f);
         this.nextTimeEvent.add(0);
         this.updateStatus.add(NORMAL);
-        OneEuroFilter[] filter = null;
-        this.filters.add(filter);
+        this.poseTrackers.add(new PoseTracker());
 
         addTrackerImpl(camera);
     }
@@ -114,15 +119,30 @@ public abstract class MarkerBoard {
         return cameras.indexOf(Camera.checkActingCamera(camera));
     }
 
+    /**
+     * Filter the location: the translation and the rotation of the board are
+     * filtered with One Euro filters.
+     *
+     * @param camera
+     * @param freq expected number of location updates per second.
+     * @param minCutOff
+     */
     public void setFiltering(Camera camera, double freq, double minCutOff) {
-        int id = getId(camera);
-        OneEuroFilter[] filter = createFilter(freq, minCutOff);
-        filters.set(id, filter);
+        getPoseTracker(camera).setFiltering(freq, minCutOff);
     }
 
     public void removeFiltering(Camera camera) {
-        int id = getId(camera);
-        filters.set(id, null);
+        getPoseTracker(camera).removeFiltering();
+    }
+
+    /**
+     * Filtering and prediction of the location seen by a camera.
+     *
+     * @param camera
+     * @return the pose tracker of the board for this camera.
+     */
+    public PoseTracker getPoseTracker(Camera camera) {
+        return poseTrackers.get(getId(camera));
     }
 
     public void setDrawingMode(Camera camera, boolean dm) {
@@ -140,6 +160,7 @@ public abstract class MarkerBoard {
         int id = getId(camera);
         PMatrix3D transfo = (PMatrix3D) transfos.get(id);
         transfo.set(location);
+        poseTrackers.get(id).reset();
     }
 
     protected int subscribersAmount = 0;
@@ -161,21 +182,42 @@ public abstract class MarkerBoard {
 //        System.out.println("DEBUG: UNsubscription: " + subscribersAmount);
     }
 
-    public OneEuroFilter[] NO_FILTERS = new OneEuroFilter[0];
+    /**
+     * Set the location from a pose computed by the tracking, after the
+     * filtering.
+     *
+     * @param id camera id.
+     * @param pose pose given by the detection.
+     */
+    protected void updatePose(int id, PMatrix3D pose) {
+        PoseTracker poseTracker = poseTrackers.get(id);
+        poseTracker.update(pose, applet.millis());
+        PMatrix3D filtered = new PMatrix3D();
+        poseTracker.getPose(filtered);
+        toBoardOrigin(filtered);
+        transfos.get(id).set(filtered);
+    }
 
-    private OneEuroFilter[] createFilter(double freq, double minCutOff) {
-        OneEuroFilter[] f = new OneEuroFilter[12];
-        try {
-            for (int i = 0; i < 12; i++) {
-                f[i] = new OneEuroFilter(freq);
-                f[i].setFrequency(freq);
-                f[i].setMinCutoff(minCutOff);
-            }
-        } catch (Exception e) {
-            System.out.println("Filter init error" + e);
+    /**
+     * Pose of the detection expected now, from the previous ones.
+     *
+     * @param id camera id.
+     * @return the pose, or null without recent pose.
+     */
+    protected PMatrix3D getPoseGuess(int id) {
+        PMatrix3D guess = new PMatrix3D();
+        if (poseTrackers.get(id).guess(applet.millis(), guess)) {
+            return guess;
         }
+        return null;
+    }
 
-        return f;
+    /**
+     * Change a pose of the detection to the origin of the board.
+     *
+     * @param pose modified.
+     */
+    protected void toBoardOrigin(PMatrix3D pose) {
     }
 
 //    public MultiTracker getTracker() {
@@ -213,6 +255,26 @@ public abstract class MarkerBoard {
         return lastDistance.get(id);
     }
 
+    /**
+     * Area of the markers found by the marker detection of the camera
+     * thread, to search them only around the predicted location of the
+     * board.
+     *
+     * @return corners of the area in the board frame, or null when the
+     * board does not use this detection.
+     */
+    public PVector[] getMarkerArea() {
+        return null;
+    }
+
+    /**
+     * @param markers markers found by the detection of the camera thread.
+     * @return true if markers of this board are found.
+     */
+    public boolean isDetectedIn(MarkerIndex markers) {
+        return false;
+    }
+
     public boolean isTrackedBy(Camera camera) {
         if(this == MarkerBoardInvalid.board){
 //            System.out.println("ERROR: cannot get the position of an invalid board.");
@@ -264,12 +326,46 @@ public abstract class MarkerBoard {
 
     }
 
+    /**
+     * Update the position of the board for a camera.
+     *
+     * @param globalTracking detection shared by the boards of the camera: the
+     * MarkerIndex of the frame for the SVG boards (an array of DetectedMarker
+     * is also accepted), null for the others.
+     */
     protected abstract void updatePositionImpl(int id, int currentTime, int endTime, int mode, Camera camera, IplImage img, Object globalTracking);
 
     public PMatrix3D getTransfoMat(Camera camera) {
         return transfos.get(getId(camera));
     }
 
+    /**
+     * Location extrapolated to now, from the velocity of the board. To get a
+     * location for each rendered frame when the tracking runs slower. The
+     * extrapolation is at most the maximum prediction time of the tracker.
+     *
+     * @param camera
+     * @return a copy of the predicted location.
+     */
+    public PMatrix3D getPredictedTransfoMat(Camera camera) {
+        return getPredictedTransfoMat(camera, applet.millis());
+    }
+
+    /**
+     * @param camera
+     * @param time in ms (PApplet.millis()).
+     * @return a copy of the location predicted at this time.
+     */
+    public PMatrix3D getPredictedTransfoMat(Camera camera, int time) {
+        int id = getId(camera);
+        PMatrix3D predicted = new PMatrix3D();
+        if (!poseTrackers.get(id).predict(time, predicted)) {
+            return transfos.get(id).get();
+        }
+        toBoardOrigin(predicted);
+        return predicted;
+    }
+
     public PMatrix3D getTransfoRelativeTo(Camera camera, MarkerBoard board2) {
 
         PMatrix3D tr1 = getTransfoMat(camera);
@@ -198,59 +198,33 @@ public class MarkerBoardARToolKitPlus extends MarkerBoard {
     }
 
     private void update(ARToolKitPlus.ARMultiMarkerInfoT multiMarkerConfig, int id) {
-        fr.inria.papart.multitouch.OneEuroFilter filter[] = filters.get(id);
-
         PMatrix3D inputMatrix = new PMatrix3D();
+        inputMatrix.m00 = multiMarkerConfig.trans().get(0);
+        inputMatrix.m01 = multiMarkerConfig.trans().get(1);
+        inputMatrix.m02 = multiMarkerConfig.trans().get(2);
+        inputMatrix.m03 = multiMarkerConfig.trans().get(3);
+
+        inputMatrix.m10 = multiMarkerConfig.trans().get(4);
+        inputMatrix.m11 = multiMarkerConfig.trans().get(5);
+        inputMatrix.m12 = multiMarkerConfig.trans().get(6);
+        inputMatrix.m13 = multiMarkerConfig.trans().get(7);
+
+        inputMatrix.m20 = multiMarkerConfig.trans().get(8);
+        inputMatrix.m21 = multiMarkerConfig.trans().get(9);
+        inputMatrix.m22 = multiMarkerConfig.trans().get(10);
+        inputMatrix.m23 = multiMarkerConfig.trans().get(11);
+
+        updatePose(id, inputMatrix);
+    }
 
-        if (filter == null) {
-            inputMatrix.m00 = multiMarkerConfig.trans().get(0);
-            inputMatrix.m01 = multiMarkerConfig.trans().get(1);
-            inputMatrix.m02 = multiMarkerConfig.trans().get(2);
-            inputMatrix.m03 = multiMarkerConfig.trans().get(3);
-
-            inputMatrix.m10 = multiMarkerConfig.trans().get(4);
-            inputMatrix.m11 = multiMarkerConfig.trans().get(5);
-            inputMatrix.m12 = multiMarkerConfig.trans().get(6);
-            inputMatrix.m13 = multiMarkerConfig.trans().get(7);
-
-            inputMatrix.m20 = multiMarkerConfig.trans().get(8);
-            inputMatrix.m21 = multiMarkerConfig.trans().get(9);
-            inputMatrix.m22 = multiMarkerConfig.trans().get(10);
-            inputMatrix.m23 = multiMarkerConfig.trans().get(11);
-        } else {
-            try {
-                inputMatrix.m00 = (float) filter[0].filter(multiMarkerConfig.trans().get(0));
-                inputMatrix.m01 = (float) filter[1].filter(multiMarkerConfig.trans().get(1));
-                inputMatrix.m02 = (float) filter[2].filter(multiMarkerConfig.trans().get(2));
-                inputMatrix.m03 = (float) filter[3].filter(multiMarkerConfig.trans().get(3));
-
-                inputMatrix.m10 = (float) filter[4].filter(multiMarkerConfig.trans().get(4));
-                inputMatrix.m11 = (float) filter[5].filter(multiMarkerConfig.trans().get(5));
-                inputMatrix.m12 = (float) filter[6].filter(multiMarkerConfig.trans().get(6));
-                inputMatrix.m13 = (float) filter[7].filter(multiMarkerConfig.trans().get(7));
-
-                inputMatrix.m20 = (float) filter[8].filter(multiMarkerConfig.trans().get(8));
-                inputMatrix.m21 = (float) filter[9].filter(multiMarkerConfig.trans().get(9));
-                inputMatrix.m22 = (float) filter[10].filter(multiMarkerConfig.trans().get(10));
-                inputMatrix.m23 = (float) filter[11].filter(multiMarkerConfig.trans().get(11));
-            } catch (Exception e) {
-                System.out.println("Filtering error " + e);
-            }
-        }
-
+    @Override
+    protected void toBoardOrigin(PMatrix3D pose) {
 //        inputMatrix.translate(0, height / 2, 0);
 //        inputMatrix.scale(1, -1, 1);
 //        inputMatrix.translate(0, -height / 2, 0);
         // Invert the scales so that it fits Inkscape's view. 
-        
-        inputMatrix.scale(1, -1, 1);
-        inputMatrix.translate(0, -markerBoardSize.y, 0);
-
-        PMatrix3D transfo = transfos.get(id);
-        transfo.set(inputMatrix);
-//    Z negation ?
-//        tmp.scale(1, 1, -1);
-//        transfo[11] = -transfo[11];
+        pose.scale(1, -1, 1);
+        pose.translate(0, -markerBoardSize.y, 0);
     }
 
 }
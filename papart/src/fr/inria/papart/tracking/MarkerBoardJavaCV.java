@@ -72,13 +72,15 @@ public class MarkerBoardJavaCV extends MarkerBoard {
     protected void addTrackerImpl(Camera camera) {
 
         ObjectFinder finder = new ObjectFinder(imgToFind);
+        // Detection only when the tracked features are lost.
+        finder.getSettings().setUseTracking(true);
 //        finder.getSettings().setUseFLANN(true);
 //        finder.getSettings().setMatchesMin(6);
         this.trackers.add(finder);
         this.transfos.add(new PMatrix3D());
     }
 
-    private PMatrix3D compute3DPos(double[] corners, Camera camera) {
+    private PMatrix3D compute3DPos(double[] corners, Camera camera, PMatrix3D guess) {
 
         //  double[] srcCorners = {0, 0,  w, 0,  w, h,  0, h};
         botLeft.set((float) corners[0], (float) corners[1]);
@@ -108,7 +110,7 @@ public class MarkerBoardJavaCV extends MarkerBoard {
 //      objectPoints[2] = new PVector(width, height, 0);
 //      objectPoints[3] = new PVector(0, height, 0);
         ProjectiveDeviceP pdp = camera.getProjectiveDevice();
-        return pdp.estimateOrientation(objectPoints, imagePoints);
+        return pdp.estimateOrientation(objectPoints, imagePoints, guess);
 
     }
 
@@ -123,7 +125,6 @@ public class MarkerBoardJavaCV extends MarkerBoard {
         }
 
         try {
-            System.out.println("Subscribers: " + this.subscribersAmount);
             ObjectFinder finder = (ObjectFinder) trackers.get(id);
 
             // TODO: the  finder.find should be done ONCE per image. Not once per board.
@@ -138,7 +139,7 @@ public class MarkerBoardJavaCV extends MarkerBoard {
                 return;
             }
 
-            PMatrix3D newPos = compute3DPos(corners, camera);
+            PMatrix3D newPos = compute3DPos(corners, camera, getPoseGuess(id));
 
             if (newPos == null) {
                 return;
@@ -190,34 +191,7 @@ public class MarkerBoardJavaCV extends MarkerBoard {
     }
 
     private void update(PMatrix3D newPos, int id) {
-
-        PMatrix3D transfo = (PMatrix3D) transfos.get(id);
-        fr.inria.papart.multitouch.OneEuroFilter filter[] = filters.get(id);
-
-        if (filter == null) {
-            transfo.set(newPos);
-        } else {
-            try {
-                // Rotation
-                transfo.m00 = (float) filter[0].filter(newPos.m00);
-                transfo.m01 = (float) filter[1].filter(newPos.m01);
-                transfo.m02 = (float) filter[2].filter(newPos.m02);
-                transfo.m10 = (float) filter[3].filter(newPos.m10);
-                transfo.m11 = (float) filter[4].filter(newPos.m11);
-                transfo.m12 = (float) filter[5].filter(newPos.m12);
-                transfo.m20 = (float) filter[6].filter(newPos.m20);
-                transfo.m21 = (float) filter[7].filter(newPos.m21);
-                transfo.m22 = (float) filter[8].filter(newPos.m22);
-
-                // Translation
-                transfo.m03 = (float) filter[9].filter(newPos.m03);
-                transfo.m13 = (float) filter[10].filter(newPos.m13);
-                transfo.m23 = (float) filter[11].filter(newPos.m23);
-
-            } catch (Exception e) {
-                System.out.println("Filtering error " + e);
-            }
-        }
+        updatePose(id, newPos);
 //
 //        // If z negation hack required...
 //         PMatrix3D tmp = new PMatrix3D(transfo[0], transfo[1], transfo[2], transfo[3],
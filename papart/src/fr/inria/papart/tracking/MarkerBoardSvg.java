@@ -38,6 +38,7 @@ import processing.data.XML;
 public class MarkerBoardSvg extends MarkerBoard {
 
     private  MarkerList markersFromSVG;
+    private PVector[] markerArea = null;
 
     public MarkerBoardSvg(String fileName, float width, float height) {
         super(fileName, width, height);
@@ -76,8 +77,8 @@ public class MarkerBoardSvg extends MarkerBoard {
             opencv_core.IplImage img,
             Object globalTracking) {
 
-        DetectedMarker[] markers = (DetectedMarker[]) globalTracking;
-        PMatrix3D newPos = DetectedMarker.compute3DPos(markers, markersFromSVG, camera);
+        MarkerIndex markers = MarkerIndex.of(globalTracking);
+        PMatrix3D newPos = DetectedMarker.compute3DPos(markers, markersFromSVG, camera, getPoseGuess(id));
 
         if (newPos == INVALID_LOCATION) {
             return;
@@ -122,39 +123,58 @@ public class MarkerBoardSvg extends MarkerBoard {
     }
 
     private void update(PMatrix3D newPos, int id) {
-        PMatrix3D transfo = (PMatrix3D) transfos.get(id);
-        fr.inria.papart.multitouch.OneEuroFilter filter[] = filters.get(id);
+        updatePose(id, newPos);
+    }
 
-        if (filter == null) {
-            transfo.set(newPos);
-        } else {
-            try {
-                // Rotation
-                transfo.m00 = (float) filter[0].filter(newPos.m00);
-                transfo.m01 = (float) filter[1].filter(newPos.m01);
-                transfo.m02 = (float) filter[2].filter(newPos.m02);
-                transfo.m10 = (float) filter[3].filter(newPos.m10);
-                transfo.m11 = (float) filter[4].filter(newPos.m11);
-                transfo.m12 = (float) filter[5].filter(newPos.m12);
-                transfo.m20 = (float) filter[6].filter(newPos.m20);
-                transfo.m21 = (float) filter[7].filter(newPos.m21);
-                transfo.m22 = (float) filter[8].filter(newPos.m22);
-
-                // Translation
-                transfo.m03 = (float) filter[9].filter(newPos.m03);
-                transfo.m13 = (float) filter[10].filter(newPos.m13);
-                transfo.m23 = (float) filter[11].filter(newPos.m23);
-            } catch (Exception e) {
-                System.out.println("Filtering error " + e);
+    /**
+     * Bounding box of the markers of the sheet.
+     */
+    @Override
+    public PVector[] getMarkerArea() {
+        if (markerArea != null || markersFromSVG == null || markersFromSVG.isEmpty()) {
+            return markerArea;
+        }
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (MarkerSvg marker : markersFromSVG.values()) {
+            for (PVector corner : marker.getCorners()) {
+                minX = Math.min(minX, corner.x);
+                minY = Math.min(minY, corner.y);
+                maxX = Math.max(maxX, corner.x);
+                maxY = Math.max(maxY, corner.y);
             }
         }
+        // Same flip as toBoardOrigin.
+        float pageHeight = markersFromSVG.getSheetHeight();
+        markerArea = new PVector[]{
+            new PVector(minX, pageHeight - minY),
+            new PVector(maxX, pageHeight - minY),
+            new PVector(maxX, pageHeight - maxY),
+            new PVector(minX, pageHeight - maxY)};
+        return markerArea;
+    }
 
+    @Override
+    public boolean isDetectedIn(MarkerIndex markers) {
+        if (markersFromSVG == null) {
+            return false;
+        }
+        for (Integer id : markersFromSVG.keySet()) {
+            if (markers.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void toBoardOrigin(PMatrix3D pose) {
 //        float pageHeight = this.height;
         float pageHeight = markersFromSVG.getSheetHeight();
 
         // Invert the scales so that it fits Inkscape's view. 
-        transfo.scale(1, -1, 1);
-        transfo.translate(0, -pageHeight, 0);
+        pose.scale(1, -1, 1);
+        pose.translate(0, -pageHeight, 0);
     }
 
 }
@@ -0,0 +1,179 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import java.util.Arrays;
+import org.bytedeco.javacpp.ARToolKitPlus;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.opencv_core.CvPoint2D32f;
+import org.bytedeco.javacpp.opencv_core.CvSize;
+import org.bytedeco.javacpp.opencv_core.CvTermCriteria;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+
+import static org.bytedeco.javacpp.opencv_core.*;
+import static org.bytedeco.javacpp.opencv_imgproc.cvFindCornerSubPix;
+
+/**
+ * ARToolKitPlus marker detection with its native buffers, allocated once and
+ * reused for each image. It is used by one thread at a time, and released
+ * with close() when the tracking stops.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class MarkerDetectionContext implements AutoCloseable {
+
+    private static final int SUB_PIXEL_WINDOW = 11;
+
+    private ARToolKitPlus.TrackerMultiMarker tracker;
+    private final boolean ownTracker;
+
+    private final CvPoint2D32f corners = new CvPoint2D32f(4);
+    private final IntPointer markerNum = new IntPointer(1);
+    private final ARToolKitPlus.ARMarkerInfo markers = new ARToolKitPlus.ARMarkerInfo(null);
+    private final CvSize subPixelSize = cvSize(SUB_PIXEL_WINDOW / 2, SUB_PIXEL_WINDOW / 2);
+    private final CvSize subPixelZeroZone = cvSize(-1, -1);
+    private final CvTermCriteria subPixelTermCriteria = cvTermCriteria(CV_TERMCRIT_EPS, 100, 0.001);
+
+    private final float[] vertex = new float[8];
+
+    /**
+     * Detection with a new tracker, released by close().
+     *
+     * @param width width of the images.
+     * @param height height of the images.
+     */
+    public MarkerDetectionContext(int width, int height) {
+        this.tracker = DetectedMarker.createDetector(width, height);
+        this.ownTracker = true;
+    }
+
+    /**
+     * Detection with an existing tracker, it is not released by close().
+     *
+     * @param tracker
+     */
+    public MarkerDetectionContext(ARToolKitPlus.TrackerMultiMarker tracker) {
+        this.tracker = tracker;
+        this.ownTracker = false;
+    }
+
+    public ARToolKitPlus.TrackerMultiMarker getTracker() {
+        return tracker;
+    }
+
+    public boolean isClosed() {
+        return tracker == null;
+    }
+
+    /**
+     * Find the markers in an image, the corners are refined to sub-pixel
+     * precision.
+     *
+     * @param image gray image, without lens distortion.
+     * @return the markers with an id.
+     */
+    public DetectedMarker[] detect(IplImage image) {
+        return detect(image, 0, 0);
+    }
+
+    /**
+     * Find the markers in a part of a larger image.
+     *
+     * @param image gray image, copy of a region of the larger image.
+     * @param offsetX position of the region in the larger image.
+     * @param offsetY
+     * @return the markers with an id, with the coordinates of the larger
+     * image.
+     */
+    public DetectedMarker[] detect(IplImage image, int offsetX, int offsetY) {
+        if (isClosed()) {
+            throw new IllegalStateException("MarkerDetectionContext: detection after close().");
+        }
+        int cameraWidth = image.width();
+        int cameraHeight = image.height();
+
+        markers.position(0);
+        tracker.arDetectMarker(image.imageData(), tracker.getThreshold(), markers, markerNum);
+        int nbMarkers = markerNum.get(0);
+        DetectedMarker[] found = new DetectedMarker[nbMarkers];
+
+        int n = 0;
+        int w = SUB_PIXEL_WINDOW / 2 + 1;
+        for (int i = 0; i < nbMarkers && !markers.isNull(); i++) {
+            markers.position(i);
+            int id = markers.id();
+            if (id < 0) {
+                // no detected ID...
+                continue;
+            }
+            int dir = markers.dir();
+            float confidence = markers.cf();
+            markers.vertex().get(vertex);
+
+            boolean tooClose = false;
+            for (int j = 0; j < 8; j += 2) {
+                tooClose |= vertex[j] - w < 0 || vertex[j] + w >= cameraWidth
+                        || vertex[j + 1] - w < 0 || vertex[j + 1] + w >= cameraHeight;
+            }
+            if (tooClose) {
+                // too tight for cvFindCornerSubPix...
+                continue;
+            }
+
+            for (int j = 0; j < 4; j++) {
+                corners.position(j).put(vertex[2 * j], vertex[2 * j + 1]);
+            }
+            cvFindCornerSubPix(image, corners.position(0), 4, subPixelSize, subPixelZeroZone, subPixelTermCriteria);
+
+            double[] d = new double[8];
+            for (int j = 0; j < 4; j++) {
+                corners.position((4 + j - dir) % 4);
+                d[2 * j] = corners.x() + offsetX;
+                d[2 * j + 1] = corners.y() + offsetY;
+            }
+            found[n++] = new DetectedMarker(id, d, confidence);
+        }
+        corners.position(0);
+        markers.position(0);
+
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Release the native buffers, and the tracker if it was created by this
+     * context.
+     */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        corners.deallocate();
+        markerNum.deallocate();
+        subPixelSize.deallocate();
+        subPixelZeroZone.deallocate();
+        subPixelTermCriteria.deallocate();
+        // markers points to the tracker memory.
+        markers.setNull();
+        if (ownTracker) {
+            tracker.deallocate();
+        }
+        tracker = null;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Markers detected in a frame, indexed by id. It is built once per frame and
+ * shared by the boards: each board looks up its own markers instead of going
+ * through all the detected markers. It is not modified after its creation.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class MarkerIndex {
+
+    // BCH marker ids, see DetectedMarker.getImage().
+    public static final int MAX_ID = 4096;
+
+    private static final int NO_MARKER = -1;
+
+    private final DetectedMarker[] markers;
+    // First slot of each id, and next slot with the same id.
+    private final int[] firstSlot;
+    private final int[] nextSlot;
+
+    /**
+     * @param markers markers of a frame, not copied.
+     */
+    public MarkerIndex(DetectedMarker[] markers) {
+        this.markers = markers == null ? new DetectedMarker[0] : markers;
+        this.firstSlot = new int[MAX_ID];
+        this.nextSlot = new int[this.markers.length];
+        Arrays.fill(firstSlot, NO_MARKER);
+
+        // Backwards, so that the slots of an id are in the detection order.
+        for (int slot = this.markers.length - 1; slot >= 0; slot--) {
+            int id = this.markers[slot].id;
+            if (id < 0 || id >= MAX_ID) {
+                nextSlot[slot] = NO_MARKER;
+                continue;
+            }
+            nextSlot[slot] = firstSlot[id];
+            firstSlot[id] = slot;
+        }
+    }
+
+    /**
+     * Get the index of the markers given to a board.
+     *
+     * @param globalTracking a MarkerIndex or an array of DetectedMarker.
+     * @return the index, or an empty index.
+     */
+    public static MarkerIndex of(Object globalTracking) {
+        if (globalTracking instanceof MarkerIndex) {
+            return (MarkerIndex) globalTracking;
+        }
+        return new MarkerIndex((DetectedMarker[]) globalTracking);
+    }
+
+    public DetectedMarker[] getMarkers() {
+        return markers;
+    }
+
+    /**
+     * @param id marker id.
+     * @return slot of the first detection of this id, or -1.
+     */
+    public int firstSlot(int id) {
+        if (id < 0 || id >= MAX_ID) {
+            return NO_MARKER;
+        }
+        return firstSlot[id];
+    }
+
+    /**
+     * @param slot slot of a detection.
+     * @return slot of the next detection of the same id, or -1.
+     */
+    public int nextSlot(int slot) {
+        return nextSlot[slot];
+    }
+
+    public DetectedMarker get(int slot) {
+        return markers[slot];
+    }
+
+    public boolean contains(int id) {
+        return firstSlot(id) != NO_MARKER;
+    }
+
+    public int size() {
+        return markers.length;
+    }
+}
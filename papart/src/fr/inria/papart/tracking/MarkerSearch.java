@@ -0,0 +1,371 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import fr.inria.papart.procam.camera.Camera;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bytedeco.javacpp.opencv_core.CvRect;
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import processing.core.PMatrix3D;
+import processing.core.PVector;
+
+import static org.bytedeco.javacpp.opencv_core.*;
+
+/**
+ * Marker detection of the camera thread. In the adaptive mode, the markers
+ * are searched only around the predicted location of the boards found in the
+ * previous images. The whole image is scanned every fullScanPeriod images,
+ * and as soon as a board is not found in its region.
+ *
+ * The regions are copied to images with a width and height multiple of
+ * ROI_STEP, each size has its own ARToolKitPlus tracker.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class MarkerSearch implements AutoCloseable {
+
+    private static final int ROI_STEP = 64;
+    private static final int MAX_ROI_SIZES = 8;
+    // In pixels, added around the predicted area of the markers.
+    private static final int MIN_PADDING = 32;
+    // Above this part of the image, the whole image is scanned.
+    private static final float MAX_ROI_COVERAGE = 0.5f;
+    // Same marker found in two regions.
+    private static final double SAME_MARKER_DISTANCE = 4;
+
+    private final int width, height;
+    private final MarkerDetectionContext fullDetection;
+    private final LinkedHashMap<Long, RegionDetection> regionDetections;
+
+    private boolean adaptive = false;
+    private int fullScanPeriod = 15;
+    private float padding = 0.25f;
+
+    // Boards found by the last detection.
+    private final HashSet<MarkerBoard> foundBoards = new HashSet<>();
+    private int imagesSinceFullScan = 0;
+    private boolean lastFullScan = true;
+
+    /**
+     * Search in a region, with a tracker of the size of the region.
+     */
+    private static class RegionDetection {
+
+        private final IplImage image;
+        private final MarkerDetectionContext detection;
+
+        RegionDetection(int width, int height) {
+            this.image = IplImage.create(width, height, IPL_DEPTH_8U, 1);
+            this.detection = new MarkerDetectionContext(width, height);
+        }
+
+        void close() {
+            detection.close();
+            cvReleaseImage(image);
+        }
+    }
+
+    /**
+     * @param width width of the images.
+     * @param height height of the images.
+     */
+    public MarkerSearch(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.fullDetection = new MarkerDetectionContext(width, height);
+        this.regionDetections = new LinkedHashMap<Long, RegionDetection>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RegionDetection> eldest) {
+                if (size() > MAX_ROI_SIZES) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Search around the predicted locations of the boards.
+     *
+     * @param adaptive
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        this.imagesSinceFullScan = fullScanPeriod;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @param period number of images between two scans of the whole image,
+     * in the adaptive mode.
+     */
+    public void setFullScanPeriod(int period) {
+        this.fullScanPeriod = Math.max(period, 1);
+    }
+
+    public int getFullScanPeriod() {
+        return fullScanPeriod;
+    }
+
+    /**
+     * @param padding margin around the predicted area of the markers, as a
+     * part of its size.
+     */
+    public void setPadding(float padding) {
+        this.padding = padding;
+    }
+
+    public float getPadding() {
+        return padding;
+    }
+
+    /**
+     * @return true if the last detection scanned the whole image.
+     */
+    public boolean isLastFullScan() {
+        return lastFullScan;
+    }
+
+    /**
+     * Find the markers of the boards in an image.
+     *
+     * @param image gray image, without lens distortion.
+     * @param boards boards of the camera, the ones using the markers of the
+     * camera are searched.
+     * @param camera camera of the locations of the boards.
+     * @return the markers with an id.
+     */
+    public DetectedMarker[] detect(IplImage image, List<MarkerBoard> boards, Camera camera) {
+        if (fullDetection.isClosed()) {
+            throw new IllegalStateException("MarkerSearch: detection after close().");
+        }
+        foundBoards.retainAll(boards);
+        imagesSinceFullScan++;
+
+        if (adaptive && imagesSinceFullScan < fullScanPeriod && !foundBoards.isEmpty()) {
+            ArrayList<int[]> regions = findRegions(boards, camera);
+            if (regions != null) {
+                DetectedMarker[] markers = detectInRegions(image, regions);
+                if (allFound(new MarkerIndex(markers))) {
+                    lastFullScan = false;
+                    return markers;
+                }
+                // A board is lost, the whole image is scanned.
+            }
+        }
+
+        DetectedMarker[] markers = fullDetection.detect(image);
+        imagesSinceFullScan = 0;
+        lastFullScan = true;
+        MarkerIndex index = new MarkerIndex(markers);
+        foundBoards.clear();
+        for (MarkerBoard board : boards) {
+            if (board.useCustomARToolkitBoard() && board.isDetectedIn(index)) {
+                foundBoards.add(board);
+            }
+        }
+        return markers;
+    }
+
+    private boolean allFound(MarkerIndex index) {
+        for (MarkerBoard board : foundBoards) {
+            if (!board.isDetectedIn(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Regions of the markers of the found boards, with a size multiple of
+     * ROI_STEP and without intersection before the rounding.
+     *
+     * @return x, y, width, height of each region, or null when the whole
+     * image has to be scanned.
+     */
+    private ArrayList<int[]> findRegions(List<MarkerBoard> boards, Camera camera) {
+        ProjectiveDeviceP pdp = camera.getProjectiveDevice();
+        ArrayList<int[]> regions = new ArrayList<>();
+        PVector inCamera = new PVector();
+
+        for (MarkerBoard board : boards) {
+            if (!foundBoards.contains(board)) {
+                continue;
+            }
+            PVector[] area = board.getMarkerArea();
+            if (area == null || !board.isTrackedBy(camera)) {
+                return null;
+            }
+            PMatrix3D pose = board.getPredictedTransfoMat(camera);
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (PVector corner : area) {
+                pose.mult(corner, inCamera);
+                if (inCamera.z <= 0) {
+                    return null;
+                }
+                PVector px = pdp.worldToPixelUnconstrained(inCamera);
+                minX = Math.min(minX, px.x);
+                minY = Math.min(minY, px.y);
+                maxX = Math.max(maxX, px.x);
+                maxY = Math.max(maxY, px.y);
+            }
+            float pad = Math.max(MIN_PADDING, padding * Math.max(maxX - minX, maxY - minY));
+            int x0 = Math.max((int) (minX - pad), 0);
+            int y0 = Math.max((int) (minY - pad), 0);
+            int x1 = Math.min((int) (maxX + pad) + 1, width);
+            int y1 = Math.min((int) (maxY + pad) + 1, height);
+            if (x0 >= x1 || y0 >= y1) {
+                // Predicted outside of the image.
+                return null;
+            }
+            regions.add(new int[]{x0, y0, x1, y1});
+        }
+
+        mergeRegions(regions);
+
+        long area = 0;
+        for (int[] r : regions) {
+            int w = Math.min(roundUp(r[2] - r[0]), width);
+            int h = Math.min(roundUp(r[3] - r[1]), height);
+            // Centered on the region, inside the image.
+            int x = Math.min(Math.max((r[0] + r[2] - w) / 2, 0), width - w);
+            int y = Math.min(Math.max((r[1] + r[3] - h) / 2, 0), height - h);
+            r[0] = x;
+            r[1] = y;
+            r[2] = w;
+            r[3] = h;
+            area += (long) w * h;
+        }
+        if (area > MAX_ROI_COVERAGE * width * height) {
+            return null;
+        }
+        return regions;
+    }
+
+    /**
+     * Replace the intersecting regions (x0, y0, x1, y1) by their union.
+     * Package-private for the tests.
+     */
+    static void mergeRegions(ArrayList<int[]> regions) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                int[] a = regions.get(i);
+                Iterator<int[]> it = regions.listIterator(i + 1);
+                while (it.hasNext()) {
+                    int[] b = it.next();
+                    if (a[0] < b[2] && b[0] < a[2] && a[1] < b[3] && b[1] < a[3]) {
+                        a[0] = Math.min(a[0], b[0]);
+                        a[1] = Math.min(a[1], b[1]);
+                        a[2] = Math.max(a[2], b[2]);
+                        a[3] = Math.max(a[3], b[3]);
+                        it.remove();
+                        merged = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int roundUp(int size) {
+        return (size + ROI_STEP - 1) / ROI_STEP * ROI_STEP;
+    }
+
+    private DetectedMarker[] detectInRegions(IplImage image, ArrayList<int[]> regions) {
+        ArrayList<DetectedMarker> markers = new ArrayList<>();
+        CvRect rect = new CvRect();
+        try {
+            for (int[] r : regions) {
+                RegionDetection region = getRegionDetection(r[2], r[3]);
+                rect.x(r[0]).y(r[1]).width(r[2]).height(r[3]);
+                cvSetImageROI(image, rect);
+                cvCopy(image, region.image);
+                cvResetImageROI(image);
+
+                // The regions can intersect after the rounding of their size.
+                for (DetectedMarker marker : region.detection.detect(region.image, r[0], r[1])) {
+                    if (!isFound(markers, marker)) {
+                        markers.add(marker);
+                    }
+                }
+            }
+        } finally {
+            rect.deallocate();
+        }
+        return markers.toArray(new DetectedMarker[markers.size()]);
+    }
+
+    private RegionDetection getRegionDetection(int w, int h) {
+        Long key = ((long) w << 32) | h;
+        RegionDetection region = regionDetections.get(key);
+        if (region == null) {
+            region = new RegionDetection(w, h);
+            regionDetections.put(key, region);
+        }
+        return region;
+    }
+
+    private static boolean isFound(ArrayList<DetectedMarker> markers, DetectedMarker marker) {
+        double[] center = marker.getCenter();
+        for (DetectedMarker m : markers) {
+            if (m.id != marker.id) {
+                continue;
+            }
+            double[] c = m.getCenter();
+            if (Math.abs(c[0] - center[0]) < SAME_MARKER_DISTANCE
+                    && Math.abs(c[1] - center[1]) < SAME_MARKER_DISTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release the trackers and their buffers.
+     */
+    @Override
+    public void close() {
+        fullDetection.close();
+        for (RegionDetection region : regionDetections.values()) {
+            region.close();
+        }
+        regionDetections.clear();
+        foundBoards.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MarkerSearch " + (adaptive
+                ? "adaptive, full scan every " + fullScanPeriod + " images, "
+                + regionDetections.size() + " region sizes"
+                : "full image");
+    }
+}
@@ -23,6 +23,7 @@ import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.bytedeco.javacpp.opencv_calib3d.*;
@@ -31,6 +32,7 @@ import static org.bytedeco.javacpp.opencv_features2d.*;
 import static org.bytedeco.javacpp.opencv_flann.*;
 import static org.bytedeco.javacpp.opencv_imgcodecs.*;
 import static org.bytedeco.javacpp.opencv_imgproc.*;
+import static org.bytedeco.javacpp.opencv_video.*;
 import org.bytedeco.javacv.BaseChildSettings;
 import org.bytedeco.javacv.CanvasFrame;
 import org.bytedeco.javacv.OpenCVFrameConverter;
@@ -105,6 +107,12 @@ public class ObjectFinder {
 //        boolean useFLANN = true;
         boolean useFLANN = false;
 
+        // Follow the inliers with the optical flow between the detections.
+        boolean useTracking = false;
+        // The object is detected again when the tracked inliers drop below
+        // this part of the inliers of the detection.
+        double trackingInlierRatio = 0.5;
+
         public IplImage getObjectImage() {
             return objectImage;
         }
@@ -144,6 +152,22 @@ public class ObjectFinder {
         public void setUseFLANN(boolean useFLANN) {
             this.useFLANN = useFLANN;
         }
+
+        public boolean isUseTracking() {
+            return useTracking;
+        }
+
+        public void setUseTracking(boolean useTracking) {
+            this.useTracking = useTracking;
+        }
+
+        public double getTrackingInlierRatio() {
+            return trackingInlierRatio;
+        }
+
+        public void setTrackingInlierRatio(double trackingInlierRatio) {
+            this.trackingInlierRatio = trackingInlierRatio;
+        }
     }
 
     Settings settings;
@@ -158,9 +182,8 @@ public class ObjectFinder {
         objectKeypoints = new KeyPointVector();
         objectDescriptors = new Mat();
         settings.detector.detectAndCompute(cvarrToMat(settings.objectImage),
-                new Mat(), objectKeypoints, objectDescriptors, false);
+                noMask, objectKeypoints, objectDescriptors, false);
 
-       
         int total = (int) objectKeypoints.size();
         if (settings.useFLANN) {
             indicesMat = new Mat(total, 2, CV_32SC1);
@@ -174,14 +197,18 @@ public class ObjectFinder {
         mask = new Mat(total, 1, CV_8UC1);
         H = new Mat(3, 3, CV_64FC1);
         ptpairs = new ArrayList<Integer>(2 * objectDescriptors.rows());
-         System.out.println("KeyPoints found: " + total + " " + objectDescriptors.rows());
+
+        trackedObjectPoints = new Mat(total, 1, CV_32FC2);
+        trackedImagePoints = new Mat(total, 1, CV_32FC2);
+        trackedPoints = 0;
         logger.info(total + " object descriptors");
     }
 
     static final Logger logger = Logger.getLogger(ObjectFinder.class.getName());
 
-    KeyPointVector objectKeypoints = null, imageKeypoints = null;
-    Mat objectDescriptors = null, imageDescriptors = null;
+    KeyPointVector objectKeypoints = null, imageKeypoints = new KeyPointVector();
+    Mat objectDescriptors = null, imageDescriptors = new Mat();
+    final Mat noMask = new Mat();
     Mat indicesMat, distsMat;
     Index flannIndex = null;
     IndexParams indexParams = null;
@@ -192,14 +219,53 @@ public class ObjectFinder {
     CvRect roi = null;
     CvRect defaultRoi = null;
 
+    // Tracking of the inliers from the previous image.
+    Mat previousGray = new Mat(), gray = new Mat();
+    Mat trackedObjectPoints = null, trackedImagePoints = null;
+    final Mat nextPoints = new Mat(), status = new Mat(), err = new Mat();
+    final Size flowWindow = new Size(21, 21);
+    final TermCriteria flowCriteria = new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, 30, 0.01);
+    int trackedPoints = 0;
+    int detectionInliers = 0;
+
+    // Metrics of the last find().
+    long findTime = 0;
+    int inliers = 0;
+    long detectionCount = 0, trackingCount = 0;
+
+    /**
+     * Find the object in an image. With the tracking setting, the inliers of
+     * the previous image are followed, the detection runs again when too many
+     * of them are lost.
+     *
+     * @param image
+     * @return the corners of the object in the image, or null.
+     */
     public double[] find(IplImage image) {
         if (objectDescriptors.rows() < settings.getMatchesMin()) {
-            System.out.println("Object descriptor problem " + objectDescriptors.rows());
+            logger.warning("Object descriptor problem " + objectDescriptors.rows());
             return null;
         }
-        imageKeypoints = new KeyPointVector();
-        imageDescriptors = new Mat();
+        long startTime = System.nanoTime();
+        double[] dstCorners = null;
+        if (settings.useTracking && trackedPoints > 0) {
+            dstCorners = track(image);
+            if (dstCorners != null) {
+                trackingCount++;
+            }
+        }
+        if (dstCorners == null) {
+            dstCorners = detect(image);
+            detectionCount++;
+        }
+        if (dstCorners == null) {
+            inliers = 0;
+        }
+        findTime = System.nanoTime() - startTime;
+        return dstCorners;
+    }
 
+    private double[] detect(IplImage image) {
         // mask is a single channel image. 
         if (roi == null) {
             roi = cvRect(0, 0, image.width(), image.height());
@@ -207,53 +273,192 @@ public class ObjectFinder {
         }
 
         cvSetImageROI(image, roi);
-
-        System.out.println("retreived roi: " + roi.x() + " " + roi.y() + " " + roi.width() + " " + roi.height());
-        long startTime = System.currentTimeMillis();
         settings.detector.detectAndCompute(cvarrToMat(image),
-                new Mat(), imageKeypoints, imageDescriptors, false);
+                noMask, imageKeypoints, imageDescriptors, false);
         //                cvarrToMat(maskImg), imageKeypoints, imageDescriptors, false);
 
         if (imageDescriptors.rows() < settings.getMatchesMin()) {
             // Reset the mask, nothing found.
-            roi.x(0);
-            roi.y(0);
-            roi.width(image.width());
-            roi.height(image.height());
-            cvSetImageROI(image, defaultRoi);
+            resetROI(image);
             return null;
         }
 
-        long endTime = System.currentTimeMillis();
-        long totalTime = endTime - startTime;
-//        System.out.println("Detection time: " + totalTime + " ms.");
-        int total = (int) imageKeypoints.size();
-        logger.info(total + " image descriptors");
-        System.out.println(total + " image descriptors");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(imageKeypoints.size() + " image descriptors");
+        }
 
-        int w = settings.objectImage.width();
-        int h = settings.objectImage.height();
-        double[] srcCorners = {0, 0, w, 0, w, h, 0, h};
         double[] dstCorners = locatePlanarObject(objectKeypoints, objectDescriptors,
-                imageKeypoints, imageDescriptors, srcCorners, image.roi());
+                imageKeypoints, imageDescriptors, objectCorners(), image.roi());
 
         if (dstCorners == null) {
-            roi.x(0);
-            roi.y(0);
-            roi.width(image.width());
-            roi.height(image.height());
-            cvSetImageROI(image, defaultRoi);
+            resetROI(image);
             return null;
         }
+        inliers = countNonZero(mask);
 
         adjustROI(image, dstCorners);
         // update mask from dstCorners... 
 
         cvSetImageROI(image, defaultRoi);
-        System.out.println("Updated roi: " + roi.x() + " " + roi.y());
+        if (settings.useTracking) {
+            startTracking(image);
+        }
+        return dstCorners;
+    }
+
+    private void resetROI(IplImage image) {
+        roi.x(0);
+        roi.y(0);
+        roi.width(image.width());
+        roi.height(image.height());
+        cvSetImageROI(image, defaultRoi);
+        trackedPoints = 0;
+    }
+
+    private double[] objectCorners() {
+        int w = settings.objectImage.width();
+        int h = settings.objectImage.height();
+        return new double[]{0, 0, w, 0, w, h, 0, h};
+    }
+
+    /**
+     * Keep the inliers of the homography in pt1 and pt2, and the image to
+     * follow them in the next one.
+     */
+    private void startTracking(IplImage image) {
+        trackedPoints = keepInliers(pt1.rows());
+        detectionInliers = trackedPoints;
+        toGray(image, previousGray);
+    }
+
+    private int keepInliers(int n) {
+        int count = countNonZero(mask);
+        trackedObjectPoints.resize(count);
+        trackedImagePoints.resize(count);
+        FloatBuffer objectIdx = trackedObjectPoints.createBuffer();
+        FloatBuffer imageIdx = trackedImagePoints.createBuffer();
+        FloatBuffer pt1Idx = pt1.createBuffer();
+        FloatBuffer pt2Idx = pt2.createBuffer();
+        ByteBuffer maskIdx = mask.createBuffer();
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (maskIdx.get(i) == 0) {
+                continue;
+            }
+            objectIdx.put(2 * k, pt1Idx.get(2 * i));
+            objectIdx.put(2 * k + 1, pt1Idx.get(2 * i + 1));
+            imageIdx.put(2 * k, pt2Idx.get(2 * i));
+            imageIdx.put(2 * k + 1, pt2Idx.get(2 * i + 1));
+            k++;
+        }
+        return k;
+    }
+
+    private void toGray(IplImage image, Mat out) {
+        Mat src = cvarrToMat(image);
+        if (image.nChannels() == 1) {
+            src.copyTo(out);
+        } else {
+            cvtColor(src, out, COLOR_BGR2GRAY);
+        }
+    }
+
+    /**
+     * Follow the inliers of the previous image with the pyramidal
+     * Lucas-Kanade optical flow.
+     *
+     * @return the corners of the object, or null if the object has to be
+     * detected again.
+     */
+    private double[] track(IplImage image) {
+        toGray(image, gray);
+        calcOpticalFlowPyrLK(previousGray, gray, trackedImagePoints, nextPoints,
+                status, err, flowWindow, 3, flowCriteria, 0, 1e-4);
+        Mat tmp = previousGray;
+        previousGray = gray;
+        gray = tmp;
+
+        pt1.resize(trackedPoints);
+        pt2.resize(trackedPoints);
+        mask.resize(trackedPoints);
+        FloatBuffer objectIdx = trackedObjectPoints.createBuffer();
+        FloatBuffer nextIdx = nextPoints.createBuffer();
+        ByteBuffer statusIdx = status.createBuffer();
+        FloatBuffer pt1Idx = pt1.createBuffer();
+        FloatBuffer pt2Idx = pt2.createBuffer();
+        int n = 0;
+        for (int i = 0; i < trackedPoints; i++) {
+            if (statusIdx.get(i) == 0) {
+                continue;
+            }
+            pt1Idx.put(2 * n, objectIdx.get(2 * i));
+            pt1Idx.put(2 * n + 1, objectIdx.get(2 * i + 1));
+            pt2Idx.put(2 * n, nextIdx.get(2 * i));
+            pt2Idx.put(2 * n + 1, nextIdx.get(2 * i + 1));
+            n++;
+        }
+        if (isTrackingLost(n)) {
+            trackedPoints = 0;
+            return null;
+        }
+        pt1.resize(n);
+        pt2.resize(n);
+        mask.resize(n);
+
+        H = findHomography(pt1, pt2, CV_RANSAC, settings.ransacReprojThreshold, mask, 2000, 0.995);
+        if (H.empty() || isTrackingLost(countNonZero(mask))) {
+            trackedPoints = 0;
+            return null;
+        }
+        trackedPoints = keepInliers(n);
+        inliers = trackedPoints;
+
+        double[] dstCorners = projectCorners(objectCorners());
+        // The next detection starts around the tracked object.
+        adjustROI(image, dstCorners);
         return dstCorners;
     }
 
+    private boolean isTrackingLost(int nbPoints) {
+        return nbPoints < settings.matchesMin
+                || nbPoints < settings.trackingInlierRatio * detectionInliers;
+    }
+
+    /**
+     * @return true if the object is followed from the previous image.
+     */
+    public boolean isTracking() {
+        return settings.useTracking && trackedPoints > 0;
+    }
+
+    /**
+     * @return duration of the last find(), in ms.
+     */
+    public float getFindTime() {
+        return findTime / 1e6f;
+    }
+
+    /**
+     * @return inliers of the last location found, 0 if it was not found.
+     */
+    public int getInliers() {
+        return inliers;
+    }
+
+    /**
+     * @return number of images where the object was searched by detection.
+     */
+    public long getDetectionCount() {
+        return detectionCount;
+    }
+
+    /**
+     * @return number of images where the object was found by tracking.
+     */
+    public long getTrackingCount() {
+        return trackingCount;
+    }
+
     private void adjustROI(IplImage image, double[] dstCorners) {
         int minX = image.width(), minY = image.height(), maxX = 0, maxY = 0;
         for (int i = 0; i < 4; i++) {
@@ -289,6 +494,13 @@ public class ObjectFinder {
         if (maxY >= image.height()) {
             maxY = image.height() - 1;
         }
+        if (maxX <= minX || maxY <= minY) {
+            // Outside of the image.
+            minX = 0;
+            minY = 0;
+            maxX = image.width();
+            maxY = image.height();
+        }
         roi.x(minX);
         roi.y(minY);
         roi.width(maxX - minX);
@@ -383,7 +595,9 @@ public class ObjectFinder {
             findPairs(objectDescriptors, imageDescriptors);
         }
         int n = ptpairs.size() / 2;
-        logger.info(n + " matching pairs found");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(n + " matching pairs found");
+        }
         if (n < settings.matchesMin) {
             return null;
         }
@@ -417,6 +631,14 @@ public class ObjectFinder {
             return null;
         }
 
+        return projectCorners(srcCorners);
+    }
+
+    /**
+     * @param srcCorners corners in the object image.
+     * @return the corners transformed by the homography H.
+     */
+    double[] projectCorners(double[] srcCorners) {
         double[] h = (double[]) H.createIndexer(false).array();
         double[] dstCorners = new double[srcCorners.length];
         for (int i = 0; i < srcCorners.length / 2; i++) {
@@ -0,0 +1,431 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import fr.inria.papart.multitouch.OneEuroFilter;
+import processing.core.PMatrix3D;
+
+/**
+ * Pose of a board seen by a camera, over time. It keeps the last measured
+ * pose and its velocity to predict the pose at a given time, and filters the
+ * pose as a translation and a rotation (quaternion).
+ *
+ * The translation is filtered by one OneEuroFilter per axis. The rotation is
+ * interpolated towards each new measure, with the One Euro cutoff computed
+ * from the angular speed.
+ *
+ * The poses are given in camera coordinates, as computed by the detection.
+ * It is updated by the camera thread and read by the rendering.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class PoseTracker {
+
+    /**
+     * Poses older than this (ms) are not used for the velocity nor as a guess
+     * for the next detection.
+     */
+    public static final int POSE_TIMEOUT = 500;
+
+    private boolean hasPose = false;
+    private boolean hasVelocity = false;
+    private int lastTime = 0;
+
+    // Last measure, rotation as a quaternion (w, x, y, z).
+    private final float[] position = new float[3];
+    private final float[] rotation = new float[4];
+    // Velocity in mm/ms and rotation vector per ms.
+    private final float[] velocity = new float[3];
+    private final float[] angularVelocity = new float[3];
+    private float velocitySmoothing = 0.5f;
+    private int maxPredictionTime = 100;
+
+    // Filtered pose.
+    private final float[] filteredPosition = new float[3];
+    private final float[] filteredRotation = new float[4];
+    private OneEuroFilter[] positionFilters = null;
+    private double frequency, minCutoff, beta;
+
+    private final float[] tmpQ = new float[4];
+    private final float[] tmpQ2 = new float[4];
+    private final float[] tmpV = new float[3];
+
+    /**
+     * Filter the poses. The frequency is the expected number of updates per
+     * second.
+     *
+     * @param freq
+     * @param minCutoff
+     */
+    public void setFiltering(double freq, double minCutoff) {
+        setFiltering(freq, minCutoff, 0);
+    }
+
+    /**
+     * Filter the poses. The frequency is the expected number of updates per
+     * second.
+     *
+     * @param freq
+     * @param minCutoff
+     * @param beta speed coefficient of the cutoff, in mm/s for the
+     * translation and rad/s for the rotation.
+     */
+    public synchronized void setFiltering(double freq, double minCutoff, double beta) {
+        try {
+            OneEuroFilter[] filters = new OneEuroFilter[3];
+            for (int i = 0; i < 3; i++) {
+                filters[i] = new OneEuroFilter(freq, minCutoff, beta);
+            }
+            this.frequency = freq;
+            this.minCutoff = minCutoff;
+            this.beta = beta;
+            this.positionFilters = filters;
+        } catch (Exception e) {
+            System.out.println("Filter init error" + e);
+        }
+    }
+
+    public synchronized void removeFiltering() {
+        positionFilters = null;
+    }
+
+    public boolean isFiltering() {
+        return positionFilters != null;
+    }
+
+    /**
+     * @param time maximum extrapolation of the predictions, in ms. Later
+     * predictions are extrapolated to this time only (default 100ms).
+     */
+    public void setMaxPredictionTime(int time) {
+        this.maxPredictionTime = Math.max(time, 0);
+    }
+
+    public int getMaxPredictionTime() {
+        return maxPredictionTime;
+    }
+
+    /**
+     * @param smoothing weight of a new velocity measure, in ]0, 1].
+     */
+    public void setVelocitySmoothing(float smoothing) {
+        this.velocitySmoothing = Math.min(Math.max(smoothing, 0.01f), 1f);
+    }
+
+    public synchronized boolean hasPose() {
+        return hasPose;
+    }
+
+    /**
+     * @return time of the last measure, in ms.
+     */
+    public synchronized int getLastTime() {
+        return lastTime;
+    }
+
+    public synchronized void reset() {
+        hasPose = false;
+        hasVelocity = false;
+    }
+
+    /**
+     * Add a measured pose.
+     *
+     * @param pose rigid transformation.
+     * @param time time of the measure, in ms.
+     */
+    public synchronized void update(PMatrix3D pose, int time) {
+        float[] q = tmpQ;
+        toQuaternion(pose, q);
+        float px = pose.m03, py = pose.m13, pz = pose.m23;
+
+        if (hasPose) {
+            // Same hemisphere as the previous rotation.
+            if (dot(q, rotation) < 0) {
+                negate(q);
+            }
+            int dt = time - lastTime;
+            if (dt > 0 && dt <= POSE_TIMEOUT) {
+                float a = hasVelocity ? velocitySmoothing : 1f;
+                velocity[0] += a * ((px - position[0]) / dt - velocity[0]);
+                velocity[1] += a * ((py - position[1]) / dt - velocity[1]);
+                velocity[2] += a * ((pz - position[2]) / dt - velocity[2]);
+
+                // Rotation from the previous measure to this one.
+                conjugate(rotation, tmpQ2);
+                multiply(q, tmpQ2, tmpQ2);
+                toRotationVector(tmpQ2, tmpV);
+                for (int i = 0; i < 3; i++) {
+                    angularVelocity[i] += a * (tmpV[i] / dt - angularVelocity[i]);
+                }
+                hasVelocity = true;
+            } else if (dt > POSE_TIMEOUT) {
+                clearVelocity();
+            }
+        }
+
+        if (positionFilters != null) {
+            try {
+                filteredPosition[0] = (float) positionFilters[0].filter(px);
+                filteredPosition[1] = (float) positionFilters[1].filter(py);
+                filteredPosition[2] = (float) positionFilters[2].filter(pz);
+            } catch (Exception e) {
+                System.out.println("Filtering error " + e);
+            }
+            if (hasPose) {
+                filterRotation(q);
+            } else {
+                System.arraycopy(q, 0, filteredRotation, 0, 4);
+            }
+        } else {
+            filteredPosition[0] = px;
+            filteredPosition[1] = py;
+            filteredPosition[2] = pz;
+            System.arraycopy(q, 0, filteredRotation, 0, 4);
+        }
+
+        position[0] = px;
+        position[1] = py;
+        position[2] = pz;
+        System.arraycopy(q, 0, rotation, 0, 4);
+        lastTime = time;
+        hasPose = true;
+    }
+
+    /**
+     * One Euro filter on the rotation: interpolation towards the measure,
+     * the cutoff grows with the angular speed.
+     */
+    private void filterRotation(float[] q) {
+        double speed = norm(angularVelocity) * 1000;
+        double cutoff = minCutoff + beta * speed;
+        double te = 1.0 / frequency;
+        double tau = 1.0 / (2 * Math.PI * cutoff);
+        float alpha = (float) (1.0 / (1.0 + tau / te));
+        slerp(filteredRotation, q, alpha, filteredRotation);
+    }
+
+    private void clearVelocity() {
+        for (int i = 0; i < 3; i++) {
+            velocity[i] = 0;
+            angularVelocity[i] = 0;
+        }
+        hasVelocity = false;
+    }
+
+    /**
+     * Filtered pose of the last measure.
+     *
+     * @param out pose.
+     * @return false if there is no pose.
+     */
+    public synchronized boolean getPose(PMatrix3D out) {
+        if (!hasPose) {
+            return false;
+        }
+        toMatrix(filteredRotation, filteredPosition, out);
+        return true;
+    }
+
+    /**
+     * Filtered pose, extrapolated to a time with the velocity. The
+     * extrapolation is limited to the maximum prediction time.
+     *
+     * @param time in ms.
+     * @param out predicted pose.
+     * @return false if there is no pose.
+     */
+    public synchronized boolean predict(int time, PMatrix3D out) {
+        return extrapolate(filteredPosition, filteredRotation, time, out);
+    }
+
+    /**
+     * Measured pose extrapolated to a time, to start the pose estimation of a
+     * new detection.
+     *
+     * @param time in ms.
+     * @param out guessed pose.
+     * @return false if there is no recent pose.
+     */
+    public synchronized boolean guess(int time, PMatrix3D out) {
+        if (time - lastTime > POSE_TIMEOUT) {
+            return false;
+        }
+        return extrapolate(position, rotation, time, out);
+    }
+
+    private boolean extrapolate(float[] p, float[] q, int time, PMatrix3D out) {
+        if (!hasPose) {
+            return false;
+        }
+        // Limited extrapolation far from the last measure: the board is lost
+        // or not updated, the velocity is not reliable for a long time.
+        int dt = time - lastTime;
+        if (!hasVelocity || dt < 0) {
+            dt = 0;
+        }
+        dt = Math.min(dt, maxPredictionTime);
+        float[] predictedP = new float[3];
+        float[] rotationVector = new float[3];
+        for (int i = 0; i < 3; i++) {
+            predictedP[i] = p[i] + velocity[i] * dt;
+            rotationVector[i] = angularVelocity[i] * dt;
+        }
+        float[] predictedQ = new float[4];
+        fromRotationVector(rotationVector, predictedQ);
+        multiply(predictedQ, q, predictedQ);
+        toMatrix(predictedQ, predictedP, out);
+        return true;
+    }
+
+    // ---- Quaternions (w, x, y, z) ----
+    static void toQuaternion(PMatrix3D m, float[] q) {
+        float trace = m.m00 + m.m11 + m.m22;
+        float s;
+        if (trace > 0) {
+            s = (float) Math.sqrt(trace + 1) * 2;
+            q[0] = 0.25f * s;
+            q[1] = (m.m21 - m.m12) / s;
+            q[2] = (m.m02 - m.m20) / s;
+            q[3] = (m.m10 - m.m01) / s;
+        } else if (m.m00 > m.m11 && m.m00 > m.m22) {
+            s = (float) Math.sqrt(1 + m.m00 - m.m11 - m.m22) * 2;
+            q[0] = (m.m21 - m.m12) / s;
+            q[1] = 0.25f * s;
+            q[2] = (m.m01 + m.m10) / s;
+            q[3] = (m.m02 + m.m20) / s;
+        } else if (m.m11 > m.m22) {
+            s = (float) Math.sqrt(1 + m.m11 - m.m00 - m.m22) * 2;
+            q[0] = (m.m02 - m.m20) / s;
+            q[1] = (m.m01 + m.m10) / s;
+            q[2] = 0.25f * s;
+            q[3] = (m.m12 + m.m21) / s;
+        } else {
+            s = (float) Math.sqrt(1 + m.m22 - m.m00 - m.m11) * 2;
+            q[0] = (m.m10 - m.m01) / s;
+            q[1] = (m.m02 + m.m20) / s;
+            q[2] = (m.m12 + m.m21) / s;
+            q[3] = 0.25f * s;
+        }
+        normalize(q);
+    }
+
+    static void toMatrix(float[] q, float[] p, PMatrix3D out) {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        out.set(1 - 2 * (y * y + z * z), 2 * (x * y - z * w), 2 * (x * z + y * w), p[0],
+                2 * (x * y + z * w), 1 - 2 * (x * x + z * z), 2 * (y * z - x * w), p[1],
+                2 * (x * z - y * w), 2 * (y * z + x * w), 1 - 2 * (x * x + y * y), p[2],
+                0, 0, 0, 1);
+    }
+
+    /**
+     * out = a * b, out can be a or b.
+     */
+    static void multiply(float[] a, float[] b, float[] out) {
+        float w = a[0] * b[0] - a[1] * b[1] - a[2] * b[2] - a[3] * b[3];
+        float x = a[0] * b[1] + a[1] * b[0] + a[2] * b[3] - a[3] * b[2];
+        float y = a[0] * b[2] - a[1] * b[3] + a[2] * b[0] + a[3] * b[1];
+        float z = a[0] * b[3] + a[1] * b[2] - a[2] * b[1] + a[3] * b[0];
+        out[0] = w;
+        out[1] = x;
+        out[2] = y;
+        out[3] = z;
+    }
+
+    static void conjugate(float[] q, float[] out) {
+        out[0] = q[0];
+        out[1] = -q[1];
+        out[2] = -q[2];
+        out[3] = -q[3];
+    }
+
+    static void toRotationVector(float[] q, float[] v) {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        // Shortest rotation.
+        if (w < 0) {
+            w = -w;
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+        float sinHalf = (float) Math.sqrt(x * x + y * y + z * z);
+        float scale = sinHalf < 1e-7f ? 2 : (float) (2 * Math.atan2(sinHalf, w) / sinHalf);
+        v[0] = x * scale;
+        v[1] = y * scale;
+        v[2] = z * scale;
+    }
+
+    /**
+     * q from the rotation vector v.
+     */
+    static void fromRotationVector(float[] v, float[] q) {
+        float x = v[0], y = v[1], z = v[2];
+        float angle = (float) Math.sqrt(x * x + y * y + z * z);
+        float s = angle < 1e-7f ? 0.5f : (float) Math.sin(angle / 2) / angle;
+        q[0] = (float) Math.cos(angle / 2);
+        q[1] = x * s;
+        q[2] = y * s;
+        q[3] = z * s;
+        normalize(q);
+    }
+
+    static void slerp(float[] a, float[] b, float t, float[] out) {
+        float d = dot(a, b);
+        float sign = d < 0 ? -1 : 1;
+        d *= sign;
+        float wa, wb;
+        if (d > 0.9995f) {
+            wa = 1 - t;
+            wb = t;
+        } else {
+            float theta = (float) Math.acos(d);
+            float sin = (float) Math.sin(theta);
+            wa = (float) Math.sin((1 - t) * theta) / sin;
+            wb = (float) Math.sin(t * theta) / sin;
+        }
+        wb *= sign;
+        for (int i = 0; i < 4; i++) {
+            out[i] = wa * a[i] + wb * b[i];
+        }
+        normalize(out);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+    }
+
+    private static void negate(float[] q) {
+        for (int i = 0; i < 4; i++) {
+            q[i] = -q[i];
+        }
+    }
+
+    private static float norm(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+
+    private static void normalize(float[] q) {
+        float n = (float) Math.sqrt(dot(q, q));
+        if (n > 0) {
+            for (int i = 0; i < 4; i++) {
+                q[i] /= n;
+            }
+        }
+    }
+}
@@ -8,7 +8,10 @@ package fr.inria.papart.utils;
 import fr.inria.papart.procam.PaperTouchScreen;
 import fr.inria.papart.procam.camera.Camera;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.List;
 import static org.bytedeco.javacpp.opencv_calib3d.cvFindHomography;
 import org.bytedeco.javacpp.opencv_core;
@@ -27,19 +30,11 @@ import processing.opengl.Texture;
  */
 public class ImageUtils {
 
+    // Number of pixels converted with each bulk get and put.
+    private static final int CONVERSION_CHUNK = 4096;
+
     public static void byteBufferDepthK1MMtoARGB(ByteBuffer gray, ByteBuffer argb) {
-        byte[] depthRaw = new byte[2];
-        for (int i = 0; i < argb.capacity(); i += 4) {
-            gray.get(depthRaw);
-            int d = (depthRaw[0] & 255) << 8 | (depthRaw[1] & 255);
-            // min depth: 400
-            byte dValue = (byte) ((d - 300.0F) / 3000.0F * 255.0F);
-            argb.put(dValue);
-            argb.put(dValue);
-            argb.put(dValue);
-            argb.put((byte) 255);
-        }
-        argb.rewind();
+        byteBufferShorttoARGB(gray, argb);
     }
 
     public static opencv_core.CvMat createHomography(List<PVector> in, List<PVector> out) {
@@ -61,6 +56,31 @@ public class ImageUtils {
         //       It is better to use : GetPerspectiveTransform
         return homography;
     }
+    /**
+     * Same as createHomography(in, out), with matrices given by the caller
+     * so they can be reused. srcPoints and dstPoints must be 2 x in.size(),
+     * homography 3 x 3, all of type CV_32FC1.
+     *
+     * @param in
+     * @param out
+     * @param srcPoints
+     * @param dstPoints
+     * @param homography filled with the result.
+     * @return homography
+     */
+    public static opencv_core.CvMat createHomography(List<PVector> in, List<PVector> out,
+            opencv_core.CvMat srcPoints, opencv_core.CvMat dstPoints, opencv_core.CvMat homography) {
+        int nbPoints = in.size();
+        for (int i = 0; i < nbPoints; i++) {
+            srcPoints.put(i, in.get(i).x);
+            srcPoints.put(i + nbPoints, in.get(i).y);
+            dstPoints.put(i, out.get(i).x);
+            dstPoints.put(i + nbPoints, out.get(i).y);
+        }
+        cvFindHomography(srcPoints, dstPoints, homography);
+        return homography;
+    }
+
     public static opencv_core.CvMat createHomography(PVector[] in, PVector[] out) {
         opencv_core.CvMat srcPoints;
         opencv_core.CvMat dstPoints;
@@ -149,42 +169,60 @@ public class ImageUtils {
     }
 
     public static void byteBufferZ16toARGB(ByteBuffer gray, ByteBuffer argb) {
-        byte[] tmpArr = new byte[2];
         gray.rewind();
-        for (int i = 0; i < argb.capacity(); i += 4) {
-            gray.get(tmpArr);
-            argb.put(tmpArr[0]);
-            argb.put(tmpArr[1]);
-            argb.put((byte) 128);
-            argb.put((byte) 255);
+        int nbPixels = argb.capacity() / 4;
+        byte[] in = new byte[CONVERSION_CHUNK * 2];
+        byte[] out = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            gray.get(in, 0, len * 2);
+            for (int i = 0, o = 0; i < len * 2; i += 2, o += 4) {
+                out[o] = in[i];
+                out[o + 1] = in[i + 1];
+                out[o + 2] = (byte) 128;
+                out[o + 3] = (byte) 255;
+            }
+            argb.put(out, 0, len * 4);
         }
         argb.rewind();
     }
 
     // For OpenNI -- test
     public static void byteBufferShorttoARGB(ByteBuffer gray, ByteBuffer argb) {
-        byte[] depthRaw = new byte[2];
-        for (int i = 0; i < argb.capacity(); i += 4) {
-            gray.get(depthRaw);
-            int d = (depthRaw[0] & 255) << 8 | (depthRaw[1] & 255);
-            // min depth: 400
-            byte dValue = (byte) ((d - 300.0F) / 3000.0F * 255.0F);
-            argb.put(dValue);
-            argb.put(dValue);
-            argb.put(dValue);
-            argb.put((byte) 255);
+        int nbPixels = argb.capacity() / 4;
+        byte[] in = new byte[CONVERSION_CHUNK * 2];
+        byte[] out = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            gray.get(in, 0, len * 2);
+            for (int i = 0, o = 0; i < len * 2; i += 2, o += 4) {
+                int d = (in[i] & 255) << 8 | (in[i + 1] & 255);
+                // min depth: 400
+                byte dValue = (byte) ((d - 300.0F) / 3000.0F * 255.0F);
+                out[o] = dValue;
+                out[o + 1] = dValue;
+                out[o + 2] = dValue;
+                out[o + 3] = (byte) 255;
+            }
+            argb.put(out, 0, len * 4);
         }
         argb.rewind();
     }
 
     public static void byteBufferGRAYtoARGB(ByteBuffer gray, ByteBuffer argb) {
-        byte[] tmpArr = new byte[1];
-        for (int i = 0; i < gray.capacity(); i++) {
-            gray.get(tmpArr);
-            argb.put(tmpArr[0]);
-            argb.put(tmpArr[0]);
-            argb.put(tmpArr[0]);
-            argb.put((byte) 255);
+        int nbPixels = gray.capacity();
+        byte[] in = new byte[CONVERSION_CHUNK];
+        byte[] out = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            gray.get(in, 0, len);
+            for (int i = 0, o = 0; i < len; i++, o += 4) {
+                out[o] = in[i];
+                out[o + 1] = in[i];
+                out[o + 2] = in[i];
+                out[o + 3] = (byte) 255;
+            }
+            argb.put(out, 0, len * 4);
         }
         argb.rewind();
     }
@@ -243,15 +281,35 @@ public class ImageUtils {
     }
 
     public static void byteBufferBRGtoARGB(ByteBuffer bgr, ByteBuffer argb) {
-        byte[] tmpArr = new byte[3];
-        for (int i = 0; i < bgr.capacity(); i += 3) {
-            bgr.get(tmpArr);
-            argb.put(tmpArr[2]);
-            argb.put(tmpArr[1]);
-            argb.put(tmpArr[0]);
-            argb.put((byte) 255);
+        byteBuffer3to4(bgr, argb, 2, 1, 0);
+    }
+
+    /**
+     * Copy 3-byte pixels to 4-byte pixels with an opaque alpha, in chunks
+     * with bulk get and put.
+     *
+     * @param in 3 bytes per pixel.
+     * @param out 4 bytes per pixel, rewinded.
+     * @param c0 index in the input pixel of the first output byte.
+     * @param c1 index of the second output byte.
+     * @param c2 index of the third output byte.
+     */
+    private static void byteBuffer3to4(ByteBuffer in, ByteBuffer out, int c0, int c1, int c2) {
+        int nbPixels = in.capacity() / 3;
+        byte[] src = new byte[CONVERSION_CHUNK * 3];
+        byte[] dst = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            in.get(src, 0, len * 3);
+            for (int i = 0, o = 0; i < len * 3; i += 3, o += 4) {
+                dst[o] = src[i + c0];
+                dst[o + 1] = src[i + c1];
+                dst[o + 2] = src[i + c2];
+                dst[o + 3] = (byte) 255;
+            }
+            out.put(dst, 0, len * 4);
         }
-        argb.rewind();
+        out.rewind();
     }
 
     /**
@@ -291,15 +349,7 @@ public class ImageUtils {
     }
 
     public static void byteBufferRGBtoARGB(ByteBuffer bgr, ByteBuffer argb) {
-        byte[] tmpArr = new byte[3];
-        for (int i = 0; i < bgr.capacity(); i += 3) {
-            bgr.get(tmpArr);
-            argb.put(tmpArr[0]);
-            argb.put(tmpArr[1]);
-            argb.put(tmpArr[2]);
-            argb.put((byte) 255);
-        }
-        argb.rewind();
+        byteBuffer3to4(bgr, argb, 0, 1, 2);
     }
 
     public static void remapImage(PVector[] in, PVector[] out, opencv_core.IplImage imgIn, opencv_core.IplImage imgTmp, PImage Pout) {
@@ -336,6 +386,170 @@ public class ImageUtils {
         IplImageToPImage(imgTmp, isRgb, Pout);
     }
 
+    /**
+     * Warp and convert in one pass: each pixel of Pout is read from imgIn
+     * through the homography and written in Pout.pixels, without temporary
+     * IplImage. Only the part of Pout where imgIn is visible is computed, the
+     * rest is filled like cvWarpPerspective does (black). The pixel format is
+     * the same as IplImageToPImage.
+     *
+     * @param homography from imgIn to Pout pixel coordinates, 3x3.
+     * @param imgIn 8 bits image, 1, 3 or 4 channels.
+     * @param Pout output image.
+     * @param isRgb true for RGB 3-channel images, false for BGR.
+     * @param bilinear bilinear interpolation, nearest neighbour otherwise.
+     */
+    public static void remapImage(opencv_core.CvMat homography, opencv_core.IplImage imgIn, PImage Pout,
+            boolean isRgb, boolean bilinear) {
+        double[] h = homography.get();
+        double[] inv = invert3x3(h);
+
+        int nChannels = imgIn.nChannels();
+        int idR = 0, idG = 0, idB = 0;
+        int alpha = 0xFF000000;
+        if (nChannels == 3) {
+            idR = isRgb ? 0 : 2;
+            idG = 1;
+            idB = isRgb ? 2 : 0;
+            alpha = 0;
+        }
+        if (nChannels == 4) {
+            idG = 1;
+            idB = 2;
+        }
+
+        Pout.loadPixels();
+        int[] pixels = Pout.pixels;
+        int outW = Pout.width;
+        int outH = Pout.height;
+
+        if (inv == null) {
+            Arrays.fill(pixels, alpha);
+            Pout.updatePixels();
+            return;
+        }
+
+        int inW = imgIn.width();
+        int inH = imgIn.height();
+        int step = imgIn.widthStep();
+        ByteBuffer buff = imgIn.getByteBuffer();
+
+        // Part of Pout covered by imgIn: bounding box of its projected corners.
+        int minX = 0, minY = 0, maxX = outW, maxY = outH;
+        double[] corners = {0, 0, inW, 0, inW, inH, 0, inH};
+        boolean inFront = true;
+        double bx0 = Double.MAX_VALUE, by0 = Double.MAX_VALUE;
+        double bx1 = -Double.MAX_VALUE, by1 = -Double.MAX_VALUE;
+        for (int i = 0; i < 8; i += 2) {
+            double w = h[6] * corners[i] + h[7] * corners[i + 1] + h[8];
+            if (w <= 0) {
+                inFront = false;
+                break;
+            }
+            double px = (h[0] * corners[i] + h[1] * corners[i + 1] + h[2]) / w;
+            double py = (h[3] * corners[i] + h[4] * corners[i + 1] + h[5]) / w;
+            bx0 = Math.min(bx0, px);
+            by0 = Math.min(by0, py);
+            bx1 = Math.max(bx1, px);
+            by1 = Math.max(by1, py);
+        }
+        if (inFront) {
+            minX = (int) Math.max(0, Math.min(outW, Math.floor(bx0)));
+            minY = (int) Math.max(0, Math.min(outH, Math.floor(by0)));
+            maxX = (int) Math.max(minX, Math.min(outW, Math.ceil(bx1) + 1));
+            maxY = (int) Math.max(minY, Math.min(outH, Math.ceil(by1) + 1));
+        }
+
+        for (int y = 0; y < outH; y++) {
+            int rowOffset = y * outW;
+            if (y < minY || y >= maxY) {
+                Arrays.fill(pixels, rowOffset, rowOffset + outW, alpha);
+                continue;
+            }
+            Arrays.fill(pixels, rowOffset, rowOffset + minX, alpha);
+            Arrays.fill(pixels, rowOffset + maxX, rowOffset + outW, alpha);
+
+            double sxRow = inv[1] * y + inv[2];
+            double syRow = inv[4] * y + inv[5];
+            double swRow = inv[7] * y + inv[8];
+            for (int x = minX; x < maxX; x++) {
+                double w = inv[6] * x + swRow;
+                double sx = (inv[0] * x + sxRow) / w;
+                double sy = (inv[3] * x + syRow) / w;
+
+                int out = alpha;
+                if (bilinear) {
+                    int x0 = (int) Math.floor(sx);
+                    int y0 = (int) Math.floor(sy);
+                    if (x0 >= 0 && y0 >= 0 && x0 + 1 < inW && y0 + 1 < inH) {
+                        int fx = (int) ((sx - x0) * 256);
+                        int fy = (int) ((sy - y0) * 256);
+                        int o00 = y0 * step + x0 * nChannels;
+                        int o01 = o00 + nChannels;
+                        int o10 = o00 + step;
+                        int o11 = o10 + nChannels;
+                        out |= lerp(buff, o00, o01, o10, o11, idR, fx, fy) << 16
+                                | lerp(buff, o00, o01, o10, o11, idG, fx, fy) << 8
+                                | lerp(buff, o00, o01, o10, o11, idB, fx, fy);
+                        pixels[rowOffset + x] = out;
+                        continue;
+                    }
+                }
+                int ix = (int) Math.floor(sx + 0.5);
+                int iy = (int) Math.floor(sy + 0.5);
+                if (ix >= 0 && iy >= 0 && ix < inW && iy < inH) {
+                    int o = iy * step + ix * nChannels;
+                    out |= (buff.get(o + idR) & 255) << 16
+                            | (buff.get(o + idG) & 255) << 8
+                            | (buff.get(o + idB) & 255);
+                }
+                pixels[rowOffset + x] = out;
+            }
+        }
+        Pout.updatePixels();
+    }
+
+    /**
+     * @param img
+     * @return true if remapImage(homography, img, Pout, isRgb, bilinear)
+     * handles this image format.
+     */
+    public static boolean isDirectRemapSupported(opencv_core.IplImage img) {
+        int nChannels = img.nChannels();
+        return img.depth() == opencv_core.IPL_DEPTH_8U
+                && (nChannels == 1 || nChannels == 3 || nChannels == 4);
+    }
+
+    private static int lerp(ByteBuffer buff, int o00, int o01, int o10, int o11, int channel, int fx, int fy) {
+        int v00 = buff.get(o00 + channel) & 255;
+        int v01 = buff.get(o01 + channel) & 255;
+        int v10 = buff.get(o10 + channel) & 255;
+        int v11 = buff.get(o11 + channel) & 255;
+        int top = (v00 << 8) + (v01 - v00) * fx;
+        int bottom = (v10 << 8) + (v11 - v10) * fx;
+        return ((top << 8) + (bottom - top) * fy + (1 << 15)) >> 16;
+    }
+
+    /**
+     * @param m 3x3 matrix, row major.
+     * @return the inverse, or null if m is not invertible.
+     */
+    private static double[] invert3x3(double[] m) {
+        double c00 = m[4] * m[8] - m[5] * m[7];
+        double c01 = m[5] * m[6] - m[3] * m[8];
+        double c02 = m[3] * m[7] - m[4] * m[6];
+        double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (det == 0) {
+            return null;
+        }
+        double id = 1.0 / det;
+        return new double[]{
+            c00 * id, (m[2] * m[7] - m[1] * m[8]) * id, (m[1] * m[5] - m[2] * m[4]) * id,
+            c01 * id, (m[0] * m[8] - m[2] * m[6]) * id, (m[2] * m[3] - m[0] * m[5]) * id,
+            c02 * id, (m[1] * m[6] - m[0] * m[7]) * id, (m[0] * m[4] - m[1] * m[3]) * id
+        };
+    }
+
     // TO USE INSIDE THE DRAW FUNCTION
     // TODO: Experimental -> To validate...
     //    static public Texture createTextureFrom(PApplet parent, IplImage img) {
@@ -362,16 +576,21 @@ public class ImageUtils {
 
     public static void byteBufferDepthK2toARGB(ByteBuffer gray, ByteBuffer argb) {
         FloatBuffer floatGray = gray.asFloatBuffer();
-        float[] tmpArr = new float[1];
-        for (int i = 0; i < argb.capacity(); i += 4) {
-            floatGray.get(tmpArr);
-            // 8 meters
-            byte v = (byte) (tmpArr[0] / 8000 * 255);
-            //            byte v = (byte) (tmpArr[0] << 8 | tmpArr[1]);
-            argb.put((byte) (v));
-            argb.put((byte) (v));
-            argb.put((byte) (v));
-            argb.put((byte) 255);
+        int nbPixels = argb.capacity() / 4;
+        float[] in = new float[CONVERSION_CHUNK];
+        byte[] out = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            floatGray.get(in, 0, len);
+            for (int i = 0, o = 0; i < len; i++, o += 4) {
+                // 8 meters
+                byte v = (byte) (in[i] / 8000 * 255);
+                out[o] = v;
+                out[o + 1] = v;
+                out[o + 2] = v;
+                out[o + 3] = (byte) 255;
+            }
+            argb.put(out, 0, len * 4);
         }
         argb.rewind();
     }
@@ -398,70 +617,92 @@ public class ImageUtils {
     }
 
     public static void IplImageToPImage(opencv_core.IplImage img, boolean RGB, PImage ret) {
-        //        conversionCount++;
-        //        if (conversionCount % 600 == 0) {
-        //            System.gc();
-        //        }
         assert (img.width() == ret.width);
         assert (img.height() == ret.height);
         ret.loadPixels();
-        if (img.nChannels() == 3) {
-            ByteBuffer buff = img.getByteBuffer();
-            //  PImage ret = new PImage(img.width(), img.height(), PApplet.RGB);
-            if (RGB) {
-                for (int i = 0; i < img.width() * img.height(); i++) {
-                    int offset = i * 3;
-                    ret.pixels[i] = (buff.get(offset) & 255) << 16 | (buff.get(offset + 1) & 255) << 8 | (buff.get(offset + 2) & 255);
+        IplImageToPixels(img, RGB, ret.pixels);
+        ret.updatePixels();
+    }
+
+    /**
+     * Conversion of IplImageToPImage, without loadPixels and updatePixels.
+     * The image is read by chunks with bulk gets.
+     *
+     * @param img 8 bits image, 1, 3 or 4 channels.
+     * @param RGB true for RGB 3-channel images, false for BGR.
+     * @param pixels output, one int per pixel.
+     */
+    public static void IplImageToPixels(opencv_core.IplImage img, boolean RGB, int[] pixels) {
+        int nChannels = img.nChannels();
+        if (nChannels != 1 && nChannels != 3 && nChannels != 4) {
+            return;
+        }
+        int nbPixels = img.width() * img.height();
+        ByteBuffer buff = img.getByteBuffer();
+        byte[] in = new byte[CONVERSION_CHUNK * nChannels];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            buff.get(in, 0, len * nChannels);
+            if (nChannels == 3) {
+                if (RGB) {
+                    for (int i = 0, k = 0; i < len; i++, k += 3) {
+                        pixels[done + i] = (in[k] & 255) << 16 | (in[k + 1] & 255) << 8 | (in[k + 2] & 255);
+                    }
+                } else {
+                    for (int i = 0, k = 0; i < len; i++, k += 3) {
+                        pixels[done + i] = (in[k + 2] & 255) << 16 | (in[k + 1] & 255) << 8 | (in[k] & 255);
+                    }
                 }
-            } else {
-                for (int i = 0; i < img.width() * img.height(); i++) {
-                    int offset = i * 3;
-                    ret.pixels[i] = (buff.get(offset + 2) & 255) << 16 | (buff.get(offset + 1) & 255) << 8 | (buff.get(offset) & 255);
+            }
+            if (nChannels == 4) {
+                for (int i = 0, k = 0; i < len; i++, k += 4) {
+                    pixels[done + i] = (255) << 24 | (in[k] & 255) << 16 | (in[k + 1] & 255) << 8 | (in[k + 2] & 255);
                 }
             }
-        }
-        if (img.nChannels() == 4) {
-            ByteBuffer buff = img.getByteBuffer();
-            //  PImage ret = new PImage(img.width(), img.height(), PApplet.RGB);
-            for (int i = 0; i < img.width() * img.height(); i++) {
-                int offset = i * 4;
-                //            ret.pixels[i] = applet.color(buff.get(offset + 0) & 0xff, buff.get(offset + 1) & 0xFF, buff.get(offset + 2) & 0xff);
-                ret.pixels[i] = (255) << 24 | (buff.get(offset) & 255) << 16 | (buff.get(offset + 1) & 255) << 8 | (buff.get(offset + 2) & 255);
+            // Depth is 8_U 
+            if (nChannels == 1) {
+                for (int i = 0; i < len; i++) {
+                    int d = in[i] & 255;
+                    pixels[done + i] = (255) << 24 | d << 16 | d << 8 | d;
+                }
             }
         }
-        // Depth is 8_U 
-        if (img.nChannels() == 1) {
-            // TODO: no more allocations.
-           
-            ByteBuffer buff = img.getByteBuffer();
-//            ByteBuffer buff =  img.imageData().
-            byte[] tmpArr = new byte[1];
-//            byte[] tmpArr = new byte[img.width() * img.height()];
-//            buff.get(tmpArr);
-            
-            //            byte[] arr = new byte[img.width() * img.height()];
-            //            buff.get(arr);
-            for (int i = 0; i < img.width() * img.height(); i++) {
-                            buff.get(tmpArr);
-                byte d = tmpArr[0];
-                //                int d = (arr[i] & 0xFF);
-                ret.pixels[i] = (255) << 24 | (d & 255) << 16 | (d & 255) << 8 | (d & 255);
-            }
+    }
+
+    /**
+     * Copy 4-byte RGBA pixels (as sent to the textures) to Processing ARGB
+     * ints.
+     *
+     * @param rgba rewinded after the copy.
+     * @param pixels output, one int per pixel.
+     */
+    public static void byteBufferRGBAtoPixels(ByteBuffer rgba, int[] pixels) {
+        IntBuffer ints = rgba.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        int len = Math.min(ints.remaining(), pixels.length);
+        ints.get(pixels, 0, len);
+        for (int i = 0; i < len; i++) {
+            int v = pixels[i];
+            pixels[i] = (v >>> 8) | (v << 24);
         }
-        ret.updatePixels();
+        rgba.rewind();
     }
 
     public static void byteBufferGRAY32toARGB(ByteBuffer gray, ByteBuffer argb) {
         FloatBuffer floatGray = gray.asFloatBuffer();
-        float[] tmpArr = new float[1];
-        for (int i = 0; i < argb.capacity(); i += 4) {
-            floatGray.get(tmpArr);
-            byte v = (byte) (tmpArr[0] / 65535.0 * 255);
-            //            byte v = (byte) (tmpArr[0] << 8 | tmpArr[1]);
-            argb.put((byte) (v));
-            argb.put((byte) (v));
-            argb.put((byte) (v));
-            argb.put((byte) 255);
+        int nbPixels = argb.capacity() / 4;
+        float[] in = new float[CONVERSION_CHUNK];
+        byte[] out = new byte[CONVERSION_CHUNK * 4];
+        for (int done = 0; done < nbPixels; done += CONVERSION_CHUNK) {
+            int len = Math.min(CONVERSION_CHUNK, nbPixels - done);
+            floatGray.get(in, 0, len);
+            for (int i = 0, o = 0; i < len; i++, o += 4) {
+                byte v = (byte) (in[i] / 65535.0 * 255);
+                out[o] = v;
+                out[o + 1] = v;
+                out[o + 2] = v;
+                out[o + 3] = (byte) 255;
+            }
+            argb.put(out, 0, len * 4);
         }
         argb.rewind();
     }
@@ -0,0 +1,209 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2016-2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of int values, without boxing. The storage is kept on
+ * clear() so a list can be reused each frame.
+ *
+ * It is also a List of Integer, for the code written for an
+ * ArrayList&lt;Integer&gt;. The boxed methods (get, set, iterator...) allocate,
+ * the loops on many values use getInt() or getData().
+ *
+ * @author Jeremy Laviole
+ */
+public class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+
+    private int[] data;
+    private int size = 0;
+
+    public IntArrayList() {
+        this(16);
+    }
+
+    public IntArrayList(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return data[index];
+    }
+
+    public void setInt(int index, int value) {
+        checkIndex(index);
+        data[index] = value;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        int previous = getInt(index);
+        data[index] = value;
+        return previous;
+    }
+
+    /**
+     * Add a value at the end of the list.
+     *
+     * @param value
+     * @return true.
+     */
+    public boolean add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        modCount++;
+        data[size++] = value;
+        return true;
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(data, index, data, index + 1, size - index);
+        modCount++;
+        data[index] = value;
+        size++;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        int previous = getInt(index);
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        modCount++;
+        size--;
+        return previous;
+    }
+
+    public boolean addAll(IntArrayList list) {
+        ensureCapacity(size + list.size);
+        System.arraycopy(list.data, 0, data, size, list.size);
+        modCount++;
+        size += list.size;
+        return list.size != 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    public boolean contains(int value) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer && contains(((Integer) value).intValue());
+    }
+
+    /**
+     * Keep only the first elements.
+     *
+     * @param newSize new size, smaller than size().
+     */
+    public void truncate(int newSize) {
+        if (newSize < size) {
+            modCount++;
+            size = newSize;
+        }
+    }
+
+    /**
+     * Sort the values by a key, in ascending order. The order of values with
+     * the same key is kept.
+     *
+     * @param keys one key per value, keys[i] is the key of get(i).
+     */
+    public void sortByKey(float[] keys) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            // Float bits ordered as ints, index in the low bits.
+            int bits = Float.floatToIntBits(keys[i]);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            sorted[i] = ((long) bits << 32) | i;
+        }
+        Arrays.sort(sorted);
+        int[] values = Arrays.copyOf(data, size);
+        for (int i = 0; i < size; i++) {
+            data[i] = values[(int) sorted[i]];
+        }
+    }
+
+    /**
+     * Direct access to the storage, the valid values are in [0, size()[.
+     *
+     * @return the internal array.
+     */
+    public int[] getData() {
+        return data;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toIntArray());
+    }
+}
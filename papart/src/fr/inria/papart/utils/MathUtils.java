@@ -556,6 +556,58 @@ public class MathUtils {
         return k;
     }
 
+    /**
+     * Do a simple erosion, the eroded points are removed from validList in
+     * place.
+     *
+     * @param validList offsets of the valid points.
+     * @param nbPoints number of points in validList.
+     * @param arrayToErode eroded array.
+     * @param buffer temporary buffer, same size of the arrayToErode.
+     * @param skip quality skip 1/skip values.
+     * @param invalidValue value to fill the invalid states
+     * @param size size of the arrayToErode
+     * @return the number of points left in validList.
+     */
+    public static int erodePoints2(int[] validList, int nbPoints,
+            byte[] arrayToErode,
+            byte[] buffer,
+            int skip, byte invalidValue,
+            WithSize size) {
+
+        Arrays.fill(buffer, invalidValue);
+        int width = size.getWidth();
+        int height = size.getHeight();
+        int kept = 0;
+
+        for (int k = 0; k < nbPoints; k++) {
+            int idx = validList[k];
+            int sum = 0;
+            int x = idx % width;
+            int y = idx / width;
+
+            byte value = arrayToErode[idx];
+
+            for (int j = -skip; j <= skip; j += skip) {
+                for (int i = -skip; i <= skip; i += skip) {
+                    if (x + i >= 0 && x + i < width
+                            && j + y >= 0 && j + y < height) {
+                        sum += arrayToErode[(x + i) + (j + y) * width] == value ? 1 : 0;
+                    }
+                }
+            }
+
+            if (sum <= 8) {
+                buffer[idx] = invalidValue;
+            } else {
+                buffer[idx] = value;
+                validList[kept++] = idx;
+            }
+        }
+        System.arraycopy(buffer, 0, arrayToErode, 0, arrayToErode.length);
+        return kept;
+    }
+
     /**
      * Do a simple erosion.
      *
@@ -0,0 +1,132 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.depthcam.analysis;
+
+import fr.inria.papart.calibration.files.HomographyCalibration;
+import fr.inria.papart.calibration.files.PlaneAndProjectionCalibration;
+import fr.inria.papart.calibration.files.PlaneCalibration;
+import fr.inria.papart.procam.ProjectiveDeviceP;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import processing.core.PMatrix3D;
+import toxi.geom.Plane;
+import toxi.geom.Vec3D;
+
+/**
+ * Region of a plane seen by a 64x48 camera, 1m away. The calibrated area is
+ * 380x190mm, centered on the optical axis.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class DepthROITest {
+
+    static final int WIDTH = 64, HEIGHT = 48;
+
+    static ProjectiveDeviceP createDevice() {
+        return ProjectiveDeviceP.createSimpleDevice(50, 50, 32, 24, WIDTH, HEIGHT);
+    }
+
+    static PlaneAndProjectionCalibration createCalibration() {
+        Plane plane = new Plane(new Vec3D(0, 0, 1000), new Vec3D(0, 0, 1));
+        // (x, y) in mm to [0, 1], the third coordinate is 1 on the plane.
+        HomographyCalibration homography = new HomographyCalibration();
+        homography.setMatrix(new PMatrix3D(
+                1f / 380f, 0, 0, 0.5f,
+                0, 1f / 190f, 0, 0.5f,
+                0, 0, 1f / 1000f, 0,
+                0, 0, 0, 1));
+
+        PlaneAndProjectionCalibration calib = new PlaneAndProjectionCalibration();
+        calib.setPlane(new PlaneCalibration(plane, 0));
+        calib.setHomography(homography);
+        return calib;
+    }
+
+    static void checkSpans(DepthROI roi, int firstRow, int lastRow, int begin, int end) {
+        assertEquals(firstRow, roi.getFirstRow());
+        assertEquals(lastRow, roi.getLastRow());
+        for (int y = 0; y < HEIGHT; y++) {
+            if (y < firstRow || y >= lastRow) {
+                assertEquals(roi.getRowBegin(y), roi.getRowEnd(y));
+            } else {
+                assertEquals(begin, roi.getRowBegin(y));
+                assertEquals(end, roi.getRowEnd(y));
+            }
+        }
+        assertEquals((lastRow - firstRow) * (end - begin), roi.getNbPixels());
+    }
+
+    @Test
+    public void planeOnly() {
+        // At 1m, |x - 32| < 9.5 and |y - 24| < 4.75.
+        DepthROI roi = DepthROI.fromPlane(createDevice(), createCalibration(), 0, 0, 0);
+        checkSpans(roi, 20, 29, 23, 42);
+        assertTrue(roi.contains(23, 20));
+        assertFalse(roi.contains(42, 20));
+        assertFalse(roi.contains(30, 19));
+    }
+
+    @Test
+    public void aboveThePlane() {
+        // The points 10cm above the plane are seen from a wider area:
+        // |x - 32| < 10.6 and |y - 24| < 5.3.
+        DepthROI roi = DepthROI.fromPlane(createDevice(), createCalibration(), 100, 0, 0);
+        checkSpans(roi, 19, 30, 22, 43);
+    }
+
+    @Test
+    public void border() {
+        DepthROI roi = DepthROI.fromPlane(createDevice(), createCalibration(), 100, 0, 2);
+        checkSpans(roi, 17, 32, 20, 45);
+    }
+
+    @Test
+    public void margin() {
+        // The area is 10% larger on each side: |x - 32| < 11.4.
+        DepthROI roi = DepthROI.fromPlane(createDevice(), createCalibration(), 0, 0.1f, 0);
+        assertEquals(21, roi.getRowBegin(24));
+        assertEquals(44, roi.getRowEnd(24));
+    }
+
+    @Test
+    public void computedFrom() {
+        PlaneAndProjectionCalibration calib = createCalibration();
+        DepthROI roi = DepthROI.fromPlane(createDevice(), calib, 100, 0, 2);
+        assertTrue(roi.isComputedFrom(calib, 100, 0, 2));
+        assertFalse(roi.isComputedFrom(calib, 50, 0, 2));
+        assertFalse(roi.isComputedFrom(calib, 100, 0, 1));
+        assertFalse(new DepthROI(WIDTH, HEIGHT).isComputedFrom(calib, 100, 0, 2));
+    }
+
+    @Test
+    public void rows() {
+        DepthROI roi = new DepthROI(WIDTH, HEIGHT);
+        assertTrue(roi.isEmpty());
+        roi.setRow(10, 5, 15);
+        roi.setRow(12, 0, 64);
+        assertEquals(10, roi.getFirstRow());
+        assertEquals(13, roi.getLastRow());
+        assertEquals(74, roi.getNbPixels());
+
+        roi.setRow(12, 8, 8);
+        assertEquals(11, roi.getLastRow());
+        assertEquals(10, roi.getNbPixels());
+        assertEquals(0, roi.getRowBegin(12));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.multitouch.detection;
+
+import fr.inria.papart.utils.MathUtils;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+/**
+ * The lookup table against the color tests of MathUtils.
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class ColorClassifierTest {
+
+    static final int NB_COLORS = 20000;
+
+    static ColorReferenceThresholds createReference() {
+        ColorReferenceThresholds ref = new ColorReferenceThresholds();
+        ref.referenceColor = 0xFF20C040;
+        ref.hue = 40;
+        ref.saturation = 70;
+        ref.brightness = 80;
+        return ref;
+    }
+
+    /**
+     * Half random colors, half close to the reference.
+     */
+    static int[] createColors(int reference) {
+        Random random = new Random(42);
+        int[] colors = new int[NB_COLORS];
+        for (int i = 0; i < NB_COLORS; i++) {
+            if (i % 2 == 0) {
+                colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+            } else {
+                int r = clamp(((reference >> 16) & 0xFF) + random.nextInt(81) - 40);
+                int g = clamp(((reference >> 8) & 0xFF) + random.nextInt(81) - 40);
+                int b = clamp((reference & 0xFF) + random.nextInt(81) - 40);
+                colors[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return colors;
+    }
+
+    static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    static PGraphics createGraphics() {
+        PGraphics g = new PGraphics();
+        g.colorMode(PConstants.RGB, 255);
+        return g;
+    }
+
+    @Test
+    public void exactWithEightBits() {
+        PGraphics g = createGraphics();
+        ColorReferenceThresholds ref = createReference();
+        ColorClassifier classifier = new ColorClassifier(8);
+        assertTrue(classifier.update(g, ColorClassifier.Mode.HSB, ref));
+
+        int nbFound = 0;
+        for (int c : createColors(ref.referenceColor)) {
+            boolean expected = MathUtils.colorFinderHSB(g, ref.referenceColor, c,
+                    ref.hue, ref.saturation, ref.brightness);
+            byte id = classifier.classify(c);
+            assertEquals(expected ? 0 : TouchDetectionColor.INVALID_COLOR, id);
+            if (expected) {
+                nbFound++;
+            }
+        }
+        assertTrue(nbFound > 0);
+    }
+
+    @Test
+    public void closestReference() {
+        PGraphics g = createGraphics();
+        ColorReferenceThresholds ref1 = createReference();
+        ColorReferenceThresholds ref2 = createReference();
+        ref2.referenceColor = 0xFF30D050;
+        ColorClassifier classifier = new ColorClassifier(8);
+        classifier.update(g, ColorClassifier.Mode.HSB, ref1, ref2);
+
+        assertEquals(0, classifier.classify(ref1.referenceColor));
+        assertEquals(1, classifier.classify(ref2.referenceColor));
+    }
+
+    @Test
+    public void imageAsPixels() {
+        PGraphics g = createGraphics();
+        ColorReferenceThresholds ref = createReference();
+        ColorClassifier classifier = new ColorClassifier();
+        classifier.update(g, ColorClassifier.Mode.HSB, ref);
+
+        int[] colors = createColors(ref.referenceColor);
+        byte[] ids = new byte[colors.length];
+        classifier.classify(colors, ids, colors.length);
+        for (int i = 0; i < colors.length; i++) {
+            assertEquals(classifier.classify(colors[i]), ids[i]);
+        }
+    }
+
+    @Test
+    public void updateOnChange() {
+        PGraphics g = createGraphics();
+        ColorReferenceThresholds ref = createReference();
+        ColorClassifier classifier = new ColorClassifier(4);
+        assertTrue(classifier.update(g, ColorClassifier.Mode.HSB, ref));
+        assertFalse(classifier.update(g, ColorClassifier.Mode.HSB, ref));
+
+        ref.hue = 10;
+        assertTrue(classifier.update(g, ColorClassifier.Mode.HSB, ref));
+        assertTrue(classifier.update(g, ColorClassifier.Mode.HSB_RED, ref));
+    }
+
+    @Test
+    public void updateOnColorChange() {
+        PGraphics g = createGraphics();
+        ColorReferenceThresholds ref = createReference();
+        ColorClassifier classifier = new ColorClassifier(8);
+        classifier.update(g, ColorClassifier.Mode.HSB, ref);
+        assertEquals(0, classifier.classify(0xFF20C040));
+
+        // Opaque colors, the table must be computed again.
+        ref.referenceColor = 0xFF4020C0;
+        assertTrue(classifier.update(g, ColorClassifier.Mode.HSB, ref));
+        assertEquals(TouchDetectionColor.INVALID_COLOR, classifier.classify(0xFF20C040));
+        assertEquals(0, classifier.classify(0xFF4020C0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkBits() {
+        new ColorClassifier(9);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class MarkerIndexTest {
+
+    static DetectedMarker[] createMarkers(int... ids) {
+        DetectedMarker[] markers = new DetectedMarker[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            markers[i] = new DetectedMarker(ids[i], new double[8]);
+        }
+        return markers;
+    }
+
+    @Test
+    public void singleMarkers() {
+        MarkerIndex index = new MarkerIndex(createMarkers(3, 12, 400));
+        assertEquals(3, index.size());
+        assertEquals(0, index.firstSlot(3));
+        assertEquals(1, index.firstSlot(12));
+        assertEquals(2, index.firstSlot(400));
+        assertEquals(-1, index.nextSlot(0));
+        assertEquals(-1, index.nextSlot(1));
+        assertEquals(-1, index.nextSlot(2));
+        assertTrue(index.contains(12));
+        assertFalse(index.contains(13));
+    }
+
+    @Test
+    public void duplicatesInDetectionOrder() {
+        DetectedMarker[] markers = createMarkers(7, 2, 7, 5, 7, 2);
+        MarkerIndex index = new MarkerIndex(markers);
+
+        int slot = index.firstSlot(7);
+        assertEquals(0, slot);
+        slot = index.nextSlot(slot);
+        assertEquals(2, slot);
+        slot = index.nextSlot(slot);
+        assertEquals(4, slot);
+        assertEquals(-1, index.nextSlot(slot));
+
+        assertEquals(1, index.firstSlot(2));
+        assertEquals(5, index.nextSlot(1));
+        assertEquals(-1, index.nextSlot(5));
+
+        assertEquals(3, index.firstSlot(5));
+        assertEquals(-1, index.nextSlot(3));
+
+        // Every detection is reached once from its id.
+        int nbFound = 0;
+        for (int id : new int[]{2, 5, 7}) {
+            for (int s = index.firstSlot(id); s != -1; s = index.nextSlot(s)) {
+                assertSame(markers[s], index.get(s));
+                assertEquals(id, index.get(s).id);
+                nbFound++;
+            }
+        }
+        assertEquals(markers.length, nbFound);
+    }
+
+    @Test
+    public void invalidIds() {
+        MarkerIndex index = new MarkerIndex(createMarkers(-1, MarkerIndex.MAX_ID, 1));
+        assertEquals(-1, index.firstSlot(-1));
+        assertEquals(-1, index.firstSlot(MarkerIndex.MAX_ID));
+        assertEquals(-1, index.nextSlot(0));
+        assertEquals(-1, index.nextSlot(1));
+        assertEquals(2, index.firstSlot(1));
+        assertFalse(index.contains(-1));
+    }
+
+    @Test
+    public void emptyIndex() {
+        MarkerIndex index = new MarkerIndex(null);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.firstSlot(0));
+        assertSame(index, MarkerIndex.of(index));
+        assertEquals(2, MarkerIndex.of(createMarkers(1, 1)).size());
+    }
+}
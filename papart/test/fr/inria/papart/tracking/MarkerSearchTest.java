@@ -0,0 +1,92 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Merge of the search regions, (x0, y0, x1, y1).
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class MarkerSearchTest {
+
+    static ArrayList<int[]> createRegions(int[]... regions) {
+        ArrayList<int[]> list = new ArrayList<>();
+        for (int[] r : regions) {
+            list.add(r.clone());
+        }
+        return list;
+    }
+
+    @Test
+    public void disjointRegions() {
+        ArrayList<int[]> regions = createRegions(
+                new int[]{0, 0, 10, 10},
+                new int[]{20, 0, 30, 10},
+                new int[]{0, 20, 10, 30});
+        MarkerSearch.mergeRegions(regions);
+        assertEquals(3, regions.size());
+        assertArrayEquals(new int[]{20, 0, 30, 10}, regions.get(1));
+    }
+
+    @Test
+    public void touchingRegions() {
+        // The end coordinates are excluded.
+        ArrayList<int[]> regions = createRegions(
+                new int[]{0, 0, 10, 10},
+                new int[]{10, 0, 20, 10});
+        MarkerSearch.mergeRegions(regions);
+        assertEquals(2, regions.size());
+    }
+
+    @Test
+    public void intersectingRegions() {
+        ArrayList<int[]> regions = createRegions(
+                new int[]{0, 0, 10, 10},
+                new int[]{50, 50, 60, 60},
+                new int[]{5, 5, 20, 15});
+        MarkerSearch.mergeRegions(regions);
+        assertEquals(2, regions.size());
+        assertArrayEquals(new int[]{0, 0, 20, 15}, regions.get(0));
+        assertArrayEquals(new int[]{50, 50, 60, 60}, regions.get(1));
+    }
+
+    @Test
+    public void chainedRegions() {
+        // The first and the last only intersect the union of the others.
+        ArrayList<int[]> regions = createRegions(
+                new int[]{0, 0, 10, 10},
+                new int[]{25, 0, 40, 10},
+                new int[]{8, 8, 30, 12},
+                new int[]{38, 9, 50, 20});
+        MarkerSearch.mergeRegions(regions);
+        assertEquals(1, regions.size());
+        assertArrayEquals(new int[]{0, 0, 50, 20}, regions.get(0));
+    }
+
+    @Test
+    public void noRegion() {
+        ArrayList<int[]> regions = new ArrayList<>();
+        MarkerSearch.mergeRegions(regions);
+        assertTrue(regions.isEmpty());
+    }
+}
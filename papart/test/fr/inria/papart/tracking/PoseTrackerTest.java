@@ -0,0 +1,141 @@
+/*
+ * Part of the PapARt project - https://project.inria.fr/papart/
+ *
+ * Copyright (C) 2017 RealityTech
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, version 2.1.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package fr.inria.papart.tracking;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import processing.core.PApplet;
+import processing.core.PMatrix3D;
+
+/**
+ *
+ * @author Jeremy Laviole laviole@rea.lity.tech
+ */
+public class PoseTrackerTest {
+
+    static final float EPSILON = 1e-4f;
+
+    static PMatrix3D createPose(float x, float y, float z, float angleZ) {
+        PMatrix3D pose = new PMatrix3D();
+        pose.translate(x, y, z);
+        pose.rotateZ(angleZ);
+        return pose;
+    }
+
+    static void checkMatrix(PMatrix3D expected, PMatrix3D actual, float epsilon) {
+        float[] e = expected.get(null);
+        float[] a = actual.get(null);
+        for (int i = 0; i < 16; i++) {
+            assertEquals("element " + i, e[i], a[i], epsilon);
+        }
+    }
+
+    @Test
+    public void quaternionRoundTrip() {
+        PMatrix3D generic = new PMatrix3D();
+        generic.rotateX(0.3f);
+        generic.rotateY(-1.2f);
+        generic.rotateZ(2.5f);
+        PMatrix3D aroundX = new PMatrix3D();
+        aroundX.rotateX(PApplet.PI);
+        PMatrix3D aroundY = new PMatrix3D();
+        aroundY.rotateY(PApplet.PI);
+        PMatrix3D aroundZ = new PMatrix3D();
+        aroundZ.rotateZ(PApplet.PI * 0.99f);
+
+        float[] p = {0, 0, 0};
+        float[] q = new float[4];
+        PMatrix3D out = new PMatrix3D();
+        // Positive trace, then each of the three diagonal cases.
+        for (PMatrix3D m : new PMatrix3D[]{new PMatrix3D(), generic, aroundX, aroundY, aroundZ}) {
+            PoseTracker.toQuaternion(m, q);
+            assertEquals(1, q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3], EPSILON);
+            PoseTracker.toMatrix(q, p, out);
+            checkMatrix(m, out, EPSILON);
+        }
+    }
+
+    @Test
+    public void rotationVectorRoundTrip() {
+        float[] q = new float[4];
+        float[] v = new float[3];
+        for (float[] rv : new float[][]{{0, 0, 0}, {0.001f, 0, 0}, {0.5f, -0.2f, 1.1f}, {0, 3f, 0}}) {
+            PoseTracker.fromRotationVector(rv, q);
+            PoseTracker.toRotationVector(q, v);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(rv[i], v[i], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void noVelocity() {
+        PoseTracker tracker = new PoseTracker();
+        PMatrix3D out = new PMatrix3D();
+        assertFalse(tracker.predict(0, out));
+
+        PMatrix3D pose = createPose(10, 20, 500, 0.5f);
+        tracker.update(pose, 100);
+        assertTrue(tracker.predict(150, out));
+        checkMatrix(pose, out, EPSILON);
+    }
+
+    @Test
+    public void extrapolation() {
+        PoseTracker tracker = new PoseTracker();
+        // 1mm and 0.01 rad per ms.
+        tracker.update(createPose(0, 0, 500, 0), 0);
+        tracker.update(createPose(10, 0, 500, 0.1f), 10);
+
+        PMatrix3D out = new PMatrix3D();
+        assertTrue(tracker.predict(30, out));
+        checkMatrix(createPose(30, 0, 500, 0.3f), out, EPSILON);
+
+        // No extrapolation before the last measure.
+        assertTrue(tracker.predict(5, out));
+        checkMatrix(createPose(10, 0, 500, 0.1f), out, EPSILON);
+    }
+
+    @Test
+    public void maxPredictionTime() {
+        PoseTracker tracker = new PoseTracker();
+        tracker.setMaxPredictionTime(50);
+        tracker.update(createPose(0, 0, 500, 0), 0);
+        tracker.update(createPose(10, 0, 500, 0.1f), 10);
+
+        // Extrapolated to 10 + 50ms only.
+        PMatrix3D out = new PMatrix3D();
+        assertTrue(tracker.predict(200, out));
+        checkMatrix(createPose(60, 0, 500, 0.6f), out, EPSILON);
+        assertTrue(tracker.predict(60, out));
+        checkMatrix(createPose(60, 0, 500, 0.6f), out, EPSILON);
+    }
+
+    @Test
+    public void guessTimeout() {
+        PoseTracker tracker = new PoseTracker();
+        tracker.update(createPose(0, 0, 500, 0), 0);
+        PMatrix3D out = new PMatrix3D();
+        assertTrue(tracker.guess(PoseTracker.POSE_TIMEOUT, out));
+        assertFalse(tracker.guess(PoseTracker.POSE_TIMEOUT + 1, out));
+
+        tracker.reset();
+        assertFalse(tracker.predict(0, out));
+    }
+}